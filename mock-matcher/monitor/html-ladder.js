@@ -32,6 +32,8 @@ function setupNewCell(cell, value, className) {
 }
 
 function onLadderUpdate(topic, payload) {
+  // trade announcements are binary frames, handled in trades.js
+  if (topic.indexOf('trade/') == 0) return false
   var update = JSON.parse(payload)
     // If the record came from an ACTIVE member, use it's data to update our order stack
     if (update.haStatus == 'ACTIVE') {
@@ -120,6 +120,8 @@ function onDisconnect(topic, payload) {
 }
 
 function onMatcherStatus(topic, payload) {
+  // trade announcements are binary frames, handled in trades.js
+  if (topic.indexOf('trade/') == 0) return false
   var update = JSON.parse(payload)
   if ('instance' in update) {
     // MATCHER UPDATE
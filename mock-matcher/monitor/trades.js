@@ -7,26 +7,62 @@ function initTrades() {
   addMsgHandler(onTrade)
 }
 
+var TRADE_FRAME_MAGIC = 0x54524431 // 'TRD1'
+
 function onTrade(topic, payload) {
-  var update = JSON.parse(payload)
   if ( -1 != topic.search('trade/' + APPID) ) {
-    //TRADE EVENT
-      announceTrade(update)
+    //TRADE EVENT: one binary frame per order, holding all of its trades
+      var frame = decodeTradeFrame(payload)
+      if (frame != null && frame.trades.length > 0)
+          announceTrades(frame)
       return true // means 'finished'
   }
   return false // means 'not finished'
 }
 
-function announceTrade(trade) {
-console.log('ANNOUNCING TRADE ' + JSON.stringify(trade))
+// Decodes a TradeFrame (see TradeFrame.java); the payload is a binary string
+function decodeTradeFrame(payload) {
+    if (payload == null || payload.length < 17) return null
+    var bytes = new Uint8Array(payload.length)
+    for (var i = 0; i < payload.length; i++)
+        bytes[i] = payload.charCodeAt(i) & 0xFF
+    var view = new DataView(bytes.buffer)
+    var pos = 0
+    if (view.getUint32(pos) != TRADE_FRAME_MAGIC) {
+        console.log('ERROR: Not a trade frame')
+        return null
+    }
+    pos += 4
+    // order sequence is a 64-bit long; split to stay within JS number precision
+    var orderSeq = view.getUint32(pos) * 4294967296 + view.getUint32(pos + 4)
+    pos += 8
+    var len = view.getUint8(pos++)
+    var instrument = ''
+    for (var i = 0; i < len; i++)
+        instrument += String.fromCharCode(view.getUint8(pos++))
+    var count = view.getInt32(pos)
+    pos += 4
+    var trades = [ ]
+    for (var i = 0; i < count && pos + 16 <= bytes.length; i++) {
+        trades.push({ instrument : instrument,
+                      price      : view.getFloat64(pos),
+                      quantity   : view.getFloat64(pos + 8) })
+        pos += 16
+    }
+    return { orderSeq : orderSeq, instrument : instrument, trades : trades }
+}
+
+function announceTrades(frame) {
+console.log('ANNOUNCING ' + frame.trades.length + ' TRADES FOR ORDER ' + frame.orderSeq)
     var table = document.getElementById("grid")
     var row = table.rows.namedItem('trade_announce')
     if (row == null) {
         console.log('ERROR: Could not find trade_announce row')
     }
     else {
-        row.cells[0].innerHTML = 'New Trade @'
-                + trade.price + ' - '
+        var last = frame.trades[frame.trades.length - 1]
+        row.cells[0].innerHTML = ((frame.trades.length > 1) ? frame.trades.length + ' New Trades' : 'New Trade')
+                + ' @' + last.price + ' - '
                 +  new Date().toTimeString()
     }
 }
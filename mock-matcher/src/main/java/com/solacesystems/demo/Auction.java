@@ -0,0 +1,127 @@
+package com.solacesystems.demo;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the equilibrium price of a crossed book for an auction uncross: the price at which
+ * the most quantity can execute.
+ *
+ * Executable volume only changes at a level's price, so the candidates are the level prices
+ * inside the crossed range, merged into one ascending grid. At each candidate the buy
+ * quantity willing to pay at least that price is a suffix sum over the grid and the sell
+ * quantity willing to accept it a prefix sum; the executable volume is the smaller of the
+ * two. Ties go to the smaller imbalance between the two, then to the price closest to the
+ * reference price.
+ *
+ * Grids of at least PARALLEL_THRESHOLD candidates are summed with Arrays.parallelPrefix and
+ * searched with a fork-join task on the common pool, so very deep books use every core;
+ * smaller ones are done in a plain loop, where forking would cost more than it saves.
+ */
+class Auction {
+
+    /**
+     * @param prices -- candidate prices, ascending
+     * @param bids -- buy quantity at each candidate price
+     * @param asks -- sell quantity at each candidate price
+     * @param count -- number of candidates used from the arrays
+     * @param reference -- price ties are broken towards
+     */
+    Auction(double[] prices, double[] bids, double[] asks, int count, double reference) {
+        _prices = prices;
+        _count = count;
+        _reference = reference;
+        _cumBids = Arrays.copyOf(bids, count);
+        _cumAsks = Arrays.copyOf(asks, count);
+        if (count >= PARALLEL_THRESHOLD) {
+            Arrays.parallelPrefix(_cumAsks, Double::sum);
+            // Suffix sums, as a prefix sum over the reversed quantities
+            reverse(_cumBids);
+            Arrays.parallelPrefix(_cumBids, Double::sum);
+            reverse(_cumBids);
+        }
+        else {
+            for (int i = 1; i < count; i++)
+                _cumAsks[i] += _cumAsks[i - 1];
+            for (int i = count - 2; i >= 0; i--)
+                _cumBids[i] += _cumBids[i + 1];
+        }
+    }
+
+    /**
+     * @return index of the equilibrium price, or -1 if nothing can execute
+     */
+    int Equilibrium() {
+        if (_count == 0) return -1;
+        int best = (_count >= PARALLEL_THRESHOLD)
+                ? ForkJoinPool.commonPool().invoke(new Search(0, _count))
+                : search(0, _count);
+        return (getVolume(best) > 0) ? best : -1;
+    }
+
+    double getPrice(int i) { return _prices[i]; }
+
+    /**
+     * @return quantity that can execute at the i'th candidate price
+     */
+    double getVolume(int i) { return Math.min(_cumBids[i], _cumAsks[i]); }
+
+    private int search(int from, int to) {
+        int best = from;
+        for (int i = from + 1; i < to; i++)
+            if (better(i, best)) best = i;
+        return best;
+    }
+
+    private boolean better(int i, int j) {
+        double vi = getVolume(i), vj = getVolume(j);
+        if (vi != vj) return vi > vj;
+        double ii = Math.abs(_cumBids[i] - _cumAsks[i]), ij = Math.abs(_cumBids[j] - _cumAsks[j]);
+        if (ii != ij) return ii < ij;
+        double di = Math.abs(_prices[i] - _reference), dj = Math.abs(_prices[j] - _reference);
+        if (di != dj) return di < dj;
+        return i < j;
+    }
+
+    private static void reverse(double[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            double v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+    }
+
+    private class Search extends RecursiveTask<Integer> {
+        private final static long serialVersionUID = 1L;
+
+        Search(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (_to - _from <= SEARCH_CHUNK)
+                return search(_from, _to);
+            int mid = (_from + _to) >>> 1;
+            Search left = new Search(_from, mid);
+            left.fork();
+            int right = new Search(mid, _to).compute();
+            int l = left.join();
+            return better(right, l) ? right : l;
+        }
+
+        private final int _from;
+        private final int _to;
+    }
+
+    final static int PARALLEL_THRESHOLD = 1 << 15;
+    private final static int SEARCH_CHUNK = 1 << 13;
+
+    private final double[] _prices;
+    private final double[] _cumBids;
+    private final double[] _cumAsks;
+    private final int _count;
+    private final double _reference;
+}
@@ -0,0 +1,122 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.RequestHandler;
+import com.solacesystems.ha.serial.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers book queries from the MatcherState a BACKUP instance follows, so readers never
+ * need the full state stream nor add load to the active member. Queries are direct requests
+ * with an empty payload, and the topic selects the query:
+ *
+ *   query/<app>/bbo          best bid and offer
+ *   query/<app>/depth/<n>    best n non-empty levels per side (n up to MAX_DEPTH)
+ *   query/<app>/book         every non-empty level
+ *
+ * Replies are JSON (see JSONSerializer.WriteBookQuery), written from the state's current
+ * BookVersion. Each distinct query's reply is encoded once and re-sent from cache until a
+ * new version is published, so a burst of identical queries between state messages costs
+ * one encoding.
+ *
+ * Calls arrive on the Solace context thread, but the book may be changing on the input
+ * thread: a query already queued when this member becomes ACTIVE can still be answered.
+ * Versions are immutable, so replies never read the live Matcher. Not thread-safe itself.
+ */
+class BookQueryService implements RequestHandler {
+    private static final Logger logger = LoggerFactory.getLogger(BookQueryService.class);
+
+    /**
+     * @param state -- the followed state; each reply reads its latest published version
+     */
+    BookQueryService(MatcherState state) {
+        _state = state;
+        _prefix = "query/" + state.getApp() + "/";
+        // A shared subscription, so each query is answered by just one of the backups
+        _subscription = "#share/" + state.getApp() + "_query/" + _prefix + ">";
+    }
+
+    public String getSubscriptionTopic() {
+        return _subscription;
+    }
+
+    public ByteBuffer getBuffer() {
+        return _request;
+    }
+
+    public ByteBuffer OnRequest(String topic, ByteBuffer request) {
+        int depth = parseDepth(topic);
+        if (depth < 0) {
+            logger.debug("Unknown book query {}", topic);
+            return UNKNOWN_QUERY;
+        }
+        int slot = (depth == FULL_BOOK) ? 0 : depth;
+        BookVersion book = _state.getVersion();
+        ByteBuffer reply = _replies[slot];
+        if (reply == null || _versions[slot] != book) {
+            _writer.Begin((reply == null) ? _pool.Acquire(256) : reply);
+            JSONSerializer.WriteBookQuery(_writer, _state, book, depth);
+            reply = _writer.End();
+            reply.flip();
+            _replies[slot] = reply;
+            _versions[slot] = book;
+            _encodings++;
+        }
+        return reply;
+    }
+
+    long getEncodingCount() { return _encodings; }
+
+    String getPrefix() { return _prefix; }
+
+    /**
+     * @return levels per side requested by the topic, FULL_BOOK, or -1 if it is not a query
+     */
+    private int parseDepth(String topic) {
+        if (!topic.startsWith(_prefix)) return -1;
+        int i = _prefix.length();
+        if (topic.startsWith(BBO, i) && topic.length() == i + BBO.length()) return 1;
+        if (topic.startsWith(BOOK, i) && topic.length() == i + BOOK.length()) return FULL_BOOK;
+        if (!topic.startsWith(DEPTH, i)) return -1;
+        i += DEPTH.length();
+        if (i == topic.length()) return -1;
+        int depth = 0;
+        for (; i < topic.length(); i++) {
+            char c = topic.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            depth = (depth * 10) + (c - '0');
+            if (depth > MAX_DEPTH) return -1;
+        }
+        return (depth == 0) ? -1 : depth;
+    }
+
+    final static int MAX_DEPTH = 50;
+    private final static int FULL_BOOK = Integer.MAX_VALUE;
+    private final static String BBO = "bbo";
+    private final static String BOOK = "book";
+    private final static String DEPTH = "depth/";
+    private final static ByteBuffer UNKNOWN_QUERY = encode("{\"error\":\"unknown query\"}");
+
+    private static ByteBuffer encode(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes).flip();
+        return buf;
+    }
+
+    private final MatcherState _state;
+    private final String _prefix;
+    private final String _subscription;
+    private final BufferPool _pool = BufferPool.getDefault();
+    private final JSONWriter _writer = new JSONWriter(_pool);
+    private final ByteBuffer _request = _pool.Acquire(256);
+
+    // Slot 0 is the full book, slot n the top n levels
+    private final ByteBuffer[] _replies = new ByteBuffer[MAX_DEPTH + 1];
+    private final BookVersion[] _versions = new BookVersion[MAX_DEPTH + 1];
+    private long _encodings;
+}
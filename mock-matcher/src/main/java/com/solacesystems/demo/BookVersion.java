@@ -0,0 +1,42 @@
+package com.solacesystems.demo;
+
+/**
+ * Immutable view of a Matcher's levels as of one input. The matching thread takes one per
+ * input with Matcher.getVersion, which costs nothing beyond the O(log n) updates the matcher
+ * already made to its PersistentLevels; any other thread can then serialize it without locks,
+ * however far the live book has moved on.
+ */
+final class BookVersion {
+
+    BookVersion(double par, double priceIncrement, boolean auction,
+                PersistentLevels buys, PersistentLevels sells, long sequence) {
+        _par = par;
+        _priceIncrement = priceIncrement;
+        _auction = auction;
+        _buys = buys;
+        _sells = sells;
+        _sequence = sequence;
+    }
+
+    double getPar() { return _par; }
+
+    double getPriceIncrement() { return _priceIncrement; }
+
+    boolean isInAuction() { return _auction; }
+
+    /** @return buy levels; visit them descending for best price first */
+    PersistentLevels getBuys() { return _buys; }
+
+    /** @return sell levels; visit them ascending for best price first */
+    PersistentLevels getSells() { return _sells; }
+
+    /** @return sequence id of the last input applied to this version */
+    long getSequence() { return _sequence; }
+
+    private final double _par;
+    private final double _priceIncrement;
+    private final boolean _auction;
+    private final PersistentLevels _buys;
+    private final PersistentLevels _sells;
+    private final long _sequence;
+}
@@ -5,17 +5,71 @@ import java.text.DecimalFormat;
 
 /**
  * Example client order type with a sequence number.
+ *
+ * Besides new orders, a message can cancel a resting order or replace it with a new price
+ * and quantity; both name the resting order by its sequence id in origSequenceId. AUCTION
+ * and UNCROSS messages carry no order: they start an auction and end it, in sequence with
+ * the orders around them.
+ *
+ * Orders are mutable so the input path can refill one instance per message instead of
+ * allocating; see Reset() and MockMatchingEngineSerializer.DeserializeInput.
  */
 class ClientOrder {
+
+    enum Type { NEW, CANCEL, REPLACE, AUCTION, UNCROSS }
+
     public ClientOrder(long seqId) {
         this.seqId = seqId;
-        this._df.setRoundingMode(RoundingMode.CEILING);
+    }
+
+    public ClientOrder() {
+        this(0);
+    }
+
+    /**
+     * Clears every field so the order can be refilled from the next message.
+     */
+    void Reset() {
+        seqId = 0;
+        type = Type.NEW;
+        origSeqId = 0;
+        buyOrSell = false;
+        quantity = 0.0;
+        price = 0.0;
+        instrument = null;
+        trader = null;
     }
 
     public long getSequenceId() {
         return seqId;
     }
 
+    /**
+     * Only for deserializers refilling a reused order
+     */
+    void setSequenceId(long seqId) {
+        this.seqId = seqId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the resting order a CANCEL or REPLACE applies to
+     */
+    public long getOrigSequenceId() {
+        return origSeqId;
+    }
+
+    public void setOrigSequenceId(long origSeqId) {
+        this.origSeqId = origSeqId;
+    }
+
     public boolean isBuy() {
         return buyOrSell;
     }
@@ -58,11 +112,13 @@ class ClientOrder {
 
     @Override
     public String toString() {
+        DecimalFormat df = FORMAT.get();
         return "ClientOrder{" +
                 "seqId=" + seqId +
+                (type == Type.NEW ? "" : ", type=" + type + ", origSeqId=" + origSeqId) +
                 ", buyOrSell=" + (buyOrSell ? 'B' : 'S') +
-                ", quantity=" + _df.format(quantity) +
-                ", price=" + _df.format(price) +
+                ", quantity=" + df.format(quantity) +
+                ", price=" + df.format(price) +
                 ", instrument='" + instrument + '\'' +
                 '}';
     }
@@ -82,12 +138,19 @@ class ClientOrder {
         return ((Long)seqId).intValue();
     }
 
-    private final long seqId;
+    private long seqId;
+    private Type type = Type.NEW;
+    private long origSeqId;
     private boolean buyOrSell;
     private double quantity;
     private double price;
     private String instrument;
     private String trader;
 
-    final private DecimalFormat _df = new DecimalFormat("#.####");
+    // DecimalFormat is heavy and not thread-safe; only built on a thread's first toString()
+    private final static ThreadLocal<DecimalFormat> FORMAT = ThreadLocal.withInitial(() -> {
+        DecimalFormat df = new DecimalFormat("#.####");
+        df.setRoundingMode(RoundingMode.CEILING);
+        return df;
+    });
 }
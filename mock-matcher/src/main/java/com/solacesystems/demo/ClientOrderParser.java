@@ -0,0 +1,316 @@
+package com.solacesystems.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Schema-aware parser reading the ClientOrder JSON written by JSONSerializer straight from
+ * the message bytes into a reusable ClientOrder, without building a String, a JSONObject or
+ * boxed numbers.
+ *
+ * Only the flat shape JSONSerializer produces is accepted: the six order fields, plus type and
+ * origSeqId for cancels and replaces, each once, in any order, with plain ASCII strings and
+ * doubles written with a decimal point or exponent. Anything else (unknown or missing fields, escapes, nesting) makes Parse()
+ * return false without moving the buffer, so the caller can fall back to the generic parser
+ * and get exactly the result it always did.
+ *
+ * Instrument and trader names are interned in a small cache, so in steady state a parse
+ * allocates nothing. Doubles of up to 15 significant digits are converted exactly with one
+ * multiplication or division by a power of ten; longer ones go through Double.parseDouble.
+ *
+ * Not thread-safe; each serializer keeps its own parser.
+ */
+class ClientOrderParser {
+
+    /**
+     * @param msg -- JSON document from position to limit; position is not moved
+     * @param order -- overwritten with the parsed fields if, and only if, parsing succeeds
+     * @return false if the message is not in the expected shape
+     */
+    boolean Parse(ByteBuffer msg, ClientOrder order) {
+        _end = msg.limit();
+        int i = skipWhitespace(msg, msg.position());
+        if (i >= _end || msg.get(i++) != '{')
+            return false;
+
+        int seen = 0;
+        _type = ClientOrder.Type.NEW;
+        _origSeqId = 0;
+        while (true) {
+            i = skipWhitespace(msg, i);
+            if (i >= _end || msg.get(i++) != '"') return false;
+            int field = matchField(msg, i);
+            if (field < 0 || (seen & (1 << field)) != 0) return false;
+            seen |= (1 << field);
+            i = skipWhitespace(msg, i + FIELDS[field].length + 1);
+            if (i >= _end || msg.get(i++) != ':') return false;
+            i = skipWhitespace(msg, i);
+
+            switch (field) {
+                case SEQ_ID:
+                    i = parseNumber(msg, i);
+                    if (i < 0 || !_isInteger) return false;
+                    _seqId = _longValue;
+                    break;
+                case INSTRUMENT:
+                    i = parseString(msg, i);
+                    if (i < 0) return false;
+                    _instrument = _stringValue;
+                    break;
+                case BUY_OR_SELL:
+                    i = parseString(msg, i);
+                    if (i < 0 || _stringValue == null || _stringValue.isEmpty()) return false;
+                    _isBuy = _stringValue.charAt(0) == 'B';
+                    break;
+                case QUANTITY:
+                    i = parseNumber(msg, i);
+                    if (i < 0 || _isInteger) return false;
+                    _quantity = _doubleValue;
+                    break;
+                case PRICE:
+                    i = parseNumber(msg, i);
+                    if (i < 0 || _isInteger) return false;
+                    _price = _doubleValue;
+                    break;
+                case TRADER:
+                    i = parseString(msg, i);
+                    if (i < 0) return false;
+                    _trader = _stringValue;
+                    break;
+                case TYPE:
+                    i = parseString(msg, i);
+                    if (i < 0 || _stringValue == null || _stringValue.length() != 1) return false;
+                    _type = JSONSerializer.typeOf(_stringValue);
+                    if (_type == ClientOrder.Type.NEW && _stringValue.charAt(0) != 'N') return false;
+                    break;
+                case ORIG_SEQ_ID:
+                    i = parseNumber(msg, i);
+                    if (i < 0 || !_isInteger) return false;
+                    _origSeqId = _longValue;
+                    break;
+                default:
+                    return false;
+            }
+
+            i = skipWhitespace(msg, i);
+            if (i >= _end) return false;
+            byte b = msg.get(i++);
+            if (b == '}') break;
+            if (b != ',') return false;
+        }
+        if ((seen & REQUIRED_FIELDS) != REQUIRED_FIELDS || skipWhitespace(msg, i) != _end)
+            return false;
+
+        order.setSequenceId(_seqId);
+        order.setInstrument(_instrument);
+        order.setIsBuy(_isBuy);
+        order.setQuantity(_quantity);
+        order.setPrice(_price);
+        order.setTrader(_trader);
+        order.setType(_type);
+        order.setOrigSequenceId(_origSeqId);
+        return true;
+    }
+
+    /**
+     * @param i -- index just past the opening quote of a field name
+     * @return index of the known field whose quoted name starts at i, or -1
+     */
+    private int matchField(ByteBuffer msg, int i) {
+        for (int f = 0; f < FIELDS.length; f++) {
+            byte[] name = FIELDS[f];
+            int close = i + name.length;
+            if (close >= _end || msg.get(close) != '"') continue;
+            int k = 0;
+            while (k < name.length && msg.get(i + k) == name[k]) k++;
+            if (k == name.length) return f;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a string or null into _stringValue; only printable ASCII without escapes is accepted.
+     *
+     * @return index just past the value, or -1
+     */
+    private int parseString(ByteBuffer msg, int i) {
+        if (i < _end && msg.get(i) == 'n')
+            return parseNull(msg, i);
+        if (i >= _end || msg.get(i) != '"') return -1;
+        int start = ++i;
+        int hash = 0;
+        while (i < _end) {
+            byte b = msg.get(i);
+            if (b == '"') {
+                _stringValue = intern(msg, start, i - start, hash);
+                return i + 1;
+            }
+            if (b < 0x20 || b == '\\') return -1;
+            hash = 31 * hash + b;
+            i++;
+        }
+        return -1;
+    }
+
+    private int parseNull(ByteBuffer msg, int i) {
+        if (i + 4 > _end || msg.get(i + 1) != 'u' || msg.get(i + 2) != 'l' || msg.get(i + 3) != 'l')
+            return -1;
+        _stringValue = null;
+        return i + 4;
+    }
+
+    /**
+     * @return a cached String equal to the given bytes, creating it on a miss
+     */
+    private String intern(ByteBuffer msg, int start, int len, int hash) {
+        int slot = (hash ^ (hash >>> 16)) & (_strings.length - 1);
+        String cached = _strings[slot];
+        if (cached != null && cached.length() == len) {
+            int k = 0;
+            while (k < len && cached.charAt(k) == msg.get(start + k)) k++;
+            if (k == len) return cached;
+        }
+        if (_scratch.length < len) _scratch = new byte[len];
+        for (int k = 0; k < len; k++)
+            _scratch[k] = msg.get(start + k);
+        String created = new String(_scratch, 0, len, StandardCharsets.US_ASCII);
+        _strings[slot] = created;
+        return created;
+    }
+
+    /**
+     * Parses a JSON number into _longValue (if it has no fraction or exponent) or _doubleValue.
+     *
+     * @return index just past the number, or -1
+     */
+    private int parseNumber(ByteBuffer msg, int i) {
+        int start = i;
+        boolean negative = false;
+        if (i < _end && msg.get(i) == '-') {
+            negative = true;
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, significant = 0, exponent = 0;
+        boolean fraction = false, hasExponent = false;
+
+        for (; i < _end; i++) {
+            byte b = msg.get(i);
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (significant > 0 || b != '0') significant++;
+                if (significant <= MAX_EXACT_DIGITS) {
+                    mantissa = (mantissa * 10) + (b - '0');
+                    if (fraction) exponent--;
+                }
+                else if (!fraction) {
+                    exponent++;
+                }
+            }
+            else if (b == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0) return -1;
+
+        if (i < _end && (msg.get(i) == 'e' || msg.get(i) == 'E')) {
+            hasExponent = true;
+            i++;
+            boolean negExp = false;
+            if (i < _end && (msg.get(i) == '+' || msg.get(i) == '-'))
+                negExp = (msg.get(i++) == '-');
+            int expDigits = 0, exp = 0;
+            while (i < _end && msg.get(i) >= '0' && msg.get(i) <= '9') {
+                if (exp < 10000) exp = (exp * 10) + (msg.get(i) - '0');
+                expDigits++;
+                i++;
+            }
+            if (expDigits == 0) return -1;
+            exponent += negExp ? -exp : exp;
+        }
+
+        _isInteger = !fraction && !hasExponent;
+        if (_isInteger) {
+            if (significant > MAX_EXACT_DIGITS) return -1;
+            _longValue = negative ? -mantissa : mantissa;
+            return i;
+        }
+
+        if (significant <= MAX_EXACT_DIGITS && exponent >= -MAX_EXACT_POW10 && exponent <= MAX_EXACT_POW10) {
+            // Both the mantissa and the power of ten are exact doubles, so this rounds once, correctly
+            double value = (exponent < 0) ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            _doubleValue = negative ? -value : value;
+        }
+        else {
+            int len = i - start;
+            if (_scratch.length < len) _scratch = new byte[len];
+            for (int k = 0; k < len; k++)
+                _scratch[k] = msg.get(start + k);
+            _doubleValue = Double.parseDouble(new String(_scratch, 0, len, StandardCharsets.US_ASCII));
+        }
+        return i;
+    }
+
+    private int skipWhitespace(ByteBuffer msg, int i) {
+        while (i < _end) {
+            byte b = msg.get(i);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') break;
+            i++;
+        }
+        return i;
+    }
+
+    private final static int SEQ_ID      = 0;
+    private final static int INSTRUMENT  = 1;
+    private final static int BUY_OR_SELL = 2;
+    private final static int QUANTITY    = 3;
+    private final static int PRICE       = 4;
+    private final static int TRADER      = 5;
+    private final static int TYPE        = 6;
+    private final static int ORIG_SEQ_ID = 7;
+    private final static int REQUIRED_FIELDS = (1 << 6) - 1;
+
+    // Same names, in the same order as the indexes above, as JSONSerializer.SerializeClientOrder
+    private final static byte[][] FIELDS = {
+            "seqId".getBytes(StandardCharsets.US_ASCII),
+            "instrument".getBytes(StandardCharsets.US_ASCII),
+            "buyOrSell".getBytes(StandardCharsets.US_ASCII),
+            "quantity".getBytes(StandardCharsets.US_ASCII),
+            "price".getBytes(StandardCharsets.US_ASCII),
+            "trader".getBytes(StandardCharsets.US_ASCII),
+            "type".getBytes(StandardCharsets.US_ASCII),
+            "origSeqId".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final static int MAX_EXACT_DIGITS = 15;
+    private final static int MAX_EXACT_POW10  = 22;
+    private final static double[] POW10 = new double[MAX_EXACT_POW10 + 1];
+    static {
+        POW10[0] = 1.0;
+        for (int p = 1; p <= MAX_EXACT_POW10; p++)
+            POW10[p] = POW10[p - 1] * 10.0;
+    }
+
+    private final String[] _strings = new String[64];
+    private byte[] _scratch = new byte[32];
+    private int _end;
+
+    // Results of the last parseNumber/parseString call
+    private long _longValue;
+    private double _doubleValue;
+    private boolean _isInteger;
+    private String _stringValue;
+
+    // Fields parsed so far; only copied into the order once the whole document is valid
+    private long _seqId;
+    private String _instrument;
+    private boolean _isBuy;
+    private double _quantity;
+    private double _price;
+    private String _trader;
+    private ClientOrder.Type _type;
+    private long _origSeqId;
+}
@@ -0,0 +1,290 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.model.HAState;
+import com.solacesystems.ha.model.SeqState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Binary journal of matcher events (trades, level changes and HA transitions), replacing
+ * per-event INFO logging on the matching path.
+ *
+ * Events are written as fixed-size records into a ring allocated up front, so recording
+ * one is a few buffer puts with no formatting, boxing or allocation. A background thread
+ * drains the ring into a memory-mapped file. If the drainer falls a whole ring behind,
+ * new events are dropped and counted rather than stalling the matcher.
+ *
+ * Recording does nothing until Start() is called. Use JournalDecoder to render a journal
+ * file as text.
+ *
+ * Record layout (RECORD_SIZE bytes, big-endian):
+ *   long timestamp (epoch millis), short type, short a, int b, double x, double y
+ *
+ *   TRADE  -- x = price, y = quantity
+ *   LEVEL  -- a = side (BUY/SELL), x = price, y = new level quantity
+ *   HA     -- a = old HAState ordinal, b = new HAState ordinal
+ *   SEQ    -- a = old SeqState ordinal, b = new SeqState ordinal
+ */
+class EventJournal {
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    /**
+     * Journal shared by every Matcher in the process, including those rebuilt from state
+     * messages; idle until started.
+     */
+    static EventJournal getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param capacity -- ring size in records, rounded up to a power of two
+     */
+    EventJournal(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        _ring = ByteBuffer.allocateDirect(size * RECORD_SIZE);
+        _mask = size - 1;
+    }
+
+    /**
+     * Starts draining into the file, replacing anything already in it.
+     */
+    void Start(File file) throws IOException {
+        Start(file, true);
+    }
+
+    /**
+     * @param drain -- false leaves every record in the ring until Close, so that tests can
+     *                 fill it deterministically
+     */
+    synchronized void Start(File file, boolean drain) throws IOException {
+        if (_running)
+            throw new IllegalStateException("Journal is already started");
+        _file = new RandomAccessFile(file, "rw");
+        _file.setLength(0);
+        _written = 0;
+        _head = _tail = 0;
+        _dropped = 0;
+        mapNext();
+        _map.putInt(MAGIC);
+        _map.putInt(RECORD_SIZE);
+        _map.putLong(System.currentTimeMillis());
+        _written = HEADER_SIZE;
+
+        _running = true;
+        _drainer = null;
+        if (drain) {
+            _drainer = new Thread(this::drainLoop, "event-journal");
+            _drainer.setDaemon(true);
+            _drainer.start();
+        }
+        logger.info("Journaling matcher events to {}", file);
+    }
+
+    /**
+     * Drains everything recorded so far, then stops the background thread and trims the file.
+     */
+    void Close() {
+        Thread drainer;
+        synchronized (this) {
+            if (!_running) return;
+            _running = false;
+            drainer = _drainer;
+        }
+        try {
+            if (drainer != null) {
+                LockSupport.unpark(drainer);
+                drainer.join();
+            }
+            drain();
+            _map.force();
+            _map = null;
+            _file.setLength(_written);
+            _file.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            logger.error("Error closing the event journal", e);
+        }
+        if (_dropped > 0)
+            logger.warn("Event journal dropped {} events", _dropped);
+    }
+
+    void Trade(double price, double quantity) {
+        record(TRADE, 0, 0, price, quantity);
+    }
+
+    void Level(boolean isBuy, double price, double quantity) {
+        record(LEVEL, isBuy ? BUY : SELL, 0, price, quantity);
+    }
+
+    void HAChange(HAState oldState, HAState newState) {
+        record(HA, ordinal(oldState), ordinal(newState), 0, 0);
+    }
+
+    void SeqChange(SeqState oldState, SeqState newState) {
+        record(SEQ, ordinal(oldState), ordinal(newState), 0, 0);
+    }
+
+    synchronized long getDroppedCount() { return _dropped; }
+
+    /**
+     * Renders every record of a journal file as one text line each.
+     *
+     * @return number of records rendered
+     */
+    static long Decode(File file, PrintStream out) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC)
+                throw new IllegalStateException(file + " is not an event journal");
+            int recordSize = buf.getInt();
+            out.println("# journal started " + Instant.ofEpochMilli(buf.getLong()));
+            StringBuilder line = new StringBuilder();
+            long count = 0;
+            while (buf.remaining() >= recordSize) {
+                int pos = buf.position();
+                if (buf.getShort(pos + 8) == 0) break; // unwritten tail of a mapped region
+                line.setLength(0);
+                Render(buf, pos, line);
+                out.println(line);
+                buf.position(pos + recordSize);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Appends a text rendering of the record at pos.
+     */
+    static void Render(ByteBuffer buf, int pos, StringBuilder line) {
+        long ts = buf.getLong(pos);
+        short type = buf.getShort(pos + 8);
+        short a = buf.getShort(pos + 10);
+        int b = buf.getInt(pos + 12);
+        double x = buf.getDouble(pos + 16);
+        double y = buf.getDouble(pos + 24);
+        line.append(Instant.ofEpochMilli(ts)).append(' ');
+        switch (type) {
+            case TRADE:
+                line.append("TRADE: ").append(y).append(" @ ").append(x);
+                break;
+            case LEVEL:
+                line.append(a == BUY ? "BUY" : "SELL").append(" LEVEL ").append(x).append(" QTY: ").append(y);
+                break;
+            case HA:
+                line.append("HA Change: ").append(name(HAState.values(), a)).append(" => ").append(name(HAState.values(), b));
+                break;
+            case SEQ:
+                line.append("Seq Change: ").append(name(SeqState.values(), a)).append(" => ").append(name(SeqState.values(), b));
+                break;
+            default:
+                line.append("UNKNOWN(").append(type).append(')');
+        }
+    }
+
+    private synchronized void record(short type, int a, int b, double x, double y) {
+        if (!_running) return;
+        if (_head - _tail > _mask) {
+            _dropped++;
+            return;
+        }
+        int pos = (int) (_head & _mask) * RECORD_SIZE;
+        _ring.putLong(pos, System.currentTimeMillis());
+        _ring.putShort(pos + 8, type);
+        _ring.putShort(pos + 10, (short) a);
+        _ring.putInt(pos + 12, b);
+        _ring.putDouble(pos + 16, x);
+        _ring.putDouble(pos + 24, y);
+        _head++; // volatile write publishes the record to the drainer
+    }
+
+    private void drainLoop() {
+        while (_running) {
+            try {
+                if (!drain())
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            catch (IOException e) {
+                logger.error("Event journal stopped draining", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies published records into the mapped file; only ever called by one thread at a time.
+     *
+     * @return false if there was nothing to drain
+     */
+    private boolean drain() throws IOException {
+        long head = _head;
+        long tail = _tail;
+        if (tail == head) return false;
+        ByteBuffer src = _ring.duplicate();
+        while (tail < head) {
+            if (_map.remaining() < RECORD_SIZE)
+                mapNext();
+            int pos = (int) (tail & _mask) * RECORD_SIZE;
+            src.limit(pos + RECORD_SIZE).position(pos);
+            _map.put(src);
+            _written += RECORD_SIZE;
+            tail++;
+        }
+        _tail = tail; // volatile write frees the slots for the recorder
+        return true;
+    }
+
+    private void mapNext() throws IOException {
+        _map = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, _written, MAP_REGION);
+    }
+
+    private static int ordinal(Enum<?> e) {
+        return (e == null) ? -1 : e.ordinal();
+    }
+
+    private static String name(Enum<?>[] values, int ordinal) {
+        return (ordinal < 0 || ordinal >= values.length) ? "null" : values[ordinal].name();
+    }
+
+    final static int RECORD_SIZE = 32;
+    final static int HEADER_SIZE = 16;
+    private final static int MAGIC = 0x45564A31; // "EVJ1"
+    private final static long MAP_REGION = 4L * 1024 * 1024;
+    private final static long IDLE_PARK_NANOS = 1000000L;
+
+    private final static short TRADE = 1;
+    private final static short LEVEL = 2;
+    private final static short HA    = 3;
+    private final static short SEQ   = 4;
+    private final static short BUY   = 0;
+    private final static short SELL  = 1;
+
+    private final static EventJournal DEFAULT = new EventJournal(64 * 1024);
+
+    private final ByteBuffer _ring;
+    private final int _mask;
+    private volatile long _head;
+    private volatile long _tail;
+    private volatile boolean _running;
+    private long _dropped;
+
+    // Only touched by the drainer, or by Start/Close while it is not running
+    private Thread _drainer;
+    private RandomAccessFile _file;
+    private MappedByteBuffer _map;
+    private long _written;
+}
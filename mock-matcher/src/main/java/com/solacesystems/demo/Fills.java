@@ -0,0 +1,35 @@
+package com.solacesystems.demo;
+
+import java.util.Arrays;
+
+/**
+ * Reusable Matcher.FillSink keeping the fills of one order in primitive arrays, so an order
+ * sweeping the book allocates nothing once the arrays have grown to the deepest sweep seen.
+ * Clear() before each order.
+ */
+class Fills implements Matcher.FillSink {
+
+    public void OnFill(double price, double quantity) {
+        if (_count == _price.length) {
+            _price = Arrays.copyOf(_price, _count * 2);
+            _quantity = Arrays.copyOf(_quantity, _count * 2);
+        }
+        _price[_count] = price;
+        _quantity[_count] = quantity;
+        _count++;
+    }
+
+    void Clear() {
+        _count = 0;
+    }
+
+    int getCount() { return _count; }
+
+    double getPrice(int i) { return _price[i]; }
+
+    double getQuantity(int i) { return _quantity[i]; }
+
+    private double[] _price = new double[16];
+    private double[] _quantity = new double[16];
+    private int _count;
+}
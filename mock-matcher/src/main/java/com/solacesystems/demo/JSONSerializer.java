@@ -2,6 +2,7 @@ package com.solacesystems.demo;
 
 import com.solacesystems.ha.model.HAState;
 import com.solacesystems.ha.model.SeqState;
+import com.solacesystems.ha.serial.JSONWriter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -27,26 +28,58 @@ class JSONSerializer {
         json.put( "quantity" , order.getQuantity() );
         json.put( "price" , order.getPrice() );
         json.put( "trader" , order.getTrader() );
+        // New orders keep the original six-field shape
+        if (order.getType() != ClientOrder.Type.NEW) {
+            json.put( "type" , order.getType().name().substring(0, 1) );
+            json.put( "origSeqId" , Long.valueOf(order.getOrigSequenceId()) );
+        }
         return json;
 
     }
     static ClientOrder DeserializeClientOrder(JSONObject json) {
-        ClientOrder order = null;
+        return DeserializeClientOrder( json, new ClientOrder() );
+    }
+
+    /**
+     * Refills the given order from the JSON fields rather than allocating a new one.
+     *
+     * @return the order, or null if the JSON could not be read
+     */
+    static ClientOrder DeserializeClientOrder(JSONObject json, ClientOrder order) {
         try {
-            order = new ClientOrder( getLong(json, "seqId", 0L).intValue() );
+            order.Reset();
+            order.setSequenceId( getLong(json, "seqId", 0L).intValue() );
             order.setInstrument( stringOrEmpty(json, "instrument") );
             order.setTrader( stringOrEmpty(json, "trader") );
             order.setIsBuy( ((String)json.get("buyOrSell")).charAt(0) == 'B' ? true : false );
             order.setQuantity( doubleOrNothing(json, "quantity") );
             order.setPrice( doubleOrNothing(json, "price") );
+            order.setType( typeOf( stringOrEmpty(json, "type") ) );
+            order.setOrigSequenceId( getLong(json, "origSeqId", 0L) );
         }
         catch (Exception e) {
             logger.error("Error parsing incoming message");
             e.printStackTrace();
+            return null;
         }
         return order;
     }
 
+    /**
+     * @return the order type for its one-letter code; anything unknown is a new order
+     */
+    static ClientOrder.Type typeOf(String code) {
+        if (code.length() == 1) {
+            switch (code.charAt(0)) {
+                case 'C': return ClientOrder.Type.CANCEL;
+                case 'R': return ClientOrder.Type.REPLACE;
+                case 'A': return ClientOrder.Type.AUCTION;
+                case 'U': return ClientOrder.Type.UNCROSS;
+            }
+        }
+        return ClientOrder.Type.NEW;
+    }
+
     /// - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + -
     ///
     ///         AppState
@@ -66,6 +99,46 @@ class JSONSerializer {
         return json;
     }
 
+    /**
+     * Streams the same document as SerializeMatcherState into the writer
+     */
+    static void WriteMatcherState(JSONWriter out, MatcherState output) {
+        WriteStateHeader( out, output, output.getLastInput(), output.getLastOutput() );
+        if (output.getMatcher() == null)
+            out.Null();
+        else
+            WriteOrderStack( out, output.getMatcher() );
+        out.EndObject();
+    }
+
+    /**
+     * Same document as WriteMatcherState, with the book and sequence taken from a published
+     * version rather than the live Matcher, so it can be called off the matching thread.
+     */
+    static void WriteMatcherState(JSONWriter out, MatcherState output, BookVersion book) {
+        if (book == null) {
+            WriteStateHeader( out, output, output.getLastInput(), output.getLastOutput() );
+            out.Null();
+        }
+        else {
+            WriteStateHeader( out, output, book.getSequence(), book.getSequence() );
+            WriteOrderStack( out, book );
+        }
+        out.EndObject();
+    }
+
+    private static void WriteStateHeader(JSONWriter out, MatcherState output, long lastInput, long lastOutput) {
+        out.StartObject();
+        out.Field( APP ).Value( output.getApp() );
+        out.Field( INSTANCE ).Value( output.getInstance() );
+        out.Field( INSTRUMENT ).Value( output.getInstrument() );
+        out.Field( HA_STATUS ).Value( output.getHAStatus().toString() );
+        out.Field( SEQ_STATUS ).Value( output.getSeqStatus().toString() );
+        out.Field( LAST_INPUT ).Value( lastInput );
+        out.Field( LAST_OUTPUT ).Value( lastOutput );
+        out.Field( DATA );
+    }
+
     static MatcherState DeserializeMatcherState(JSONObject json) {
         MatcherState state = new MatcherState();
         try {
@@ -90,28 +163,83 @@ class JSONSerializer {
         JSONObject jsMatcher = new JSONObject();
         jsMatcher.put( "par", matcher.getPar() );
         jsMatcher.put( "priceInc", matcher.getPriceIncrement() );
+        jsMatcher.put( "auction", matcher.isInAuction() );
         // buys
         JSONArray buys = new JSONArray();
         for(Matcher.Lvl buy : matcher.getBuys()) {
-            buys.add( SerializeStackLevel(buy) );
+            buys.add( SerializeStackLevel(buy, matcher.getOrders(), true) );
         }
         jsMatcher.put( "buys", buys );
         // sells
         JSONArray  sells = new JSONArray();
         for(Matcher.Lvl sell : matcher.getSells()) {
-            sells.add( SerializeStackLevel(sell) );
+            sells.add( SerializeStackLevel(sell, matcher.getOrders(), false) );
         }
         jsMatcher.put( "sells", sells );
 
         return jsMatcher;
     }
+    /**
+     * Each level carries its resting orders in time priority, so a backup that takes over
+     * can cancel and replace orders the previous active member was given.
+     */
+    static void WriteOrderStack(final JSONWriter out, Matcher matcher) {
+        OrderBook.OrderVisitor order = (orderId, quantity) -> {
+            out.StartObject();
+            out.Field( ID ).Value( orderId );
+            out.Field( QUANTITY ).Value( quantity );
+            out.EndObject();
+        };
+        out.StartObject();
+        out.Field( PAR ).Value( matcher.getPar() );
+        out.Field( PRICE_INC ).Value( matcher.getPriceIncrement() );
+        out.Field( AUCTION ).Value( matcher.isInAuction() );
+        out.Field( BUYS ).StartArray();
+        List<Matcher.Lvl> buys = matcher.getBuys();
+        for(int i = 0; i < buys.size(); i++) {
+            WriteStackLevel( out, buys.get(i), matcher.getOrders(), true, order );
+        }
+        out.EndArray();
+        out.Field( SELLS ).StartArray();
+        List<Matcher.Lvl> sells = matcher.getSells();
+        for(int i = 0; i < sells.size(); i++) {
+            WriteStackLevel( out, sells.get(i), matcher.getOrders(), false, order );
+        }
+        out.EndArray();
+        out.EndObject();
+    }
+
+    static void WriteOrderStack(final JSONWriter out, BookVersion book) {
+        PersistentLevels.Visitor level = (price, quantity) -> {
+            out.StartObject();
+            out.Field( PRICE ).Value( price );
+            out.Field( QUANTITY ).Value( quantity );
+            out.EndObject();
+        };
+        out.StartObject();
+        out.Field( PAR ).Value( book.getPar() );
+        out.Field( PRICE_INC ).Value( book.getPriceIncrement() );
+        out.Field( AUCTION ).Value( book.isInAuction() );
+        out.Field( BUYS ).StartArray();
+        book.getBuys().ForEach( true, level );
+        out.EndArray();
+        out.Field( SELLS ).StartArray();
+        book.getSells().ForEach( false, level );
+        out.EndArray();
+        out.EndObject();
+    }
+
     static Matcher DeserializeOrderStack(JSONObject json) {
         Double par   = (Double) json.get( "par" );
         Double delta = (Double) json.get( "priceInc" );
         Matcher matcher = new Matcher( par, delta );
+        matcher.setInAuction( Boolean.TRUE.equals( json.get( "auction" ) ) );
 
         DeserializeStackSide( (JSONArray)json.get("buys"), matcher.getBuys() );
         DeserializeStackSide( (JSONArray)json.get("sells"), matcher.getSells() );
+        DeserializeStackOrders( (JSONArray)json.get("buys"), matcher, true );
+        DeserializeStackOrders( (JSONArray)json.get("sells"), matcher, false );
+        matcher.Reindex();
 
         return matcher;
     }
@@ -122,18 +250,93 @@ class JSONSerializer {
         }
     }
 
+    /**
+     * Requeues each level's orders behind the levels already deserialized, oldest first.
+     * Levels without an orders array (book versions, older states) leave the book empty.
+     */
+    static void DeserializeStackOrders(JSONArray source, Matcher matcher, boolean isBuy) {
+        for( Object o : source) {
+            JSONObject jsLvl = (JSONObject) o;
+            JSONArray jsOrders = (JSONArray) jsLvl.get("orders");
+            if (jsOrders == null) continue;
+            double price = (Double) jsLvl.get("price");
+            for( Object jsOrder : jsOrders) {
+                JSONObject order = (JSONObject) jsOrder;
+                matcher.restOrder( (Long) order.get("id"), isBuy, price, (Double) order.get("quantity") );
+            }
+        }
+    }
+
     static JSONObject SerializeStackLevel(Matcher.Lvl lvl) {
         JSONObject o = new JSONObject();
         o.put( "price" , lvl.getPrice() );
         o.put( "quantity" , lvl.getQuantity() );
         return o;
     }
+    static JSONObject SerializeStackLevel(Matcher.Lvl lvl, OrderBook orders, boolean isBuy) {
+        JSONObject o = SerializeStackLevel( lvl );
+        final JSONArray jsOrders = new JSONArray();
+        orders.ForEachOrder( isBuy, lvl.getPrice(), (orderId, quantity) -> {
+            JSONObject order = new JSONObject();
+            order.put( "id", orderId );
+            order.put( "quantity", quantity );
+            jsOrders.add( order );
+        });
+        o.put( "orders", jsOrders );
+        return o;
+    }
+    static void WriteStackLevel(JSONWriter out, Matcher.Lvl lvl) {
+        out.StartObject();
+        out.Field( PRICE ).Value( lvl.getPrice() );
+        out.Field( QUANTITY ).Value( lvl.getQuantity() );
+        out.EndObject();
+    }
+    static void WriteStackLevel(JSONWriter out, Matcher.Lvl lvl, OrderBook orders, boolean isBuy,
+                                OrderBook.OrderVisitor order) {
+        out.StartObject();
+        out.Field( PRICE ).Value( lvl.getPrice() );
+        out.Field( QUANTITY ).Value( lvl.getQuantity() );
+        out.Field( ORDERS ).StartArray();
+        orders.ForEachOrder( isBuy, lvl.getPrice(), order );
+        out.EndArray();
+        out.EndObject();
+    }
     static Matcher.Lvl DeserializeStackLevel(JSONObject json) {
         return new Matcher.Lvl(
                 (Double)json.get("price"), (Double)json.get("quantity")
         );
     }
 
+    /// - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + -
+    ///
+    ///         Book query reply
+    ///
+    /// - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + -
+
+    /**
+     * Writes the best `depth` levels of each side of a published book version; the live
+     * Matcher is never read, so this is safe while the book is being matched.
+     */
+    static void WriteBookQuery(final JSONWriter out, MatcherState state, BookVersion book, int depth) {
+        PersistentLevels.Visitor level = (price, quantity) -> {
+            out.StartObject();
+            out.Field( PRICE ).Value( price );
+            out.Field( QUANTITY ).Value( quantity );
+            out.EndObject();
+        };
+        out.StartObject();
+        out.Field( APP ).Value( state.getApp() );
+        out.Field( INSTRUMENT ).Value( state.getInstrument() );
+        out.Field( LAST_INPUT ).Value( (book == null) ? state.getLastInput() : book.getSequence() );
+        out.Field( BUYS ).StartArray();
+        if (book != null) book.getBuys().ForEach( true, depth, level );
+        out.EndArray();
+        out.Field( SELLS ).StartArray();
+        if (book != null) book.getSells().ForEach( false, depth, level );
+        out.EndArray();
+        out.EndObject();
+    }
+
     /// - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + - + -
     ///
     ///         Trade
@@ -147,6 +350,14 @@ class JSONSerializer {
         return json;
     }
 
+    static void WriteTrade(JSONWriter out, Trade trade) {
+        out.StartObject();
+        out.Field( INSTRUMENT ).Value( trade.getInstrument() );
+        out.Field( PRICE ).Value( trade.getPrice() );
+        out.Field( QUANTITY ).Value( trade.getQuantity() );
+        out.EndObject();
+    }
+
     static Trade DeserializeTrade(JSONObject json) {
         Trade trade = new Trade();
         trade.setInstrument( stringOrEmpty(json, "instrument") );
@@ -200,6 +411,25 @@ class JSONSerializer {
         return defaultValue;
     }
 
+    // Field names pre-encoded for JSONWriter; must match the keys used above
+    final static private byte[] APP         = JSONWriter.Name( "app" );
+    final static private byte[] INSTANCE    = JSONWriter.Name( "instance" );
+    final static private byte[] INSTRUMENT  = JSONWriter.Name( "instrument" );
+    final static private byte[] HA_STATUS   = JSONWriter.Name( "haStatus" );
+    final static private byte[] SEQ_STATUS  = JSONWriter.Name( "seqStatus" );
+    final static private byte[] LAST_INPUT  = JSONWriter.Name( "lastInput" );
+    final static private byte[] LAST_OUTPUT = JSONWriter.Name( "lastOutput" );
+    final static private byte[] DATA        = JSONWriter.Name( "data" );
+    final static private byte[] PAR         = JSONWriter.Name( "par" );
+    final static private byte[] PRICE_INC   = JSONWriter.Name( "priceInc" );
+    final static private byte[] AUCTION     = JSONWriter.Name( "auction" );
+    final static private byte[] BUYS        = JSONWriter.Name( "buys" );
+    final static private byte[] SELLS       = JSONWriter.Name( "sells" );
+    final static private byte[] PRICE       = JSONWriter.Name( "price" );
+    final static private byte[] QUANTITY    = JSONWriter.Name( "quantity" );
+    final static private byte[] ORDERS      = JSONWriter.Name( "orders" );
+    final static private byte[] ID          = JSONWriter.Name( "id" );
+
     final static private JSONParser _parser = new JSONParser();
     //final static private DecimalFormat _df = new DecimalFormat("#.####");
 }
@@ -0,0 +1,18 @@
+package com.solacesystems.demo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Offline tool printing an EventJournal file as text, one line per event.
+ */
+class JournalDecoder {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("USAGE: JournalDecoder <JOURNAL-FILE>\n\n\n");
+            return;
+        }
+        long count = EventJournal.Decode(new File(args[0]), System.out);
+        System.err.println(count + " events");
+    }
+}
@@ -0,0 +1,138 @@
+package com.solacesystems.demo;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values, with no boxing and no
+ * per-entry objects: keys and values live in two parallel arrays probed linearly. Removal
+ * shifts later entries of the probe run back instead of leaving tombstones, so lookups stay
+ * short however many entries come and go. The table doubles once it is half full.
+ *
+ * Not thread-safe.
+ */
+class LongIntIndex {
+
+    /**
+     * @param expected -- number of entries to size the table for without growing
+     */
+    LongIntIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        _keys = new long[capacity];
+        _values = new int[capacity];
+        Arrays.fill(_values, MISSING);
+        _mask = capacity - 1;
+    }
+
+    /**
+     * @return the value for the key, or MISSING
+     */
+    int Get(long key) {
+        int i = slot(key);
+        while (_values[i] != MISSING) {
+            if (_keys[i] == key) return _values[i];
+            i = (i + 1) & _mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * @param value -- must not be negative
+     * @return the value previously mapped to the key, or MISSING
+     */
+    int Put(long key, int value) {
+        if (value < 0)
+            throw new IllegalStateException("LongIntIndex values must not be negative");
+        int i = slot(key);
+        while (_values[i] != MISSING) {
+            if (_keys[i] == key) {
+                int old = _values[i];
+                _values[i] = value;
+                return old;
+            }
+            i = (i + 1) & _mask;
+        }
+        _keys[i] = key;
+        _values[i] = value;
+        if (++_size > (_mask + 1) / 2)
+            grow();
+        return MISSING;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or MISSING
+     */
+    int Remove(long key) {
+        int i = slot(key);
+        while (_values[i] != MISSING) {
+            if (_keys[i] == key) {
+                int old = _values[i];
+                shiftBack(i);
+                _size--;
+                return old;
+            }
+            i = (i + 1) & _mask;
+        }
+        return MISSING;
+    }
+
+    void Clear() {
+        Arrays.fill(_values, MISSING);
+        _size = 0;
+    }
+
+    int getSize() { return _size; }
+
+    int getCapacity() { return _mask + 1; }
+
+    /**
+     * Fills the hole at i by moving back any later entry of the run that probes from at or
+     * before it, so every remaining key is still reachable from its home slot.
+     */
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & _mask;
+            if (_values[i] == MISSING) break;
+            int home = slot(_keys[i]);
+            // Move the entry unless its home lies cyclically in (hole, i]
+            boolean stays = (hole <= i) ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!stays) {
+                _keys[hole] = _keys[i];
+                _values[hole] = _values[i];
+                hole = i;
+            }
+        }
+        _values[hole] = MISSING;
+    }
+
+    private void grow() {
+        long[] keys = _keys;
+        int[] values = _values;
+        int capacity = keys.length * 2;
+        _keys = new long[capacity];
+        _values = new int[capacity];
+        Arrays.fill(_values, MISSING);
+        _mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (values[j] == MISSING) continue;
+            int i = slot(keys[j]);
+            while (_values[i] != MISSING)
+                i = (i + 1) & _mask;
+            _keys[i] = keys[j];
+            _values[i] = values[j];
+        }
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads sequential ids and price bit patterns alike
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    final static int MISSING = -1;
+
+    private long[] _keys;
+    private int[] _values;
+    private int _mask;
+    private int _size;
+}
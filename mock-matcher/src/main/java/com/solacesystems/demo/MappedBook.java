@@ -0,0 +1,327 @@
+package com.solacesystems.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap copy of a Matcher's book in a memory-mapped file, written through as the book
+ * changes, so a matcher restarted on the same host can rebuild its book, orders and time
+ * priority included, from the file instead of waiting for the broker to replay state.
+ *
+ * Levels and orders are fixed-width records. Order records are indexed by the OrderBook's
+ * own slots, so keeping them current is a few absolute puts per change; level records have
+ * a small heap index from side and price, rebuilt in one pass when the file is opened.
+ * The file is never forced: it survives the process, not the host.
+ *
+ * The first write after a checkpoint marks the file dirty and Checkpoint marks it clean with
+ * the last input applied, so a file left mid-input by a crash is not restored from. A book
+ * with more levels than the file has records for is left dirty in the same way.
+ *
+ * File layout (big-endian):
+ *   header (HEADER_SIZE bytes)
+ *     int magic, int clean (1 or 0), long lastInput, double par, double priceIncrement,
+ *     int auction, int levelCapacity, int orderCapacity, long nextStamp
+ *   levelCapacity level records (LEVEL_SIZE bytes)
+ *     double price, double quantity, int flags (USED, BUY)
+ *   orderCapacity order records (ORDER_SIZE bytes), by OrderBook slot
+ *     long id, long stamp (time priority), double price, double quantity, int flags (USED, BUY)
+ *
+ * Not thread-safe; written by the matching thread only.
+ */
+class MappedBook implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedBook.class);
+
+    /**
+     * Maps the file, creating it if needed. An existing file with a different layout or
+     * capacity is kept as it is, but isValid() is false until Reset.
+     *
+     * @param levelCapacity -- most price levels, both sides together, the file can hold
+     * @param orderCapacity -- order records to start with; grown as the OrderBook grows
+     */
+    static MappedBook Open(File file, int levelCapacity, int orderCapacity) throws IOException {
+        return new MappedBook(file, levelCapacity, orderCapacity);
+    }
+
+    private MappedBook(File file, int levelCapacity, int orderCapacity) throws IOException {
+        _file = new RandomAccessFile(file, "rw");
+        long length = _file.length();
+        boolean existing = length >= HEADER_SIZE;
+        if (existing) {
+            _file.seek(0);
+            int magic = _file.readInt();
+            _file.seek(LEVEL_CAPACITY);
+            existing = magic == MAGIC && _file.readInt() == levelCapacity;
+            if (existing) orderCapacity = Math.max(orderCapacity, _file.readInt());
+        }
+        _levelCapacity = levelCapacity;
+        _levelIndex = new LongIntIndex(levelCapacity);
+        _freeLevels = new int[levelCapacity];
+        map(orderCapacity);
+        if (existing && length >= size(orderCapacity)) {
+            _valid = _map.getInt(CLEAN) == 1;
+            _levelsHigh = _levelCapacity;
+            indexLevels();
+            for (int i = 0; i < _orderCapacity; i++)
+                if (isOrderUsed(i)) _ordersHigh = i + 1;
+        }
+        else {
+            // Whatever was there is not a book this run can use; write over all of it
+            _map.putInt(MAGIC_POS, 0);
+            _levelsHigh = _levelCapacity;
+            _ordersHigh = _orderCapacity;
+        }
+    }
+
+    /**
+     * @return true if the file holds a book checkpointed by an earlier run
+     */
+    boolean isValid() { return _valid; }
+
+    long getLastInput() { return _map.getLong(LAST_INPUT); }
+
+    double getPar() { return _map.getDouble(PAR); }
+
+    double getPriceIncrement() { return _map.getDouble(PRICE_INC); }
+
+    boolean isInAuction() { return _map.getInt(AUCTION) != 0; }
+
+    /**
+     * Empties the book and starts it over for a matcher with the given parameters.
+     */
+    void Reset(double par, double priceIncrement) {
+        markDirty();
+        _map.putInt(MAGIC_POS, MAGIC);
+        _map.putDouble(PAR, par);
+        _map.putDouble(PRICE_INC, priceIncrement);
+        _map.putInt(AUCTION, 0);
+        _map.putInt(LEVEL_CAPACITY, _levelCapacity);
+        _map.putLong(NEXT_STAMP, 0);
+        for (int i = 0; i < _levelsHigh; i++)
+            _map.putInt(levelPos(i) + FLAGS_OFFSET_LEVEL, 0);
+        indexLevels();
+        ClearOrders();
+        _overflow = false;
+        _valid = true;
+    }
+
+    /**
+     * Marks the book consistent as of the input.
+     */
+    void Checkpoint(long lastInput) {
+        if (_overflow) return;
+        _map.putLong(LAST_INPUT, lastInput);
+        _map.putInt(CLEAN, 1);
+        _dirty = false;
+    }
+
+    void setAuction(boolean auction) {
+        markDirty();
+        _map.putInt(AUCTION, auction ? 1 : 0);
+    }
+
+    /**
+     * @param quantity -- new level quantity; 0 or less removes the level
+     */
+    void PutLevel(boolean isBuy, double price, double quantity) {
+        markDirty();
+        long key = levelKey(isBuy, price);
+        int level = _levelIndex.Get(key);
+        if (quantity <= 0) {
+            if (level == LongIntIndex.MISSING) return;
+            _levelIndex.Remove(key);
+            _map.putInt(levelPos(level) + FLAGS_OFFSET_LEVEL, 0);
+            _freeLevels[_freeCount++] = level;
+            return;
+        }
+        if (level == LongIntIndex.MISSING) {
+            if (_freeCount == 0) {
+                // Stays dirty, so it is never restored from, until the next Reset
+                if (!_overflow)
+                    logger.error("Mapped book is out of level records; it will not be restored from");
+                _overflow = true;
+                return;
+            }
+            level = _freeLevels[--_freeCount];
+            _levelsHigh = Math.max(_levelsHigh, level + 1);
+            _levelIndex.Put(key, level);
+            int pos = levelPos(level);
+            _map.putDouble(pos, price);
+            _map.putInt(pos + FLAGS_OFFSET_LEVEL, USED | (isBuy ? BUY : 0));
+        }
+        _map.putDouble(levelPos(level) + 8, quantity);
+    }
+
+    /**
+     * @return one past the highest level record that may be in use
+     */
+    int getLevelLimit() { return _levelsHigh; }
+
+    boolean isLevelUsed(int i) { return (_map.getInt(levelPos(i) + FLAGS_OFFSET_LEVEL) & USED) != 0; }
+
+    boolean isLevelBuy(int i) { return (_map.getInt(levelPos(i) + FLAGS_OFFSET_LEVEL) & BUY) != 0; }
+
+    double getLevelPrice(int i) { return _map.getDouble(levelPos(i)); }
+
+    double getLevelQuantity(int i) { return _map.getDouble(levelPos(i) + 8); }
+
+    /**
+     * Records a new order in the slot, behind every order recorded before it.
+     */
+    void PutOrder(int slot, long orderId, boolean isBuy, double price, double quantity) {
+        markDirty();
+        if (slot >= _orderCapacity) grow(slot + 1);
+        _ordersHigh = Math.max(_ordersHigh, slot + 1);
+        long stamp = _map.getLong(NEXT_STAMP);
+        _map.putLong(NEXT_STAMP, stamp + 1);
+        int pos = orderPos(slot);
+        _map.putLong(pos, orderId);
+        _map.putLong(pos + 8, stamp);
+        _map.putDouble(pos + 16, price);
+        _map.putDouble(pos + 24, quantity);
+        _map.putInt(pos + FLAGS_OFFSET_ORDER, USED | (isBuy ? BUY : 0));
+    }
+
+    void setOrderQuantity(int slot, double quantity) {
+        markDirty();
+        _map.putDouble(orderPos(slot) + 24, quantity);
+    }
+
+    void setOrderId(int slot, long orderId) {
+        markDirty();
+        _map.putLong(orderPos(slot), orderId);
+    }
+
+    void FreeOrder(int slot) {
+        markDirty();
+        _map.putInt(orderPos(slot) + FLAGS_OFFSET_ORDER, 0);
+    }
+
+    void ClearOrders() {
+        markDirty();
+        for (int i = 0; i < _ordersHigh; i++)
+            _map.putInt(orderPos(i) + FLAGS_OFFSET_ORDER, 0);
+        _ordersHigh = 0;
+    }
+
+    /**
+     * @return one past the highest order slot that may be in use
+     */
+    int getOrderLimit() { return _ordersHigh; }
+
+    boolean isOrderUsed(int i) { return (_map.getInt(orderPos(i) + FLAGS_OFFSET_ORDER) & USED) != 0; }
+
+    boolean isOrderBuy(int i) { return (_map.getInt(orderPos(i) + FLAGS_OFFSET_ORDER) & BUY) != 0; }
+
+    long getOrderId(int i) { return _map.getLong(orderPos(i)); }
+
+    long getOrderStamp(int i) { return _map.getLong(orderPos(i) + 8); }
+
+    double getOrderPrice(int i) { return _map.getDouble(orderPos(i) + 16); }
+
+    double getOrderQuantity(int i) { return _map.getDouble(orderPos(i) + 24); }
+
+    public void close() throws IOException {
+        _map = null;
+        _file.close();
+    }
+
+    private void markDirty() {
+        if (_dirty) return;
+        _map.putInt(CLEAN, 0);
+        _dirty = true;
+    }
+
+    private void map(int orderCapacity) throws IOException {
+        _orderCapacity = orderCapacity;
+        _map = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size(orderCapacity));
+        _map.putInt(ORDER_CAPACITY, orderCapacity);
+    }
+
+    /**
+     * Remaps a larger file; the new order records start out free.
+     */
+    private void grow(int needed) {
+        int old = _orderCapacity;
+        int capacity = Math.max(needed, old * 2);
+        try {
+            map(capacity);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not grow the mapped book to " + capacity + " orders", e);
+        }
+        for (int i = old; i < capacity; i++)
+            _map.putInt(orderPos(i) + FLAGS_OFFSET_ORDER, 0);
+        logger.info("Mapped book grown to {} orders", capacity);
+    }
+
+    /**
+     * Rebuilds the level index and free list; free records are handed out lowest first, so
+     * the records in use stay packed below _levelsHigh.
+     */
+    private void indexLevels() {
+        _levelIndex.Clear();
+        _freeCount = 0;
+        int high = 0;
+        for (int i = _levelCapacity - 1; i >= 0; i--) {
+            if (i < _levelsHigh && isLevelUsed(i)) {
+                _levelIndex.Put(levelKey(isLevelBuy(i), getLevelPrice(i)), i);
+                high = Math.max(high, i + 1);
+            }
+            else
+                _freeLevels[_freeCount++] = i;
+        }
+        _levelsHigh = high;
+    }
+
+    private long size(int orderCapacity) {
+        return HEADER_SIZE + (long) _levelCapacity * LEVEL_SIZE + (long) orderCapacity * ORDER_SIZE;
+    }
+
+    private int levelPos(int level) { return HEADER_SIZE + level * LEVEL_SIZE; }
+
+    private int orderPos(int slot) { return HEADER_SIZE + _levelCapacity * LEVEL_SIZE + slot * ORDER_SIZE; }
+
+    private static long levelKey(boolean isBuy, double price) {
+        long bits = Double.doubleToLongBits(price);
+        return isBuy ? (bits ^ Long.MIN_VALUE) : bits;
+    }
+
+    private final static int MAGIC = 0x4D424B31; // "MBK1"
+    private final static int HEADER_SIZE = 64;
+    private final static int LEVEL_SIZE = 24;
+    private final static int ORDER_SIZE = 40;
+    private final static int FLAGS_OFFSET_LEVEL = 16;
+    private final static int FLAGS_OFFSET_ORDER = 32;
+    private final static int USED = 1;
+    private final static int BUY = 2;
+
+    // Header fields
+    private final static int MAGIC_POS = 0;
+    private final static int CLEAN = 4;
+    private final static int LAST_INPUT = 8;
+    private final static int PAR = 16;
+    private final static int PRICE_INC = 24;
+    private final static int AUCTION = 32;
+    private final static int LEVEL_CAPACITY = 36;
+    private final static int ORDER_CAPACITY = 40;
+    private final static int NEXT_STAMP = 48;
+
+    private final RandomAccessFile _file;
+    private MappedByteBuffer _map;
+    private final int _levelCapacity;
+    private int _orderCapacity;
+    private final LongIntIndex _levelIndex;
+    private final int[] _freeLevels;
+    private int _freeCount;
+    private int _levelsHigh;
+    private int _ordersHigh;
+    private boolean _valid;
+    private boolean _dirty;
+    private boolean _overflow;
+}
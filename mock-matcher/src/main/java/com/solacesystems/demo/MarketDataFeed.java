@@ -0,0 +1,255 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.conn.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Incremental level-2 market data for one instrument, fed by the Matcher's level changes.
+ *
+ * Changes are conflated per level until the next publish: however many times a level
+ * changes in between, only its latest quantity goes out. Updates are published at most
+ * once per update interval, and not at all while the publisher reports backpressure, so a
+ * slow path to consumers means fewer, fresher updates rather than a growing backlog. Only
+ * the top `depth` non-empty levels of each side are published; when a level moves up into
+ * the top levels it is sent with its current quantity. Consumers keep the best `depth`
+ * levels per side.
+ *
+ * A snapshot of the top levels goes to the snapshot topic periodically, when the instance
+ * becomes active, and when the book is replaced, so late joiners and consumers that saw a
+ * sequence gap can resynchronize. Nothing is published while the instance is not active.
+ *
+ * Level changes arrive on the matcher thread while snapshots may be timer-driven, so all
+ * methods synchronize on the feed; Matcher changes must be made under the same lock.
+ */
+class MarketDataFeed implements Matcher.LevelListener {
+    private static final Logger logger = LoggerFactory.getLogger(MarketDataFeed.class);
+
+    interface Publisher {
+        void Publish(String topic, ByteBuffer frame);
+    }
+
+    /**
+     * @param depth -- number of levels per side published
+     * @param updateIntervalMillis -- minimum time between update frames; changes in between are conflated
+     * @param snapshotIntervalMillis -- time between periodic snapshots
+     * @param backpressured -- when true, updates are held back and keep conflating; may be null
+     */
+    MarketDataFeed(String appId, String instrument, int depth, long updateIntervalMillis, long snapshotIntervalMillis,
+                   Publisher publisher, BooleanSupplier backpressured) {
+        if (depth < 1)
+            throw new IllegalStateException("Market data depth must be at least 1");
+        _instrument = instrument;
+        _depth = depth;
+        _updateInterval = updateIntervalMillis;
+        _snapshotInterval = snapshotIntervalMillis;
+        _publisher = publisher;
+        _backpressured = backpressured;
+        _updateTopic = "md/" + appId + "/" + instrument + "/update";
+        _snapshotTopic = "md/" + appId + "/" + instrument + "/snapshot";
+    }
+
+    /**
+     * Follows the given book from now on, e.g. after it was replaced from a state message.
+     */
+    synchronized void Attach(Matcher matcher) {
+        if (_matcher == matcher) return;
+        if (_matcher != null)
+            _matcher.setLevelListener(null);
+        _matcher = matcher;
+        if (_matcher != null)
+            _matcher.setLevelListener(this);
+        _pendingCount = 0;
+        _snapshotDue = true;
+    }
+
+    synchronized void SetActive(boolean active) {
+        if (active && !_active)
+            _snapshotDue = true;
+        _active = active;
+    }
+
+    public synchronized void OnLevelChange(boolean isBuy, double price, double quantity) {
+        if (_active)
+            conflate(isBuy, price, quantity);
+    }
+
+    /**
+     * Publishes a snapshot if one is due, or else the conflated updates if the update
+     * interval has passed; call after each change to the book and from a timer.
+     */
+    synchronized void Publish(long nowMillis) {
+        if (!_active || _matcher == null) {
+            _pendingCount = 0;
+            return;
+        }
+        if (_backpressured != null && _backpressured.getAsBoolean())
+            return;
+        if (_snapshotDue || (nowMillis - _lastSnapshot) >= _snapshotInterval) {
+            publishSnapshot();
+            _lastSnapshot = _lastUpdate = nowMillis;
+        }
+        else if ((nowMillis - _lastUpdate) >= _updateInterval) {
+            if (publishUpdate())
+                _lastUpdate = nowMillis;
+        }
+    }
+
+    synchronized long getSequence() { return _sequence; }
+
+    String getUpdateTopic() { return _updateTopic; }
+
+    String getSnapshotTopic() { return _snapshotTopic; }
+
+    private void conflate(boolean isBuy, double price, double quantity) {
+        for (int i = 0; i < _pendingCount; i++) {
+            if (_pendingPx[i] == price && _pendingBuy[i] == isBuy) {
+                _pendingQty[i] = quantity;
+                return;
+            }
+        }
+        if (_pendingCount == _pendingPx.length) {
+            int size = _pendingCount * 2;
+            _pendingBuy = Arrays.copyOf(_pendingBuy, size);
+            _pendingPx = Arrays.copyOf(_pendingPx, size);
+            _pendingQty = Arrays.copyOf(_pendingQty, size);
+        }
+        _pendingBuy[_pendingCount] = isBuy;
+        _pendingPx[_pendingCount] = price;
+        _pendingQty[_pendingCount] = quantity;
+        _pendingCount++;
+    }
+
+    /**
+     * @return false if there was nothing to publish
+     */
+    private boolean publishUpdate() {
+        if (_pendingCount == 0) return false;
+        double buyBound = boundary(_matcher.getBuys());
+        double sellBound = boundary(_matcher.getSells());
+        promoteEntered(_matcher.getBuys(), true, _lastBuyBound);
+        promoteEntered(_matcher.getSells(), false, _lastSellBound);
+        _lastBuyBound = buyBound;
+        _lastSellBound = sellBound;
+
+        int count = 0;
+        for (int i = 0; i < _pendingCount; i++)
+            if (inTop(_pendingBuy[i], _pendingPx[i], buyBound, sellBound)) count++;
+        if (count > 0) {
+            ByteBuffer buf = frame(count);
+            MarketDataFrame.PutHeader(buf, false, ++_sequence, _instrument, count);
+            for (int i = 0; i < _pendingCount; i++)
+                if (inTop(_pendingBuy[i], _pendingPx[i], buyBound, sellBound))
+                    MarketDataFrame.PutLevel(buf, _pendingBuy[i], _pendingPx[i], _pendingQty[i]);
+            _publisher.Publish(_updateTopic, buf);
+        }
+        _pendingCount = 0;
+        return count > 0;
+    }
+
+    private void publishSnapshot() {
+        List<Matcher.Lvl> buys = _matcher.getBuys();
+        List<Matcher.Lvl> sells = _matcher.getSells();
+        int count = nonEmpty(buys) + nonEmpty(sells);
+        ByteBuffer buf = frame(count);
+        MarketDataFrame.PutHeader(buf, true, _sequence, _instrument, count);
+        putTop(buf, buys, true);
+        putTop(buf, sells, false);
+        _publisher.Publish(_snapshotTopic, buf);
+        logger.debug("Published {} level snapshot at sequence {}", count, _sequence);
+
+        _lastBuyBound = boundary(buys);
+        _lastSellBound = boundary(sells);
+        _pendingCount = 0;
+        _snapshotDue = false;
+    }
+
+    /**
+     * @return the price of the depth'th non-empty level, or NaN if the side has fewer
+     */
+    private double boundary(List<Matcher.Lvl> side) {
+        int seen = 0;
+        for (int i = 0; i < side.size(); i++) {
+            Matcher.Lvl lvl = side.get(i);
+            if (lvl.getQuantity() > 0 && ++seen == _depth)
+                return lvl.getPrice();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Adds top levels that were beyond the last published boundary, so consumers learn about
+     * levels that moved up as better ones emptied.
+     */
+    private void promoteEntered(List<Matcher.Lvl> side, boolean isBuy, double lastBound) {
+        if (Double.isNaN(lastBound)) return;
+        int seen = 0;
+        for (int i = 0; i < side.size() && seen < _depth; i++) {
+            Matcher.Lvl lvl = side.get(i);
+            if (lvl.getQuantity() <= 0) continue;
+            seen++;
+            if (isBuy ? lvl.getPrice() < lastBound : lvl.getPrice() > lastBound)
+                conflate(isBuy, lvl.getPrice(), lvl.getQuantity());
+        }
+    }
+
+    private static boolean inTop(boolean isBuy, double price, double buyBound, double sellBound) {
+        if (isBuy)
+            return Double.isNaN(buyBound) || price >= buyBound;
+        return Double.isNaN(sellBound) || price <= sellBound;
+    }
+
+    private int nonEmpty(List<Matcher.Lvl> side) {
+        int count = 0;
+        for (int i = 0; i < side.size() && count < _depth; i++)
+            if (side.get(i).getQuantity() > 0) count++;
+        return count;
+    }
+
+    private void putTop(ByteBuffer buf, List<Matcher.Lvl> side, boolean isBuy) {
+        int count = 0;
+        for (int i = 0; i < side.size() && count < _depth; i++) {
+            Matcher.Lvl lvl = side.get(i);
+            if (lvl.getQuantity() <= 0) continue;
+            MarketDataFrame.PutLevel(buf, isBuy, lvl.getPrice(), lvl.getQuantity());
+            count++;
+        }
+    }
+
+    private ByteBuffer frame(int count) {
+        _sndbuf.clear();
+        _sndbuf = BufferPool.getDefault().EnsureRemaining(_sndbuf, MarketDataFrame.EncodedSize(_instrument, count));
+        return _sndbuf;
+    }
+
+    private final String _instrument;
+    private final int _depth;
+    private final long _updateInterval;
+    private final long _snapshotInterval;
+    private final Publisher _publisher;
+    private final BooleanSupplier _backpressured;
+    private final String _updateTopic;
+    private final String _snapshotTopic;
+
+    private Matcher _matcher;
+    private boolean _active;
+    private boolean _snapshotDue = true;
+    private long _sequence;
+    private long _lastUpdate;
+    private long _lastSnapshot;
+    private double _lastBuyBound = Double.NaN;
+    private double _lastSellBound = Double.NaN;
+
+    // Conflated changes since the last publish, one entry per level
+    private boolean[] _pendingBuy = new boolean[16];
+    private double[] _pendingPx = new double[16];
+    private double[] _pendingQty = new double[16];
+    private int _pendingCount;
+
+    private ByteBuffer _sndbuf = BufferPool.getDefault().Acquire(256);
+}
@@ -0,0 +1,100 @@
+package com.solacesystems.demo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary level-2 market-data message published by MarketDataFeed, either an incremental
+ * update or a snapshot of the top levels:
+ *
+ *   int    magic ("L2U1" for updates, "L2S1" for snapshots)
+ *   long   feed sequence; one per frame, so consumers can spot a gap and wait for a snapshot
+ *   byte   instrument length, followed by that many ASCII bytes
+ *   int    level count
+ *   count x { byte side (0 = buy, 1 = sell), double price, double quantity }
+ *
+ * A quantity of 0 removes the level. A snapshot carries the feed sequence of the last
+ * update it includes; apply only updates with a later sequence on top of it. All values
+ * are big-endian, like TradeFrame.
+ */
+class MarketDataFrame {
+
+    static class Level {
+        Level(boolean isBuy, double price, double quantity) {
+            this.isBuy = isBuy;
+            this.price = price;
+            this.quantity = quantity;
+        }
+        final boolean isBuy;
+        final double price;
+        final double quantity;
+    }
+
+    /**
+     * @return bytes needed to encode a frame of the given number of levels
+     */
+    static int EncodedSize(String instrument, int count) {
+        return HEADER_SIZE + instrumentLength(instrument) + (count * RECORD_SIZE);
+    }
+
+    /**
+     * Writes the header at the buffer's position; exactly `count` PutLevel calls must follow.
+     */
+    static void PutHeader(ByteBuffer buffer, boolean snapshot, long sequence, String instrument, int count) {
+        buffer.putInt(snapshot ? SNAPSHOT_MAGIC : UPDATE_MAGIC);
+        buffer.putLong(sequence);
+        int len = instrumentLength(instrument);
+        buffer.put((byte) len);
+        for (int i = 0; i < len; i++)
+            buffer.put((byte) instrument.charAt(i));
+        buffer.putInt(count);
+    }
+
+    static void PutLevel(ByteBuffer buffer, boolean isBuy, double price, double quantity) {
+        buffer.put(isBuy ? BUY : SELL);
+        buffer.putDouble(price);
+        buffer.putDouble(quantity);
+    }
+
+    static boolean IsSnapshot(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position()) == SNAPSHOT_MAGIC;
+    }
+
+    static long Sequence(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + 4);
+    }
+
+    /**
+     * Reads a frame from the buffer's position; mostly useful for tests and tools.
+     *
+     * @return the levels, or null if the buffer does not hold a frame
+     */
+    static List<Level> Decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE)
+            return null;
+        int magic = buffer.getInt();
+        if (magic != UPDATE_MAGIC && magic != SNAPSHOT_MAGIC)
+            return null;
+        buffer.getLong();
+        int len = buffer.get() & 0xFF;
+        buffer.position(buffer.position() + len);
+        int count = buffer.getInt();
+        List<Level> levels = new ArrayList<Level>(count);
+        for (int i = 0; i < count; i++)
+            levels.add(new Level(buffer.get() == BUY, buffer.getDouble(), buffer.getDouble()));
+        return levels;
+    }
+
+    private static int instrumentLength(String instrument) {
+        return (instrument == null) ? 0 : Math.min(instrument.length(), MAX_INSTRUMENT);
+    }
+
+    final static int UPDATE_MAGIC   = 0x4C325531;
+    final static int SNAPSHOT_MAGIC = 0x4C325331;
+    final static int HEADER_SIZE = 4 + 8 + 1 + 4;
+    final static int RECORD_SIZE = 1 + 8 + 8;
+    private final static byte BUY  = 0;
+    private final static byte SELL = 1;
+    private final static int MAX_INSTRUMENT = 255;
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 class Matcher {
@@ -32,17 +33,47 @@ class Matcher {
         public void setQuantity(double q) {
             quantity = q;
         }
-        private final double price;
+        /**
+         * Only for reusing a pruned level
+         */
+        void reset(double px, double qty) {
+            price = px;
+            quantity = qty;
+        }
+        private double price;
         private double quantity;
     }
 
+    /**
+     * Told about every change to a level's quantity, including levels emptied by trades.
+     */
+    interface LevelListener {
+        void OnLevelChange(boolean isBuy, double price, double quantity);
+    }
+
+    /**
+     * Receives the fills of an incoming order, each at the price of the level it traded with.
+     */
+    interface FillSink {
+        void OnFill(double price, double quantity);
+    }
+
     private Matcher() {
         throw new InvalidParameterException();
     }
 
     public Matcher(double par, double pxIncrement) {
+        this( par, pxIncrement, EventJournal.getDefault() );
+    }
+
+    /**
+     * @param journal -- where trades and level changes are recorded; an EventJournal that
+     *                   is never started records nothing
+     */
+    Matcher(double par, double pxIncrement, EventJournal journal) {
         this.par = par;
         this.pxIncrement = pxIncrement;
+        this.journal = journal;
     }
 
     public double getPar() { return this.par; }
@@ -51,6 +82,13 @@ class Matcher {
         return this.pxIncrement;
     }
 
+    /**
+     * @param listener -- receives level changes from now on; null to stop
+     */
+    void setLevelListener(LevelListener listener) {
+        this.listener = listener;
+    }
+
     public List<Lvl> getBuys() {
         return buys;
     }
@@ -59,6 +97,120 @@ class Matcher {
         return sells;
     }
 
+    /**
+     * Resting orders behind the levels, in time priority. State messages carry them, so a
+     * matcher rebuilt from one can cancel and replace orders given to the one it follows.
+     */
+    OrderBook getOrders() {
+        return orders;
+    }
+
+    /**
+     * @param sequence -- id of the last input applied, recorded in the version
+     * @return immutable copy of the levels as they are now, safe to read from any thread
+     */
+    BookVersion getVersion(long sequence) {
+        return new BookVersion( par, pxIncrement, auction, versionBuys, versionSells, sequence );
+    }
+
+    /**
+     * Queues an order at the back of its level without matching it; only for deserializers
+     * that have filled the sides directly and restore the orders behind them, oldest first.
+     *
+     * @return false if an order with the id is already resting
+     */
+    boolean restOrder(long orderId, boolean isBuy, double price, double quantity) {
+        return orders.Add( orderId, isBuy, price, quantity ) != OrderBook.NIL;
+    }
+
+    /**
+     * Rebuilds the versioned levels from the sides; only for deserializers that fill the
+     * sides directly.
+     */
+    void Reindex() {
+        versionBuys = PersistentLevels.EMPTY;
+        for (Lvl lvl : buys)
+            versionBuys = versionBuys.Put( lvl.getPrice(), lvl.getQuantity() );
+        versionSells = PersistentLevels.EMPTY;
+        for (Lvl lvl : sells)
+            versionSells = versionSells.Put( lvl.getPrice(), lvl.getQuantity() );
+    }
+
+    /**
+     * Rebuilds a matcher from the book a previous run left in a mapped file, orders in their
+     * original time priority, and keeps writing through to the file.
+     *
+     * @param store -- a book for which isValid() is true
+     */
+    static Matcher Restore(MappedBook store) {
+        Matcher matcher = new Matcher( store.getPar(), store.getPriceIncrement() );
+        matcher.auction = store.isInAuction();
+        for (int i = 0; i < store.getLevelLimit(); i++) {
+            if (!store.isLevelUsed( i )) continue;
+            boolean isBuy = store.isLevelBuy( i );
+            double price = store.getLevelPrice( i );
+            List<Lvl> side = isBuy ? matcher.buys : matcher.sells;
+            side.add( levelIndex( side, isBuy, price ), new Lvl( price, store.getLevelQuantity( i ) ) );
+        }
+        // Orders are requeued oldest first, which rewrites their records under new slots
+        int count = 0;
+        for (int i = 0; i < store.getOrderLimit(); i++)
+            if (store.isOrderUsed( i )) count++;
+        Integer[] slots = new Integer[count];
+        for (int i = 0, n = 0; n < count; i++)
+            if (store.isOrderUsed( i )) slots[n++] = i;
+        Arrays.sort( slots, (a, b) -> Long.compare( store.getOrderStamp( a ), store.getOrderStamp( b ) ) );
+        long[] ids = new long[count];
+        boolean[] isBuy = new boolean[count];
+        double[] prices = new double[count];
+        double[] quantities = new double[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = store.getOrderId( slots[i] );
+            isBuy[i] = store.isOrderBuy( slots[i] );
+            prices[i] = store.getOrderPrice( slots[i] );
+            quantities[i] = store.getOrderQuantity( slots[i] );
+        }
+        long lastInput = store.getLastInput();
+        matcher.store = store;
+        matcher.orders.setMirror( store );
+        for (int i = 0; i < count; i++)
+            matcher.orders.Add( ids[i], isBuy[i], prices[i], quantities[i] );
+        store.Checkpoint( lastInput );
+        matcher.Reindex();
+        return matcher;
+    }
+
+    /**
+     * Writes the whole book to the mapped file, replacing whatever it held, and keeps the
+     * file current from now on.
+     *
+     * @param store -- mapped book to write through to; null to stop
+     * @param lastInput -- sequence id the book is consistent with
+     */
+    void setStore(MappedBook store, long lastInput) {
+        this.store = store;
+        if (store == null) {
+            orders.setMirror( null );
+            return;
+        }
+        store.Reset( par, pxIncrement );
+        store.setAuction( auction );
+        for (Lvl lvl : buys)
+            store.PutLevel( true, lvl.getPrice(), lvl.getQuantity() );
+        for (Lvl lvl : sells)
+            store.PutLevel( false, lvl.getPrice(), lvl.getQuantity() );
+        orders.setMirror( store );
+        store.Checkpoint( lastInput );
+    }
+
+    /**
+     * Marks the mapped file, if there is one, consistent as of the input.
+     */
+    void Checkpoint(long lastInput) {
+        if (store != null)
+            store.Checkpoint( lastInput );
+    }
+
     public double minPrice() {
         if (buys.size() == 0) {
             if (sells.size() == 0)
@@ -76,109 +228,367 @@ class Matcher {
         return sells.get( sells.size()-1 ).getPrice();
     }
 
+    /**
+     * Convenience form of addOrder(order, sink) collecting the fills as Trades.
+     *
+     * @return the order's trades; empty if it only rested
+     */
     public List<Trade> addOrder(ClientOrder order) {
-        if (order.isBuy()) {
-            int blen = buys.size();
-            for(int b = 0; b < blen; b++) {
-                Lvl buy = buys.get(b);
-                // highest price at the middle (top of the stack)
-                if (order.getPrice() == buy.getPrice()) {
-                    buy.addQuantity((int)order.getQuantity());
-                    return findSellMatches( buy, b );
-                }
-                else if (order.getPrice() > buy.getPrice()) {
-                    Lvl newBuy = new Lvl(order);
-                    buys.add(b, newBuy);
-                    return findSellMatches( buy, b );
-                }
-            }
-            buys.add(new Lvl(order));
+        final List<Trade> trades = new ArrayList<Trade>();
+        addOrder( order, (price, quantity) -> {
+            Trade trade = new Trade();
+            trade.setInstrument( order.getInstrument() );
+            trade.setPrice( price );
+            trade.setQuantity( quantity );
+            trades.add( trade );
+        });
+        return trades;
+    }
+
+    /**
+     * Matches the order against the opposite side in one pass from its best price, filling
+     * the order's remaining quantity level by level at each level's price until the order is
+     * done or the next level is beyond its limit; any remainder then rests on the order's
+     * side. The cost is proportional to the levels actually crossed.
+     *
+     * @param sink -- told about each fill, in sweep order
+     */
+    public void addOrder(ClientOrder order, FillSink sink) {
+        boolean isBuy = order.isBuy();
+        double limit = order.getPrice();
+        if (Double.isNaN( limit )) {
+            // Without a limit the order would sweep the whole book
+            logger.warn( "Order {} has no price; ignored", order.getSequenceId() );
+            return;
         }
-        else {
-            int slen = sells.size();
-            for(int s = 0; s < slen; s++) {
-                Lvl sell = sells.get(s);
-                // lowest price at the middle (bottom of the stack)
-                if (order.getPrice() == sell.getPrice()) {
-                    sell.addQuantity((int)order.getQuantity());
-                    return findBuyMatches( sell, s );
-                }
-                else if (order.getPrice() < sell.getPrice()) {
-                    Lvl newSell = new Lvl(order);
-                    sells.add(s, newSell);
-                    return findBuyMatches( sell, s );
-                }
+        // During an auction orders only accumulate, crossed or not, until the uncross
+        double remaining = auction ? order.getQuantity()
+                : sweep( isBuy ? sells : buys, !isBuy, limit, order.getQuantity(), sink );
+        if (remaining > 0)
+            rest( order, remaining );
+        pruneEmptyLevels();
+    }
+
+    /**
+     * @return the aggressor's quantity left once the crossing levels are used up
+     */
+    private double sweep(List<Lvl> opposite, boolean oppositeIsBuy, double limit, double quantity, FillSink sink) {
+        double remaining = quantity;
+        int size = opposite.size();
+        // Best price first; a level is only passed once it is empty
+        for (int i = 0; i < size && remaining > 0; i++) {
+            Lvl lvl = opposite.get(i);
+            double price = lvl.getPrice();
+            if (oppositeIsBuy ? price < limit : price > limit)
+                break;
+            double available = lvl.getQuantity();
+            double filled = Math.min( remaining, available );
+            remaining -= filled;
+            // Resting orders are filled in time priority
+            orders.Fill( oppositeIsBuy, price, filled );
+            lvl.setQuantity( (filled == available) ? 0 : available - filled );
+            journal.Trade( price, filled );
+            sink.OnFill( price, filled );
+            // An emptied level still gets its 0-quantity event; it is pruned once the order is done
+            levelChanged( oppositeIsBuy, price, lvl.getQuantity() );
+            if (lvl.getQuantity() > 0)
+                break;
+        }
+        return remaining;
+    }
+
+    /**
+     * Takes a resting order off the book.
+     *
+     * @return the quantity cancelled, or NaN if the order is not resting
+     */
+    public double cancelOrder(long orderId) {
+        if (!orders.Contains( orderId ))
+            return Double.NaN;
+        boolean isBuy = orders.isBuyOrder( orderId );
+        double price = orders.getOrderPrice( orderId );
+        double quantity = orders.Cancel( orderId );
+        Lvl lvl = findLevel( isBuy, price );
+        if (lvl != null) {
+            double left = lvl.getQuantity() - quantity;
+            // Don't let rounding keep a level alive once its last order is gone
+            if (left < QUANTITY_EPSILON && orders.getLevelOrderCount( isBuy, price ) == 0)
+                left = 0;
+            lvl.setQuantity( left );
+            levelChanged( isBuy, price, left );
+            pruneEmptyLevels();
+        }
+        return quantity;
+    }
+
+    /**
+     * Replaces the resting order named by the order's origSequenceId with the order's price
+     * and quantity, on the resting order's side. Lowering only the quantity keeps the order's
+     * place in the queue; any other change requeues it and may trade like a new order.
+     *
+     * @param sink -- told about the fills of a requeued order
+     * @return false if the order is not resting
+     */
+    public boolean replaceOrder(ClientOrder order, FillSink sink) {
+        long orig = order.getOrigSequenceId();
+        if (!orders.Contains( orig ))
+            return false;
+        boolean isBuy = orders.isBuyOrder( orig );
+        double price = orders.getOrderPrice( orig );
+        double resting = orders.getOrderQuantity( orig );
+        if (order.getQuantity() <= 0) {
+            cancelOrder( orig );
+            return true;
+        }
+        if (order.getPrice() == price && order.getQuantity() <= resting
+                && orders.Amend( orig, order.getSequenceId(), order.getQuantity() )) {
+            Lvl lvl = findLevel( isBuy, price );
+            if (lvl != null) {
+                lvl.addQuantity( order.getQuantity() - resting );
+                levelChanged( isBuy, price, lvl.getQuantity() );
+                pruneEmptyLevels();
             }
-            sells.add(new Lvl(order));
+            return true;
         }
-        return null;
+        cancelOrder( orig );
+        order.setIsBuy( isBuy );
+        addOrder( order, sink );
+        return true;
+    }
+
+    /**
+     * Starts an auction: from now on orders rest without matching until uncross().
+     */
+    public void startAuction() {
+        setAuction( true );
+    }
+
+    public boolean isInAuction() {
+        return auction;
+    }
+
+    /**
+     * Only for deserializers restoring a book taken during an auction
+     */
+    void setInAuction(boolean inAuction) {
+        setAuction( inAuction );
     }
 
-    private List<Trade> findSellMatches(Lvl buy, int b) {
-        List<Trade> trades = new ArrayList<Trade>();
-        for(int s = 0; s < sells.size(); s++) {
+    /**
+     * Ends the auction by executing the most quantity possible at a single equilibrium price
+     * (see Auction), buys and sells each in price-time priority, then returns to continuous
+     * matching. Ties between prices are broken towards par.
+     *
+     * @param sink -- told about every uncross trade, all at the equilibrium price
+     * @return the equilibrium price, or NaN if the book was not crossed
+     */
+    public double uncross(FillSink sink) {
+        setAuction( false );
+        if (buys.isEmpty() || sells.isEmpty() || buys.get(0).getPrice() < sells.get(0).getPrice())
+            return Double.NaN;
+
+        int count = candidates();
+        Auction equilibrium = new Auction( gridPrices, gridBids, gridAsks, count, par );
+        int best = equilibrium.Equilibrium();
+        if (best < 0)
+            return Double.NaN;
+        double price = equilibrium.getPrice( best );
+        double remaining = equilibrium.getVolume( best );
+
+        // Pair buys and sells off from the best of each side until the volume is done
+        int b = 0, s = 0;
+        boolean buyTouched = false, sellTouched = false;
+        while (remaining > QUANTITY_EPSILON && b < buys.size() && s < sells.size()) {
+            Lvl buy = buys.get(b);
             Lvl sell = sells.get(s);
-            if ( sell.getPrice() > buy.getPrice() )
-                return trades;
-            Trade trade = trade( buy, b, sell, s );
-            trades.add( trade );
+            double quantity = Math.min( remaining, Math.min( buy.getQuantity(), sell.getQuantity() ) );
+            remaining -= quantity;
+            buyTouched = sellTouched = true;
+            if (quantity > 0) {
+                orders.Fill( true, buy.getPrice(), quantity );
+                orders.Fill( false, sell.getPrice(), quantity );
+                buy.setQuantity( (quantity == buy.getQuantity()) ? 0 : buy.getQuantity() - quantity );
+                sell.setQuantity( (quantity == sell.getQuantity()) ? 0 : sell.getQuantity() - quantity );
+                journal.Trade( price, quantity );
+                sink.OnFill( price, quantity );
+            }
+            if (buy.getQuantity() <= 0) {
+                levelChanged( true, buy.getPrice(), 0 );
+                buyTouched = false;
+                b++;
+            }
+            if (sell.getQuantity() <= 0) {
+                levelChanged( false, sell.getPrice(), 0 );
+                sellTouched = false;
+                s++;
+            }
         }
-        return trades;
+        if (buyTouched)
+            levelChanged( true, buys.get(b).getPrice(), buys.get(b).getQuantity() );
+        if (sellTouched)
+            levelChanged( false, sells.get(s).getPrice(), sells.get(s).getQuantity() );
+        pruneEmptyLevels();
+        return price;
     }
 
-    private List<Trade> findBuyMatches(Lvl sell, int s) {
-        List<Trade> trades = new ArrayList<Trade>();
-        for(int b = 0; b < buys.size(); b++) {
-            Lvl buy = buys.get(b);
-            if ( sell.getPrice() > buy.getPrice() )
-                return trades;
-            Trade trade = trade( buy, b, sell, s );
-            trades.add( trade );
+    /**
+     * Merges the prices of the crossed levels into the ascending candidate grid, with the
+     * buy and sell quantity at each.
+     *
+     * @return the number of candidates
+     */
+    private int candidates() {
+        double bestBid = buys.get(0).getPrice();
+        double bestAsk = sells.get(0).getPrice();
+        int nb = levelIndex( buys, true, bestAsk );
+        if (nb < buys.size() && buys.get(nb).getPrice() == bestAsk) nb++;
+        int ns = levelIndex( sells, false, bestBid );
+        if (ns < sells.size() && sells.get(ns).getPrice() == bestBid) ns++;
+        if (gridPrices.length < nb + ns) {
+            gridPrices = new double[nb + ns];
+            gridBids = new double[nb + ns];
+            gridAsks = new double[nb + ns];
         }
-        return trades;
+
+        // Buys run best (highest) first, so walk them backwards to merge in ascending order
+        int b = nb - 1, s = 0, count = 0;
+        while (b >= 0 || s < ns) {
+            double bp = (b >= 0) ? buys.get(b).getPrice() : Double.POSITIVE_INFINITY;
+            double sp = (s < ns) ? sells.get(s).getPrice() : Double.POSITIVE_INFINITY;
+            double price = Math.min( bp, sp );
+            gridPrices[count] = price;
+            gridBids[count] = (bp == price) ? buys.get(b--).getQuantity() : 0;
+            gridAsks[count] = (sp == price) ? sells.get(s++).getQuantity() : 0;
+            count++;
+        }
+        return count;
+    }
+
+    private Lvl findLevel(boolean isBuy, double price) {
+        List<Lvl> side = isBuy ? buys : sells;
+        int i = levelIndex( side, isBuy, price );
+        return (i < side.size() && side.get(i).getPrice() == price) ? side.get(i) : null;
     }
 
-    private Trade trade(Lvl buy, int b, Lvl sell, int s) {
-        Trade trade = new Trade();
-        trade.setPrice( avgPx(buy, sell) );
-        if (sell.getQuantity() > buy.getQuantity() ) {
-            // Create the trade record
-            trade.setQuantity( buy.getQuantity() );
-            logger.info("TRADE: {} @ {}", trade.getQuantity(), trade.getPrice() );
-            // deduct the amount bought from the sell inventory
-            sell.addQuantity( (-1)*buy.getQuantity() );
-            logger.info("NEW SELL QTY: {}", sell.getQuantity() );
-            // the buy side is wiped out, but we want to generate a 0-quantity event for listeners;
-            // after generating the update we'll clear empty levels out
-            buy.setQuantity( 0 );
-            logger.info("CLEARING BUY QTY AT: {}", buy.getPrice() );
+    /**
+     * Rests the order's remaining quantity on its side, behind the orders already at its price.
+     */
+    private void rest(ClientOrder order, double quantity) {
+        boolean isBuy = order.isBuy();
+        double price = order.getPrice();
+        List<Lvl> side = isBuy ? buys : sells;
+        int i = levelIndex( side, isBuy, price );
+        Lvl lvl;
+        if (i < side.size() && side.get(i).getPrice() == price) {
+            lvl = side.get(i);
+            lvl.addQuantity( quantity );
         }
         else {
-            // Create the trade record
-            trade.setQuantity( sell.getQuantity() );
-            logger.info("TRADE: {} @ {}", trade.getQuantity(), trade.getPrice() );
-            // deduct the amount sold from the buy inventory
-            buy.addQuantity( (-1)*sell.getQuantity() );
-            logger.info("NEW BUY QTY: {}", buy.getQuantity() );
-            // the sell side is wiped out, but we want to generate a 0-quantity event for listeners;
-            // after generating the update we'll clear empty levels out
-            sell.setQuantity( 0 );
-            logger.info("CLEARING SELL QTY AT: {}", sell.getPrice() );
-            // if our buy quantity is 0, clear it too
-            if ( 0 >= buy.getQuantity() ) {
-                // buys.remove( b );
-                logger.info("CLEARING BUY QTY AT: {}", buy.getPrice() );
-            }
+            lvl = newLevel( price, quantity );
+            side.add( i, lvl );
         }
-        return trade;
+        if (orders.Add( order.getSequenceId(), isBuy, price, quantity ) == OrderBook.NIL)
+            logger.warn( "Order {} is already resting; only its level tracks the new quantity", order.getSequenceId() );
+        levelChanged( isBuy, price, lvl.getQuantity() );
     }
 
-    private double avgPx(Lvl b, Lvl s) {
-        return (b.getPrice() + s.getPrice()) / 2.0;
+    /**
+     * @return index of the level at the price, or where it would go; both sides run best price first
+     */
+    private static int levelIndex(List<Lvl> side, boolean isBuy, double price) {
+        int lo = 0, hi = side.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double p = side.get(mid).getPrice();
+            if (isBuy ? p > price : p < price)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
     }
 
+    /**
+     * @return a level for the order, reusing a pruned one when there is one
+     */
+    private Lvl newLevel(double price, double quantity) {
+        int last = freeLevels.size() - 1;
+        if (last < 0)
+            return new Lvl(price, quantity);
+        Lvl lvl = freeLevels.remove(last);
+        lvl.reset( price, quantity );
+        return lvl;
+    }
+
+    /**
+     * Compacts the levels emptied since the last call out of both sides, in one pass per
+     * side, and keeps them for reuse. Called once an operation's 0-quantity events are out,
+     * so listeners still see every level go to 0 and the sides only hold live levels.
+     */
+    private void pruneEmptyLevels() {
+        if (emptied == 0) return;
+        prune( buys );
+        prune( sells );
+        emptied = 0;
+    }
+
+    private void prune(List<Lvl> side) {
+        int kept = 0;
+        int size = side.size();
+        for (int i = 0; i < size; i++) {
+            Lvl lvl = side.get(i);
+            if (lvl.getQuantity() > 0)
+                side.set( kept++, lvl );
+            else if (freeLevels.size() < MAX_FREE_LEVELS)
+                freeLevels.add( lvl );
+        }
+        if (kept < size)
+            side.subList( kept, size ).clear();
+    }
+
+    private void setAuction(boolean inAuction) {
+        auction = inAuction;
+        if (store != null)
+            store.setAuction( inAuction );
+    }
+
+    private void levelChanged(boolean isBuy, double price, double quantity) {
+        if (quantity <= 0)
+            emptied++;
+        if (isBuy)
+            versionBuys = versionBuys.Put( price, quantity );
+        else
+            versionSells = versionSells.Put( price, quantity );
+        if (store != null)
+            store.PutLevel( isBuy, price, quantity );
+        journal.Level( isBuy, price, quantity );
+        if (listener != null)
+            listener.OnLevelChange( isBuy, price, quantity );
+    }
+
+    private final static int EXPECTED_ORDERS = 1024;
+    private final static int MAX_FREE_LEVELS = 1024;
+    private final static double QUANTITY_EPSILON = 1e-9;
+
     private final double par;
     private final double pxIncrement;
     private final List<Lvl> buys = new ArrayList<Lvl>();
     private final List<Lvl> sells = new ArrayList<Lvl>();
+    private final OrderBook orders = new OrderBook(EXPECTED_ORDERS);
+    // Pruned levels, reused before new ones are allocated
+    private final List<Lvl> freeLevels = new ArrayList<Lvl>();
+    private int emptied;
+    // The same levels, structurally shared between versions for readers on other threads
+    private PersistentLevels versionBuys = PersistentLevels.EMPTY;
+    private PersistentLevels versionSells = PersistentLevels.EMPTY;
+    private boolean auction;
+    // Candidate grid for uncross(), kept between auctions
+    private double[] gridPrices = new double[0];
+    private double[] gridBids = new double[0];
+    private double[] gridAsks = new double[0];
+    // Trades and level changes go to the binary journal rather than the log
+    private final EventJournal journal;
+    private LevelListener listener;
+    // Optional off-heap copy of the book for restarts
+    private MappedBook store;
 }
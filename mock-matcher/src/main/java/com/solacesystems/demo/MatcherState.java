@@ -3,7 +3,6 @@ package com.solacesystems.demo;
 import com.solacesystems.ha.model.HAState;
 import com.solacesystems.ha.model.SeqState;
 
-import java.util.List;
 
 /**
  * Example application state with a sequence number
@@ -21,13 +20,35 @@ class MatcherState {
         _instrument = instrument;
     }
 
-    public List<Trade> addOrder(ClientOrder order) {
+    /**
+     * Applies a new, cancel or replace order, or an auction start or uncross, to the book;
+     * cancels and replaces of orders that are no longer resting change nothing.
+     *
+     * @param fills -- told about every fill the order causes
+     */
+    public void applyOrder(ClientOrder order, Matcher.FillSink fills) {
         _lastInput = order.getSequenceId();
         _lastOutput = order.getSequenceId();
-        return _matcher.addOrder( order );
+        switch (order.getType()) {
+            case CANCEL:
+                _matcher.cancelOrder( order.getOrigSequenceId() );
+                break;
+            case REPLACE:
+                _matcher.replaceOrder( order, fills );
+                break;
+            case AUCTION:
+                _matcher.startAuction();
+                break;
+            case UNCROSS:
+                _matcher.uncross( fills );
+                break;
+            default:
+                _matcher.addOrder( order, fills );
+        }
+        _version = _matcher.getVersion( _lastInput );
+        _matcher.Checkpoint( _lastInput );
     }
 
-
     public String getApp() {
         return _app;
     }
@@ -88,6 +109,15 @@ class MatcherState {
 
     public void setMatcher(Matcher matcher) {
         _matcher = matcher;
+        _version = (matcher == null) ? null : matcher.getVersion( _lastInput );
+    }
+
+    /**
+     * @return the book as of the last input applied; unlike getMatcher, safe to read
+     *         from any thread
+     */
+    BookVersion getVersion() {
+        return _version;
     }
 
 
@@ -107,4 +137,6 @@ class MatcherState {
     private SeqState _seqStatus;
     private long _lastInput;
     private long _lastOutput;
+    // Republished by the matching thread after every input
+    private volatile BookVersion _version;
 }
@@ -1,11 +1,15 @@
 package com.solacesystems.demo;
 
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.PublishProfile;
 import com.solacesystems.ha.model.*;
+import com.solacesystems.ha.serial.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -30,6 +34,7 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
         String instrument  = args[10];
         double initialPar  = Double.parseDouble(args[11]);
 
+        startJournal(System.getProperty("journal.file", appId + "_inst" + instance + ".journal"));
         MockMatchingEngine matcher = new MockMatchingEngine(appId, instance, inTopic, stateTopic, activeTopic, standbyTopic, instrument, initialPar);
 
         matcher.Connect(host, vpn, user, pass);
@@ -48,6 +53,22 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
         }
     }
 
+    /**
+     * Trades, level changes and HA transitions are recorded in a binary journal instead of
+     * being logged; render it with JournalDecoder. An empty path turns journaling off.
+     */
+    private static void startJournal(String path) {
+        if (path.isEmpty()) return;
+        final EventJournal journal = EventJournal.getDefault();
+        try {
+            journal.Start(new File(path));
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::Close));
+        }
+        catch (IOException e) {
+            logger.error("Could not open event journal {}; events will not be recorded", path, e);
+        }
+    }
+
     public MockMatchingEngine(String appId, int instance, String inTopic, String stateTopic, String activeTopic, String standbyTopic, String instrument, double par) {
         _inTopic = inTopic;
         _stateTopic = stateTopic;
@@ -56,10 +77,38 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
         // State tracking classes; normally wouldn't include all this stuff, but
         // it's useful in the output monitor to show the complete state of all members
         _state = new MatcherState( appId, instance, instrument );
-        _state.setMatcher( new Matcher( par, 0.25 ) );
+        _tradeTopic = "trade/" + appId + "/new";
+        _state.setMatcher( openBook( System.getProperty( "book.file", "" ), par ) );
         // Underlying cluster model and message-bus connector
         _serializer = new MockMatchingEngineSerializer();
         _connector = new ClusterConnector<ClientOrder, MatcherState>( this, _serializer);
+        // Park outputs and pause order intake rather than drop them if the broker pushes back
+        _connector.EnableNonBlockingSend( 1024 );
+        // Learn when each state output is spooled without waiting on every send
+        _connector.EnablePublishAcks( 255 );
+        // Follow the active member's state at direct latency where the broker supports it
+        if (Boolean.getBoolean( "state.cutthrough" ))
+            _connector.EnableCutThroughState();
+        // Let the broker keep only the newest state, so recovery reads one message
+        if (Boolean.getBoolean( "state.lvq" ))
+            _connector.EnableLastValueState();
+        // Apply every order waiting on the input queue before publishing one state for them all
+        int batch = Integer.getInteger( "input.batch", INPUT_BATCH );
+        if (batch > 0)
+            _connector.EnableInputBatching( batch );
+        // Incremental top-of-book feed, conflated so slow consumers only see the latest levels
+        _marketData = new MarketDataFeed( appId, instrument, MD_DEPTH, MD_UPDATE_MILLIS, MD_SNAPSHOT_MILLIS,
+                _connector::SendSerializedOutput, _connector.getConnector()::isBackpressured );
+        _marketData.Attach( _state.getMatcher() );
+        // Only state replication on the active topic needs spooling; monitoring copies,
+        // trades and market data are best effort and go direct
+        _connector.SetPublishProfile( _standbyTopic, PublishProfile.DIRECT );
+        _connector.SetPublishProfile( _tradeTopic, PublishProfile.DIRECT );
+        _connector.SetPublishProfile( _marketData.getUpdateTopic(), PublishProfile.DIRECT );
+        _connector.SetPublishProfile( _marketData.getSnapshotTopic(), PublishProfile.DIRECT );
+        // Book queries are answered by backups only, from the state they follow
+        _queries = new BookQueryService( _state );
+        _connector.EnableQueryService( _queries );
 
         _timer = new Timer();
         _lastTs = System.currentTimeMillis();
@@ -69,6 +118,54 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
                 periodicStatusUpdate();
             }
         }, 1000, 1000);
+        // Keep the matching path compiled while BACKUP, so a failover starts on hot code
+        int warmupOrders = Integer.getInteger( "warmup.orders", WARMUP_ORDERS );
+        if (warmupOrders > 0)
+            startWarmup( new Warmup( _state.getMatcher().getPar(), _state.getMatcher().getPriceIncrement(), instrument, warmupOrders ) );
+    }
+
+    /**
+     * Runs the warm-up on its own timer thread, so its bursts never hold up status updates
+     */
+    private void startWarmup(final Warmup warmup) {
+        Timer timer = new Timer( "warmup", true );
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                if (_state.getHAStatus() != HAState.BACKUP) return;
+                long nanos = warmup.Run();
+                logger.debug( "Warm-up ran {} orders in {} us", warmup.getOrderCount(), nanos / 1000 );
+            }
+        }, WARMUP_MILLIS, WARMUP_MILLIS);
+    }
+
+    /**
+     * With a path, the book is also kept in a memory-mapped file, so a restart on this host
+     * carries on from the book, resting orders included, that the last run left there. An
+     * empty path, the default, keeps the book on the heap only.
+     */
+    private Matcher openBook(String path, double par) {
+        if (!path.isEmpty()) {
+            try {
+                _book = MappedBook.Open( new File( path ), BOOK_LEVELS, BOOK_ORDERS );
+                if (_book.isValid()) {
+                    Matcher matcher = Matcher.Restore( _book );
+                    _restoredInput = _book.getLastInput();
+                    _state.setLastInput( _restoredInput );
+                    _state.setLastOutput( _restoredInput );
+                    logger.info( "Restored the book as of input {} from {}", _restoredInput, path );
+                    return matcher;
+                }
+            }
+            catch (IOException e) {
+                logger.error( "Could not use book file {}; the book will only be kept on the heap", path, e );
+                _book = null;
+            }
+        }
+        Matcher matcher = new Matcher( par, 0.25 );
+        if (_book != null)
+            matcher.setStore( _book, _state.getLastInput() );
+        return matcher;
     }
 
     public void Connect(String host, String vpn, String user, String pass) {
@@ -84,25 +181,63 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
 
     public void OnHAStateChange(HAState oldState, HAState newState) {
         logger.info("HA Change: {} => {}", oldState, newState);
+        _journal.HAChange(oldState, newState);
+        _marketData.SetActive(newState == HAState.ACTIVE);
         _state.setHAStatus(newState);
         sendMonitorUpdate();
     }
 
     public void OnSeqStateChange(SeqState oldState, SeqState newState) {
         logger.info("Seq Change: {} => {}", oldState, newState);
+        _journal.SeqChange(oldState, newState);
         _state.setSeqStatus(newState);
+        // Recovery is over; from now on the active member's state is the book
+        if (newState == SeqState.UP_TO_DATE)
+            _restoredInput = -1;
         sendMonitorUpdate();
     }
 
+    public void OnOutputDurable(long outputSequence) {
+        logger.debug("Output {} is durable", outputSequence);
+    }
+
     //// As the Primary, we receive inputs to the application
     public MatcherState UpdateApplicationState(ClientOrder input) {
         // IMPORTANT: A State change while we're up-to-date, so every input
         // represents real application changes we need to represent
 
-        // Track results of new orders
-        List<Trade> trades = _state.addOrder(input);
-        _connector.SendOutput(_activeTopic, _state);
-        sendTradeAnnouncements( trades );
+        // Track results of orders, cancels, replaces and auction messages
+        _fills.Clear();
+        synchronized (_outputLock) {
+            synchronized (_marketData) {
+                _state.applyOrder(input, _fills);
+            }
+            _connector.SendOutput(_activeTopic, _state);
+        }
+        sendTradeAnnouncements( input.getSequenceId(), _fills );
+        _marketData.Publish( System.currentTimeMillis() );
+
+        return _state;
+    }
+
+    /**
+     * Batched form, called on the connector's batching thread: each order's trades go out as
+     * it is applied, then one state output covers the whole batch.
+     */
+    public MatcherState UpdateApplicationState(InputBatch<ClientOrder> inputs) {
+        synchronized (_outputLock) {
+            while (inputs.HasNext()) {
+                ClientOrder input = inputs.Next();
+                if (input == null) continue;
+                _fills.Clear();
+                synchronized (_marketData) {
+                    _state.applyOrder(input, _fills);
+                }
+                sendTradeAnnouncements( input.getSequenceId(), _fills );
+            }
+            _connector.SendOutput(_activeTopic, _state);
+        }
+        _marketData.Publish( System.currentTimeMillis() );
 
         return _state;
     }
@@ -113,14 +248,29 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
         // this is the latest output from the ACTIVE member, so we should update our
         // Matching Engine state with this data to keep in sync
         if (state != null) {
-            // This is the real application work, tracking state
-            _state.setMatcher( state.getMatcher() );
             // This is an extra bit added for the demo so we can externalize the whole
             // HA state for visualization outside the app
             _state.setHAStatus( _connector.getModel().GetHAStatus() );
             _state.setSeqStatus( _connector.getModel().GetSequenceStatus() );
+        }
+        // A book restored from the book file has the resting orders as well as the levels,
+        // so it is kept over the state queued before this member started if that is not
+        // past it. Only that first state is compared: input sequences are not comparable
+        // across runs, so states the active sends while this member follows always win.
+        if (state != null && _restoredInput >= 0 && state.getLastInput() <= _restoredInput) {
+            logger.info( "Keeping the book restored at input {} over the queued state at input {}",
+                    _restoredInput, state.getLastInput() );
+            _restoredInput = -1;
+        }
+        else if (state != null) {
+            _restoredInput = -1;
             _state.setLastInput( state.getLastInput() );
             _state.setLastOutput( state.getLastInput() );
+            // This is the real application work, tracking state
+            if (_book != null && state.getMatcher() != null)
+                state.getMatcher().setStore( _book, state.getLastInput() );
+            _state.setMatcher( state.getMatcher() );
+            _marketData.Attach( state.getMatcher() );
         }
         sendMonitorUpdate();
     }
@@ -129,31 +279,54 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
      * Not strictly needed for the real-world HA app, this is an extra bit I added to better
      * externalize/visualize the application state when in BACKUP mode. BACKUPs don't need to
      * send any output.
+     *
+     * Runs on the timer and messaging threads. The copy on the active topic is state the
+     * peers replicate, so it is serialized from the live book under the same lock as the
+     * matching thread's outputs and can never go out after a newer one. The standby copy
+     * serializes the last published BookVersion with its own writer instead.
      */
     private void sendMonitorUpdate() {
         if (_connector != null && _connector.getModel() != null) {
             HAState current = _connector.getModel().GetHAStatus();
             if (current != HAState.DISCONNECTED) {
                 logger.debug("Sending monitor update with HA Status {}", current);
-                _connector.SendOutput(_activeTopic, _state);
-                _connector.SendSerializedOutput(_standbyTopic, _serializer.SerializeOutput(_state));
+                if (current == HAState.ACTIVE) {
+                    synchronized (_outputLock) {
+                        _connector.SendOutput( _activeTopic, _state );
+                    }
+                }
+                synchronized (_monitorWriter) {
+                    _connector.SendSerializedOutput( _standbyTopic, serializeMonitorUpdate() );
+                }
             }
             _lastTs = System.currentTimeMillis();
         }
     }
 
-    private void sendTradeAnnouncements(List<Trade> trades) {
-        if (null == trades) return;
-        for( Trade trade : trades) {
-            _sndbuf.clear();
-            String jsonstr = JSONSerializer.SerializeTrade(trade).toJSONString();
-            _sndbuf.put(jsonstr.getBytes());
-            _connector.SendSerializedOutput( "trade/"+_state.getApp()+"/new", _sndbuf );
-        }
+    private ByteBuffer serializeMonitorUpdate() {
+        _monitorWriter.Begin( _monitorBuf );
+        JSONSerializer.WriteMatcherState( _monitorWriter, _state, _state.getVersion() );
+        _monitorBuf = _monitorWriter.End();
+        return _monitorBuf;
+    }
+
+    /**
+     * Announces every trade an order produced in a single TradeFrame message,
+     * so an order sweeping many levels still costs one publish.
+     */
+    private void sendTradeAnnouncements(long orderSeq, Fills fills) {
+        if (fills.getCount() == 0) return;
+        String instrument = _state.getInstrument();
+        _sndbuf.clear();
+        _sndbuf = BufferPool.getDefault().EnsureRemaining(_sndbuf, TradeFrame.EncodedSize(instrument, fills.getCount()));
+        TradeFrame.Encode(_sndbuf, orderSeq, instrument, fills);
+        _connector.SendSerializedOutput( _tradeTopic, _sndbuf );
     }
 
     private void periodicStatusUpdate() {
         long newTs = System.currentTimeMillis();
+        // Flushes conflated updates held back by the update interval or backpressure
+        _marketData.Publish( newTs );
         if (999 < (newTs - _lastTs))
             sendMonitorUpdate();
         else
@@ -163,13 +336,36 @@ class MockMatchingEngine implements ClusterEventListener<ClientOrder, MatcherSta
     private final ClusterConnector<ClientOrder,MatcherState> _connector;
     private final MockMatchingEngineSerializer _serializer;
     private final MatcherState _state;
-    private final ByteBuffer _sndbuf = ByteBuffer.allocate(256);
+    private final EventJournal _journal = EventJournal.getDefault();
+    private final MarketDataFeed _marketData;
+    private final BookQueryService _queries;
+    private ByteBuffer _sndbuf = BufferPool.getDefault().Acquire(256);
+    // Fills of the input being processed, reused for every input
+    private final Fills _fills = new Fills();
+    private MappedBook _book;
+    // Input the book file was restored at; -1 once the first state has been compared with it
+    private long _restoredInput = -1;
+    // Held while applying inputs and sending their state, and by the active-topic monitor copy
+    private final Object _outputLock = new Object();
+    // Monitor updates are serialized off the matching thread, so they get their own buffers
+    private final JSONWriter _monitorWriter = new JSONWriter( BufferPool.getDefault() );
+    private ByteBuffer _monitorBuf = BufferPool.getDefault().Acquire( 8192 );
 
     private final String _inTopic;
     private final String _activeTopic;
     private final String _standbyTopic;
     private final String _stateTopic;
+    private final String _tradeTopic;
 
     private final Timer _timer;
     private long _lastTs;
+
+    private final static int  INPUT_BATCH        = 64;
+    private final static int  BOOK_LEVELS        = 4096;
+    private final static int  BOOK_ORDERS        = 65536;
+    private final static int  WARMUP_ORDERS      = 20000;
+    private final static long WARMUP_MILLIS      = 5000;
+    private final static int  MD_DEPTH           = 10;
+    private final static long MD_UPDATE_MILLIS   = 50;
+    private final static long MD_SNAPSHOT_MILLIS = 5000;
 }
@@ -1,6 +1,8 @@
 package com.solacesystems.demo;
 
+import com.solacesystems.ha.conn.BufferPool;
 import com.solacesystems.ha.model.ClusteredAppSerializer;
+import com.solacesystems.ha.serial.JSONWriter;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -13,18 +15,23 @@ class MockMatchingEngineSerializer implements ClusteredAppSerializer<ClientOrder
     private static final Logger logger = LoggerFactory.getLogger(MockMatchingEngineSerializer.class);
 
     public ByteBuffer SerializeInput(ClientOrder order) {
-        _outmsgbuf.clear();
         String jsonstr = JSONSerializer.SerializeClientOrder(order).toJSONString();
-        _outmsgbuf.put(jsonstr.getBytes());
-        return _outmsgbuf;
+        return putBytes(jsonstr.getBytes());
     }
 
+    /**
+     * Every order is filled into the same reused ClientOrder, which is only valid until the
+     * next call. Orders in the usual shape are parsed in place; anything else goes through
+     * json-simple.
+     */
     public ClientOrder DeserializeInput(ByteBuffer msg) {
+        if (_orderParser.Parse( msg, _order ))
+            return _order;
         ClientOrder order = null;
         try {
             String jsonStr = getJsonString( msg );
             JSONObject json = (JSONObject) _parser.parse( jsonStr );
-            order = JSONSerializer.DeserializeClientOrder( json );
+            order = JSONSerializer.DeserializeClientOrder( json, _order );
         }
         catch (ParseException pe) {
             logger.error("Error parsing incoming message");
@@ -34,9 +41,9 @@ class MockMatchingEngineSerializer implements ClusteredAppSerializer<ClientOrder
     }
 
     public ByteBuffer SerializeOutput(MatcherState output) {
-        _outmsgbuf.clear();
-        String jsonstr = JSONSerializer.SerializeMatcherState(output).toJSONString();
-        _outmsgbuf.put(jsonstr.getBytes());
+        _writer.Begin(_outmsgbuf);
+        JSONSerializer.WriteMatcherState(_writer, output);
+        _outmsgbuf = _writer.End();
         return _outmsgbuf;
     }
 
@@ -54,6 +61,13 @@ class MockMatchingEngineSerializer implements ClusteredAppSerializer<ClientOrder
         return state;
     }
 
+    private ByteBuffer putBytes(byte[] data) {
+        _outmsgbuf.clear();
+        _outmsgbuf = _pool.EnsureRemaining(_outmsgbuf, data.length);
+        _outmsgbuf.put(data);
+        return _outmsgbuf;
+    }
+
     private String getJsonString(ByteBuffer buff) {
         int sz = buff.limit();
         logger.debug("Getting content from bytebuffer with limit: {}", sz);
@@ -65,5 +79,9 @@ class MockMatchingEngineSerializer implements ClusteredAppSerializer<ClientOrder
     }
 
     private final JSONParser _parser    = new JSONParser();
-    private final ByteBuffer _outmsgbuf = ByteBuffer.allocate(8192);
+    private final ClientOrderParser _orderParser = new ClientOrderParser();
+    private final ClientOrder _order    = new ClientOrder();
+    private final BufferPool _pool      = BufferPool.getDefault();
+    private ByteBuffer _outmsgbuf       = _pool.Acquire(8192);
+    private final JSONWriter _writer    = new JSONWriter(_pool);
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 class MockOrderGateway {
     private static final Logger logger = LoggerFactory.getLogger(MockOrderGateway.class);
@@ -16,19 +17,34 @@ class MockOrderGateway {
 
         if (args.length < 8)
         {
-            System.out.println("USAGE: MockOrderGateway <HOST> <VPN> <USER> <PASS> <PUB-TOPIC> <STARTID> <SYMBOL> <MID>");
+            System.out.println("USAGE: MockOrderGateway <HOST> <VPN> <USER> <PASS> <PUB-TOPIC> <STARTID> <SYMBOL> <MID> [CANCEL-PCT REPLACE-PCT [RATE]]");
             return;
         }
-        new MockOrderGateway(args[0], args[1], args[2], args[3], args[4], args[5], args[6], Double.parseDouble(args[7]))
+        int cancelPct  = (args.length > 9)  ? Integer.parseInt(args[8]) : 0;
+        int replacePct = (args.length > 9)  ? Integer.parseInt(args[9]) : 0;
+        int rate       = (args.length > 10) ? Integer.parseInt(args[10]) : 1;
+        new MockOrderGateway(args[0], args[1], args[2], args[3], args[4], args[5], args[6], Double.parseDouble(args[7]),
+                cancelPct, replacePct, rate)
                 .run();
     }
 
-    private MockOrderGateway(String host, String vpn, String username, String password, String topic, String startId, String symbol, double midPrice)
+    /**
+     * @param cancelPct -- percentage of messages that cancel an order sent earlier
+     * @param replacePct -- percentage of messages that replace an order sent earlier
+     * @param rate -- messages per second
+     */
+    private MockOrderGateway(String host, String vpn, String username, String password, String topic, String startId, String symbol, double midPrice,
+                             int cancelPct, int replacePct, int rate)
     {
+        if (cancelPct < 0 || replacePct < 0 || cancelPct + replacePct > 100 || rate < 1)
+            throw new IllegalStateException("Cancel and replace percentages must add up to at most 100, and the rate be at least 1");
         _startOrderId = Integer.parseInt(startId);
         _outTopic = topic;
         _symbol = symbol;
         _mid = midPrice;
+        _cancelPct = cancelPct;
+        _replacePct = replacePct;
+        _rate = rate;
         _connector = new SolaceConnector();
         _connector.ConnectSession(host, vpn, username, password, "MockOrderGW", new SessionEventCallback() {
             public void onEvent(SessionHandle sessionHandle) {
@@ -46,28 +62,92 @@ class MockOrderGateway {
     {
         boolean running = true;
         int orderId = _startOrderId;
+        // Up to 1000 msgs/sec one message per pause, above that a batch every millisecond
+        long pauseMillis = Math.max(1, 1000 / _rate);
+        int perPause = Math.max(1, _rate / 1000);
+        logger.info("Sending {} msgs/sec, {}% cancels and {}% replaces", _rate, _cancelPct, _replacePct);
         while (running)
         {
             try {
-                Thread.sleep(1000);
+                Thread.sleep(pauseMillis);
             } catch(InterruptedException e) {
                 e.printStackTrace();
                 running = false;
             }
-            sendNextOrder(orderId++);
+            for (int i = 0; i < perPause; i++)
+                sendNextOrder(orderId++);
         }
     }
 
+    /**
+     * Sends a new order, or a cancel or replace of a random order sent earlier. The gateway
+     * doesn't see fills, so some cancels and replaces name orders that already traded and
+     * are ignored by the matcher, as they would be in a real market.
+     */
     private void sendNextOrder(int oid)
     {
-        ClientOrder order = OrderHelper.nextOrder(oid, _symbol, _mid, 0.25);
-        logger.info("Sending msg: {}", order);
+        int pick = _rand.nextInt(100);
+        ClientOrder order;
+        if (_liveCount == 0 || pick >= _cancelPct + _replacePct) {
+            order = OrderHelper.nextOrder(oid, _symbol, _mid, 0.25);
+            remember(oid, order);
+        }
+        else {
+            int i = _rand.nextInt(_liveCount);
+            if (pick < _cancelPct) {
+                order = OrderHelper.makeCancel(oid, _symbol, _liveIds[i]);
+                forget(i);
+            }
+            else {
+                // Half the replaces only lower the quantity, the rest move the price a tick
+                double price = _livePx[i];
+                double quantity = _rand.nextDouble() * 1000;
+                if (_rand.nextBoolean())
+                    quantity = _liveQty[i] / 2;
+                else
+                    price += _rand.nextBoolean() ? 0.25 : -0.25;
+                order = OrderHelper.makeReplace(oid, _symbol, _liveIds[i], price, quantity);
+                forget(i);
+                remember(oid, order);
+            }
+        }
+        logger.debug("Sending msg: {}", order);
         _connector.SendBuffer(_outTopic, _serializer.SerializeInput(order));
     }
 
+    /**
+     * Tracks an order as one to cancel or replace later; once MAX_LIVE are tracked a random
+     * one is forgotten.
+     */
+    private void remember(int oid, ClientOrder order)
+    {
+        int i = (_liveCount < MAX_LIVE) ? _liveCount++ : _rand.nextInt(MAX_LIVE);
+        _liveIds[i] = oid;
+        _livePx[i] = order.getPrice();
+        _liveQty[i] = order.getQuantity();
+    }
+
+    private void forget(int i)
+    {
+        _liveCount--;
+        _liveIds[i] = _liveIds[_liveCount];
+        _livePx[i] = _livePx[_liveCount];
+        _liveQty[i] = _liveQty[_liveCount];
+    }
+
+    private final static int MAX_LIVE = 65536;
+
     private final String _symbol;
     private final double _mid;
     private final int _startOrderId;
+    private final int _cancelPct;
+    private final int _replacePct;
+    private final int _rate;
+    private final Random _rand = new Random();
+    private final long[] _liveIds = new long[MAX_LIVE];
+    private final double[] _livePx = new double[MAX_LIVE];
+    private final double[] _liveQty = new double[MAX_LIVE];
+    private int _liveCount;
     private final String _outTopic;
     private final ByteBuffer _outbuf = ByteBuffer.allocate(8192);
     private final SolaceConnector _connector;
@@ -0,0 +1,352 @@
+package com.solacesystems.demo;
+
+import java.util.Arrays;
+
+/**
+ * Resting orders by identity and time priority, for the Matcher's aggregated levels.
+ *
+ * Each price level holds a FIFO of its orders, linked through the order slots themselves, so
+ * adding an order appends to its level's tail, a fill consumes from the head and a cancel
+ * unlinks from anywhere in the queue, each in constant time. Orders and levels live in pooled
+ * parallel primitive arrays rather than objects; freed slots are reused before the pools grow,
+ * so millions of resting orders cost a few arrays and no garbage. A LongIntIndex finds an
+ * order's slot from its id, and another finds a level's slot from its side and price.
+ *
+ * An optional MappedBook mirrors every order by slot, for restarting without a replay.
+ *
+ * Not thread-safe; the Matcher's owner serializes access.
+ */
+class OrderBook {
+
+    /**
+     * Told about each resting order of a level, in time priority.
+     */
+    interface OrderVisitor {
+        void OnOrder(long orderId, double quantity);
+    }
+
+    /**
+     * @param expectedOrders -- resting orders to size the pools for without growing
+     */
+    OrderBook(int expectedOrders) {
+        int orders = Math.max(expectedOrders, 16);
+        _orderId = new long[orders];
+        _orderQty = new double[orders];
+        _orderNext = new int[orders];
+        _orderPrev = new int[orders];
+        _orderLevel = new int[orders];
+        _orderIndex = new LongIntIndex(orders);
+
+        int levels = 64;
+        _levelPrice = new double[levels];
+        _levelBuy = new boolean[levels];
+        _levelHead = new int[levels];
+        _levelTail = new int[levels];
+        _levelQty = new double[levels];
+        _levelCount = new int[levels];
+        _levelIndex = new LongIntIndex(levels);
+    }
+
+    /**
+     * Queues an order at the tail of its price level.
+     *
+     * @return the order's slot, or NIL if an order with the same id is already resting
+     */
+    int Add(long orderId, boolean isBuy, double price, double quantity) {
+        if (_orderIndex.Get(orderId) != LongIntIndex.MISSING)
+            return NIL;
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        if (level == LongIntIndex.MISSING)
+            level = newLevel(isBuy, price);
+
+        int slot = allocOrder();
+        _orderId[slot] = orderId;
+        _orderQty[slot] = quantity;
+        _orderLevel[slot] = level;
+        _orderNext[slot] = NIL;
+        _orderPrev[slot] = _levelTail[level];
+        if (_levelTail[level] == NIL)
+            _levelHead[level] = slot;
+        else
+            _orderNext[_levelTail[level]] = slot;
+        _levelTail[level] = slot;
+        _levelQty[level] += quantity;
+        _levelCount[level]++;
+        _orderIndex.Put(orderId, slot);
+        if (_mirror != null)
+            _mirror.PutOrder(slot, orderId, isBuy, price, quantity);
+        return slot;
+    }
+
+    /**
+     * Removes a resting order wherever it is in its level's queue.
+     *
+     * @return the quantity that was resting, or NaN if the order is unknown
+     */
+    double Cancel(long orderId) {
+        int slot = _orderIndex.Remove(orderId);
+        if (slot == LongIntIndex.MISSING)
+            return Double.NaN;
+        double quantity = _orderQty[slot];
+        int level = _orderLevel[slot];
+        _levelQty[level] -= quantity;
+        unlink(slot, level);
+        return quantity;
+    }
+
+    /**
+     * Fills up to `quantity` from the level's orders in time priority; orders filled
+     * completely leave the book.
+     *
+     * @return the quantity filled, less than asked if the level's orders ran out
+     */
+    double Fill(boolean isBuy, double price, double quantity) {
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        if (level == LongIntIndex.MISSING)
+            return 0;
+        double remaining = quantity;
+        while (remaining > 0) {
+            int slot = _levelHead[level];
+            double resting = _orderQty[slot];
+            if (resting > remaining) {
+                _orderQty[slot] = resting - remaining;
+                if (_mirror != null)
+                    _mirror.setOrderQuantity(slot, _orderQty[slot]);
+                _levelQty[level] -= remaining;
+                remaining = 0;
+            }
+            else {
+                remaining -= resting;
+                _levelQty[level] -= resting;
+                _orderIndex.Remove(_orderId[slot]);
+                // The level is freed along with its last order
+                boolean last = (_levelCount[level] == 1);
+                unlink(slot, level);
+                if (last) break;
+            }
+        }
+        return quantity - remaining;
+    }
+
+    /**
+     * Lowers a resting order's quantity and re-keys it under a new id, keeping its place in
+     * the queue.
+     *
+     * @param quantity -- new quantity, above zero and no more than is resting
+     * @return false if the order is unknown, the quantity would not go down, or the new id is taken
+     */
+    boolean Amend(long orderId, long newOrderId, double quantity) {
+        int slot = _orderIndex.Get(orderId);
+        if (slot == LongIntIndex.MISSING || quantity <= 0 || quantity > _orderQty[slot])
+            return false;
+        if (newOrderId != orderId) {
+            if (_orderIndex.Get(newOrderId) != LongIntIndex.MISSING)
+                return false;
+            _orderIndex.Remove(orderId);
+            _orderIndex.Put(newOrderId, slot);
+            _orderId[slot] = newOrderId;
+            if (_mirror != null)
+                _mirror.setOrderId(slot, newOrderId);
+        }
+        _levelQty[_orderLevel[slot]] -= _orderQty[slot] - quantity;
+        _orderQty[slot] = quantity;
+        if (_mirror != null)
+            _mirror.setOrderQuantity(slot, quantity);
+        return true;
+    }
+
+    boolean Contains(long orderId) {
+        return _orderIndex.Get(orderId) != LongIntIndex.MISSING;
+    }
+
+    /**
+     * @return the side of a resting order; false if it is unknown
+     */
+    boolean isBuyOrder(long orderId) {
+        int slot = _orderIndex.Get(orderId);
+        return slot != LongIntIndex.MISSING && _levelBuy[_orderLevel[slot]];
+    }
+
+    /**
+     * @return the price of a resting order, or NaN if it is unknown
+     */
+    double getOrderPrice(long orderId) {
+        int slot = _orderIndex.Get(orderId);
+        return (slot == LongIntIndex.MISSING) ? Double.NaN : _levelPrice[_orderLevel[slot]];
+    }
+
+    /**
+     * @return the order's unfilled quantity, or NaN if it is not resting
+     */
+    double getOrderQuantity(long orderId) {
+        int slot = _orderIndex.Get(orderId);
+        return (slot == LongIntIndex.MISSING) ? Double.NaN : _orderQty[slot];
+    }
+
+    double getLevelQuantity(boolean isBuy, double price) {
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        return (level == LongIntIndex.MISSING) ? 0 : _levelQty[level];
+    }
+
+    int getLevelOrderCount(boolean isBuy, double price) {
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        return (level == LongIntIndex.MISSING) ? 0 : _levelCount[level];
+    }
+
+    /**
+     * Copies a level's order ids in time priority, as many as fit.
+     *
+     * @return the number of ids copied
+     */
+    int CopyOrderIds(boolean isBuy, double price, long[] ids) {
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        if (level == LongIntIndex.MISSING)
+            return 0;
+        int count = 0;
+        for (int slot = _levelHead[level]; slot != NIL && count < ids.length; slot = _orderNext[slot])
+            ids[count++] = _orderId[slot];
+        return count;
+    }
+
+    /**
+     * Visits a level's orders in time priority, without copying them.
+     */
+    void ForEachOrder(boolean isBuy, double price, OrderVisitor visitor) {
+        int level = _levelIndex.Get(levelKey(isBuy, price));
+        if (level == LongIntIndex.MISSING)
+            return;
+        for (int slot = _levelHead[level]; slot != NIL; slot = _orderNext[slot])
+            visitor.OnOrder(_orderId[slot], _orderQty[slot]);
+    }
+
+    int getOrderCount() { return _orderIndex.getSize(); }
+
+    int getLevelCount() { return _levelIndex.getSize(); }
+
+    /**
+     * Writes every resting order to the mapped book, each level's in time priority, and keeps
+     * the book current from now on.
+     *
+     * @param mirror -- mapped book to write through to; null to stop
+     */
+    void setMirror(MappedBook mirror) {
+        _mirror = mirror;
+        if (mirror == null) return;
+        mirror.ClearOrders();
+        for (int level = 0; level < _levelsUsed; level++) {
+            if (_levelCount[level] == 0) continue;
+            for (int slot = _levelHead[level]; slot != NIL; slot = _orderNext[slot])
+                mirror.PutOrder(slot, _orderId[slot], _levelBuy[level], _levelPrice[level], _orderQty[slot]);
+        }
+    }
+
+    void Clear() {
+        if (_mirror != null)
+            _mirror.ClearOrders();
+        _orderIndex.Clear();
+        _levelIndex.Clear();
+        _ordersUsed = 0;
+        _levelsUsed = 0;
+        _freeOrder = NIL;
+        _freeLevel = NIL;
+    }
+
+    /**
+     * Unlinks the order from its level's queue and frees its slot, and the level's too if
+     * the order was its last; the caller has already updated the level quantity.
+     */
+    private void unlink(int slot, int level) {
+        int prev = _orderPrev[slot];
+        int next = _orderNext[slot];
+        if (prev == NIL) _levelHead[level] = next;
+        else _orderNext[prev] = next;
+        if (next == NIL) _levelTail[level] = prev;
+        else _orderPrev[next] = prev;
+        _orderNext[slot] = _freeOrder;
+        _freeOrder = slot;
+        if (_mirror != null)
+            _mirror.FreeOrder(slot);
+
+        if (--_levelCount[level] == 0) {
+            _levelIndex.Remove(levelKey(_levelBuy[level], _levelPrice[level]));
+            _levelHead[level] = _freeLevel;
+            _freeLevel = level;
+        }
+    }
+
+    private int allocOrder() {
+        if (_freeOrder != NIL) {
+            int slot = _freeOrder;
+            _freeOrder = _orderNext[slot];
+            return slot;
+        }
+        if (_ordersUsed == _orderId.length) {
+            int size = _ordersUsed * 2;
+            _orderId = Arrays.copyOf(_orderId, size);
+            _orderQty = Arrays.copyOf(_orderQty, size);
+            _orderNext = Arrays.copyOf(_orderNext, size);
+            _orderPrev = Arrays.copyOf(_orderPrev, size);
+            _orderLevel = Arrays.copyOf(_orderLevel, size);
+        }
+        return _ordersUsed++;
+    }
+
+    private int newLevel(boolean isBuy, double price) {
+        int level;
+        if (_freeLevel != NIL) {
+            level = _freeLevel;
+            _freeLevel = _levelHead[level];
+        }
+        else {
+            if (_levelsUsed == _levelPrice.length) {
+                int size = _levelsUsed * 2;
+                _levelPrice = Arrays.copyOf(_levelPrice, size);
+                _levelBuy = Arrays.copyOf(_levelBuy, size);
+                _levelHead = Arrays.copyOf(_levelHead, size);
+                _levelTail = Arrays.copyOf(_levelTail, size);
+                _levelQty = Arrays.copyOf(_levelQty, size);
+                _levelCount = Arrays.copyOf(_levelCount, size);
+            }
+            level = _levelsUsed++;
+        }
+        _levelPrice[level] = price;
+        _levelBuy[level] = isBuy;
+        _levelHead[level] = NIL;
+        _levelTail[level] = NIL;
+        _levelQty[level] = 0;
+        _levelCount[level] = 0;
+        _levelIndex.Put(levelKey(isBuy, price), level);
+        return level;
+    }
+
+    private static long levelKey(boolean isBuy, double price) {
+        // Buys and sells at the same price differ in the sign bit
+        long bits = Double.doubleToLongBits(price);
+        return isBuy ? (bits ^ Long.MIN_VALUE) : bits;
+    }
+
+    final static int NIL = -1;
+
+    // Order pool; a free slot's next link chains the free list
+    private long[] _orderId;
+    private double[] _orderQty;
+    private int[] _orderNext;
+    private int[] _orderPrev;
+    private int[] _orderLevel;
+    private int _ordersUsed;
+    private int _freeOrder = NIL;
+    private final LongIntIndex _orderIndex;
+
+    // Level pool; a free level's head link chains the free list
+    private double[] _levelPrice;
+    private boolean[] _levelBuy;
+    private int[] _levelHead;
+    private int[] _levelTail;
+    private double[] _levelQty;
+    private int[] _levelCount;
+    private int _levelsUsed;
+    private int _freeLevel = NIL;
+    private final LongIntIndex _levelIndex;
+
+    private MappedBook _mirror;
+}
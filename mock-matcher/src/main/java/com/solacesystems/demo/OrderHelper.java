@@ -40,6 +40,30 @@ class OrderHelper {
         return order;
     }
 
+    public static ClientOrder makeCancel(int oid, String instr, long origOid) {
+        ClientOrder order = new ClientOrder( oid );
+        order.setType( ClientOrder.Type.CANCEL );
+        order.setOrigSequenceId( origOid );
+        order.setInstrument( instr );
+        return order;
+    }
+    public static ClientOrder makeReplace(int oid, String instr, long origOid, double price, double quantity) {
+        ClientOrder order = new ClientOrder( oid );
+        order.setType( ClientOrder.Type.REPLACE );
+        order.setOrigSequenceId( origOid );
+        order.setInstrument( instr );
+        order.setPrice( price );
+        order.setQuantity( quantity );
+        return order;
+    }
+
+    public static ClientOrder makeControl(int oid, String instr, ClientOrder.Type type) {
+        ClientOrder order = new ClientOrder( oid );
+        order.setType( type );
+        order.setInstrument( instr );
+        return order;
+    }
+
     public static String randTrader() {
         return TRADERS[ _rand.nextInt(TRADERS.length) ];
     }
@@ -0,0 +1,157 @@
+package com.solacesystems.demo;
+
+/**
+ * Immutable price-ordered map of one side's level quantities. Put returns a new map sharing
+ * every node off the changed path with the old one (an AVL tree with path copying), so an
+ * update costs O(log n) nodes and any number of old versions stay readable from other
+ * threads without locks or copies.
+ */
+final class PersistentLevels {
+
+    static final PersistentLevels EMPTY = new PersistentLevels(null);
+
+    interface Visitor {
+        void OnLevel(double price, double quantity);
+    }
+
+    /**
+     * @param quantity -- new quantity; 0 or less removes the level
+     * @return the map with the change applied; this map is unchanged
+     */
+    PersistentLevels Put(double price, double quantity) {
+        Node root = (quantity > 0) ? put(_root, price, quantity) : remove(_root, price);
+        if (root == _root) return this;
+        return (root == null) ? EMPTY : new PersistentLevels(root);
+    }
+
+    /**
+     * @return the level's quantity, or NaN if there is no level at that price
+     */
+    double getQuantity(double price) {
+        Node n = _root;
+        while (n != null) {
+            int c = Double.compare(price, n.price);
+            if (c == 0) return n.quantity;
+            n = (c < 0) ? n.left : n.right;
+        }
+        return Double.NaN;
+    }
+
+    int getSize() { return size(_root); }
+
+    /**
+     * Visits every level in price order.
+     *
+     * @param descending -- highest price first, as buys are listed
+     */
+    void ForEach(boolean descending, Visitor visitor) {
+        visit(_root, descending, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Visits the first `limit` levels in price order.
+     *
+     * @param descending -- highest price first, as buys are listed
+     */
+    void ForEach(boolean descending, int limit, Visitor visitor) {
+        visit(_root, descending, limit, visitor);
+    }
+
+    private PersistentLevels(Node root) {
+        _root = root;
+    }
+
+    private static final class Node {
+        Node(double price, double quantity, Node left, Node right) {
+            this.price = price;
+            this.quantity = quantity;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+
+        final double price;
+        final double quantity;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+    }
+
+    private static int height(Node n) { return (n == null) ? 0 : n.height; }
+
+    private static int size(Node n) { return (n == null) ? 0 : n.size; }
+
+    /**
+     * @return how many of `limit` levels are left to visit
+     */
+    private static int visit(Node n, boolean descending, int limit, Visitor visitor) {
+        if (n == null || limit <= 0) return limit;
+        limit = visit(descending ? n.right : n.left, descending, limit, visitor);
+        if (limit <= 0) return limit;
+        visitor.OnLevel(n.price, n.quantity);
+        return visit(descending ? n.left : n.right, descending, limit - 1, visitor);
+    }
+
+    private static Node put(Node n, double price, double quantity) {
+        if (n == null) return new Node(price, quantity, null, null);
+        int c = Double.compare(price, n.price);
+        if (c < 0) return balance(n.price, n.quantity, put(n.left, price, quantity), n.right);
+        if (c > 0) return balance(n.price, n.quantity, n.left, put(n.right, price, quantity));
+        if (quantity == n.quantity) return n;
+        return new Node(price, quantity, n.left, n.right);
+    }
+
+    private static Node remove(Node n, double price) {
+        if (n == null) return null;
+        int c = Double.compare(price, n.price);
+        if (c < 0) {
+            Node left = remove(n.left, price);
+            return (left == n.left) ? n : balance(n.price, n.quantity, left, n.right);
+        }
+        if (c > 0) {
+            Node right = remove(n.right, price);
+            return (right == n.right) ? n : balance(n.price, n.quantity, n.left, right);
+        }
+        if (n.left == null) return n.right;
+        if (n.right == null) return n.left;
+        Node min = n.right;
+        while (min.left != null) min = min.left;
+        return balance(min.price, min.quantity, n.left, removeMin(n.right));
+    }
+
+    private static Node removeMin(Node n) {
+        if (n.left == null) return n.right;
+        return balance(n.price, n.quantity, removeMin(n.left), n.right);
+    }
+
+    /**
+     * Builds a node from the parts, rotating once or twice if the subtrees' heights differ
+     * by more than one.
+     */
+    private static Node balance(double price, double quantity, Node left, Node right) {
+        int hl = height(left), hr = height(right);
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right))
+                return new Node(left.price, left.quantity, left.left,
+                        new Node(price, quantity, left.right, right));
+            Node pivot = left.right;
+            return new Node(pivot.price, pivot.quantity,
+                    new Node(left.price, left.quantity, left.left, pivot.left),
+                    new Node(price, quantity, pivot.right, right));
+        }
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left))
+                return new Node(right.price, right.quantity,
+                        new Node(price, quantity, left, right.left), right.right);
+            Node pivot = right.left;
+            return new Node(pivot.price, pivot.quantity,
+                    new Node(price, quantity, left, pivot.left),
+                    new Node(right.price, right.quantity, pivot.right, right.right));
+        }
+        return new Node(price, quantity, left, right);
+    }
+
+    private final Node _root;
+}
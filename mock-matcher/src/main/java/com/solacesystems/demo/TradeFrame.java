@@ -0,0 +1,101 @@
+package com.solacesystems.demo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary announcement of all trades produced by a single order. One frame is
+ * published per order, however many levels the order swept:
+ *
+ *   int    magic ("TRD1")
+ *   long   sequence id of the order that caused the trades
+ *   byte   instrument length, followed by that many ASCII bytes
+ *   int    trade count
+ *   count x { double price, double quantity }
+ *
+ * All values are big-endian, so the monitor can read them with a JavaScript DataView.
+ */
+class TradeFrame {
+
+    /**
+     * @return bytes needed to encode a frame of the given number of trades
+     */
+    static int EncodedSize(String instrument, int count) {
+        return HEADER_SIZE + instrumentLength(instrument) + (count * RECORD_SIZE);
+    }
+
+    /**
+     * Appends a frame at the buffer's position; the buffer must have EncodedSize() bytes remaining.
+     */
+    static void Encode(ByteBuffer buffer, long orderSeq, String instrument, List<Trade> trades) {
+        int count = trades.size();
+        putHeader(buffer, orderSeq, instrument, count);
+        for (int i = 0; i < count; i++) {
+            Trade trade = trades.get(i);
+            buffer.putDouble(trade.getPrice());
+            buffer.putDouble(trade.getQuantity());
+        }
+    }
+
+    /**
+     * Appends a frame of the fills at the buffer's position, as Encode(List) does for Trades.
+     */
+    static void Encode(ByteBuffer buffer, long orderSeq, String instrument, Fills fills) {
+        putHeader(buffer, orderSeq, instrument, fills.getCount());
+        for (int i = 0; i < fills.getCount(); i++) {
+            buffer.putDouble(fills.getPrice(i));
+            buffer.putDouble(fills.getQuantity(i));
+        }
+    }
+
+    /**
+     * Reads a frame from the buffer's position; mostly useful for tests and tools.
+     *
+     * @return the trades, with their instrument set, or null if the buffer does not hold a frame,
+     *         or holds fewer bytes than the frame's instrument length and trade count call for
+     */
+    static List<Trade> Decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+            return null;
+        buffer.getLong();
+        int len = buffer.get() & 0xFF;
+        if (buffer.remaining() < len + 4)
+            return null;
+        StringBuilder instrument = new StringBuilder(len);
+        for (int i = 0; i < len; i++)
+            instrument.append((char) (buffer.get() & 0xFF));
+        int count = buffer.getInt();
+        // Checked by division, so a forged count cannot overflow the product
+        if (count < 0 || count > buffer.remaining() / RECORD_SIZE)
+            return null;
+        List<Trade> trades = new ArrayList<Trade>(count);
+        for (int i = 0; i < count; i++) {
+            Trade trade = new Trade();
+            trade.setInstrument(instrument.toString());
+            trade.setPrice(buffer.getDouble());
+            trade.setQuantity(buffer.getDouble());
+            trades.add(trade);
+        }
+        return trades;
+    }
+
+    private static void putHeader(ByteBuffer buffer, long orderSeq, String instrument, int count) {
+        buffer.putInt(MAGIC);
+        buffer.putLong(orderSeq);
+        int len = instrumentLength(instrument);
+        buffer.put((byte) len);
+        for (int i = 0; i < len; i++)
+            buffer.put((byte) instrument.charAt(i));
+        buffer.putInt(count);
+    }
+
+    private static int instrumentLength(String instrument) {
+        return (instrument == null) ? 0 : Math.min(instrument.length(), MAX_INSTRUMENT);
+    }
+
+    final static int MAGIC = 0x54524431;
+    final static int HEADER_SIZE = 4 + 8 + 1 + 4;
+    final static int RECORD_SIZE = 8 + 8;
+    private final static int MAX_INSTRUMENT = 255;
+}
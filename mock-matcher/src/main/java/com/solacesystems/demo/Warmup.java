@@ -0,0 +1,104 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.conn.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Keeps the matching path compiled while this member is a backup. A backup only
+ * deserializes state messages, so without this the first orders after a failover run
+ * UpdateApplicationState's path (order parsing, matching, trade frames and state
+ * serialization) in the interpreter.
+ *
+ * Each Run() replays the same scripted order flow, new orders around par with a share of
+ * cancels and replaces, through a scratch MatcherState and serializer, from encoded order
+ * bytes to the encoded state and trade frames, which are then discarded. The JIT compiles
+ * methods rather than objects, so the live matcher takes over hot code. The scratch matcher
+ * records to an EventJournal that is never started, so nothing reaches the real journal, and
+ * nothing is sent.
+ *
+ * Not thread-safe; call Run() from one thread.
+ */
+class Warmup {
+
+    /**
+     * @param orders -- orders per Run()
+     */
+    Warmup(double par, double pxIncrement, String instrument, int orders) {
+        _par = par;
+        _pxIncrement = pxIncrement;
+        _instrument = instrument;
+        _ends = new int[orders];
+        ByteBuffer script = BufferPool.getDefault().Acquire(orders * 160);
+        Random rand = new Random(orders);
+        for (int i = 0; i < orders; i++) {
+            int oid = i + 1;
+            ClientOrder order;
+            int pick = rand.nextInt(100);
+            if (i > 10 && pick < 30)
+                order = OrderHelper.makeCancel(oid, instrument, oid - 1 - rand.nextInt(10));
+            else if (i > 10 && pick < 40)
+                order = OrderHelper.makeReplace(oid, instrument, oid - 1 - rand.nextInt(10),
+                        price(rand), 1 + rand.nextInt(100));
+            else if (rand.nextBoolean())
+                order = OrderHelper.makeBuy(oid, instrument, price(rand), 1 + rand.nextInt(100));
+            else
+                order = OrderHelper.makeSell(oid, instrument, price(rand), 1 + rand.nextInt(100));
+            ByteBuffer encoded = _serializer.SerializeInput(order);
+            encoded.flip();
+            script = BufferPool.getDefault().EnsureRemaining(script, encoded.remaining());
+            script.put(encoded);
+            _ends[i] = script.position();
+        }
+        script.flip();
+        _script = script;
+    }
+
+    /**
+     * Drives the scripted orders through a fresh scratch book.
+     *
+     * @return nanoseconds taken
+     */
+    long Run() {
+        long start = System.nanoTime();
+        MatcherState state = new MatcherState("warmup", 0, _instrument);
+        state.setMatcher(new Matcher(_par, _pxIncrement, IDLE_JOURNAL));
+        int begin = 0;
+        for (int i = 0; i < _ends.length; i++) {
+            _script.limit(_ends[i]).position(begin);
+            begin = _ends[i];
+            ClientOrder order = _serializer.DeserializeInput(_script);
+            if (order == null) continue;
+            _fills.Clear();
+            state.applyOrder(order, _fills);
+            if (_fills.getCount() > 0) {
+                _trades.clear();
+                _trades = BufferPool.getDefault().EnsureRemaining(_trades, TradeFrame.EncodedSize(_instrument, _fills.getCount()));
+                TradeFrame.Encode(_trades, order.getSequenceId(), _instrument, _fills);
+            }
+            _serializer.SerializeOutput(state);
+        }
+        return System.nanoTime() - start;
+    }
+
+    int getOrderCount() { return _ends.length; }
+
+    /**
+     * @return a limit price within a few ticks either side of par, so orders both rest and trade
+     */
+    private double price(Random rand) {
+        return _par + (rand.nextInt(9) - 4) * _pxIncrement;
+    }
+
+    private final static EventJournal IDLE_JOURNAL = new EventJournal(2);
+
+    private final double _par;
+    private final double _pxIncrement;
+    private final String _instrument;
+    private final ByteBuffer _script;
+    private final int[] _ends;
+    private final MockMatchingEngineSerializer _serializer = new MockMatchingEngineSerializer();
+    private final Fills _fills = new Fills();
+    private ByteBuffer _trades = BufferPool.getDefault().Acquire(256);
+}
@@ -0,0 +1,87 @@
+package com.solacesystems.demo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AuctionTest {
+
+    @Test
+    public void uncrossAtMaximumVolume() {
+        Matcher matcher = new Matcher( 100, 0.5 );
+        Fills fills = new Fills();
+        matcher.startAuction();
+        int oid = 1;
+        for (double px : new double[] { 101.0, 100.5, 100.0 })
+            matcher.addOrder( OrderHelper.makeBuy( oid++, "MSFT", px, 10.0 ), fills );
+        matcher.addOrder( OrderHelper.makeSell( oid++, "MSFT", 99.5, 5.0 ), fills );
+        matcher.addOrder( OrderHelper.makeSell( oid++, "MSFT", 100.0, 10.0 ), fills );
+        matcher.addOrder( OrderHelper.makeSell( oid++, "MSFT", 100.5, 20.0 ), fills );
+        // Crossed, but nothing trades until the uncross
+        assertEquals( 0, fills.getCount() );
+        assertEquals( 3, matcher.getSells().size() );
+
+        assertEquals( 100.5, matcher.uncross( fills ), 0.0 );
+        assertFalse( matcher.isInAuction() );
+        double volume = 0;
+        for (int i = 0; i < fills.getCount(); i++) {
+            assertEquals( 100.5, fills.getPrice(i), 0.0 );
+            volume += fills.getQuantity(i);
+        }
+        assertEquals( 20.0, volume, 0.0 );
+        assertEquals( 1, matcher.getBuys().size() );
+        assertEquals( 100.0, matcher.getBuys().get(0).getPrice(), 0.0 );
+        assertEquals( 1, matcher.getSells().size() );
+        assertEquals( 15.0, matcher.getSells().get(0).getQuantity(), 0.0 );
+        assertEquals( 15.0, matcher.getOrders().getLevelQuantity( false, 100.5 ), 0.0 );
+
+        // Back to continuous matching; an uncrossed book has nothing to do
+        fills.Clear();
+        matcher.addOrder( OrderHelper.makeBuy( oid++, "MSFT", 100.5, 1.0 ), fills );
+        assertEquals( 1, fills.getCount() );
+        assertTrue( Double.isNaN( matcher.uncross( fills ) ) );
+    }
+
+    @Test
+    public void parallelSearchMatchesBruteForce() {
+        // Deep enough for the fork-join path; whole quantities keep every sum exact
+        int count = Auction.PARALLEL_THRESHOLD * 3 + 17;
+        Random rand = new Random( 3 );
+        double[] prices = new double[count];
+        double[] bids = new double[count];
+        double[] asks = new double[count];
+        for (int i = 0; i < count; i++) {
+            prices[i] = 50 + (0.01 * i);
+            bids[i] = rand.nextInt( 4 ) == 0 ? rand.nextInt( 100 ) : 0;
+            asks[i] = rand.nextInt( 4 ) == 0 ? rand.nextInt( 100 ) : 0;
+        }
+        double reference = 50 + (0.01 * count / 2);
+        int best = new Auction( prices, bids, asks, count, reference ).Equilibrium();
+
+        double[] cumBids = new double[count];
+        double[] cumAsks = new double[count];
+        for (int i = 0; i < count; i++)
+            cumAsks[i] = asks[i] + (i > 0 ? cumAsks[i - 1] : 0);
+        for (int i = count - 1; i >= 0; i--)
+            cumBids[i] = bids[i] + (i < count - 1 ? cumBids[i + 1] : 0);
+        int expected = 0;
+        for (int i = 1; i < count; i++) {
+            double v = Math.min( cumBids[i], cumAsks[i] ), ve = Math.min( cumBids[expected], cumAsks[expected] );
+            double m = Math.abs( cumBids[i] - cumAsks[i] ), me = Math.abs( cumBids[expected] - cumAsks[expected] );
+            if (v > ve || (v == ve && (m < me || (m == me
+                    && Math.abs( prices[i] - reference ) < Math.abs( prices[expected] - reference )))))
+                expected = i;
+        }
+        assertEquals( expected, best );
+    }
+
+    @Test
+    public void auctionSurvivesStateMessage() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        matcher.startAuction();
+        Matcher copy = JSONSerializer.DeserializeOrderStack( JSONSerializer.SerializeOrderStack( matcher ) );
+        assertTrue( copy.isInAuction() );
+    }
+}
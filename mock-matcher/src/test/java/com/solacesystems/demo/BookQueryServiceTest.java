@@ -0,0 +1,64 @@
+package com.solacesystems.demo;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BookQueryServiceTest {
+
+    private static JSONObject parse(ByteBuffer reply) throws Exception {
+        ByteBuffer copy = reply.duplicate();
+        byte[] data = new byte[copy.remaining()];
+        copy.get(data);
+        return (JSONObject) new JSONParser().parse( new String( data, "UTF-8" ) );
+    }
+
+    @Test
+    public void queriesTest() throws Exception {
+        MatcherState state = AppStateHelper.makeAppState( 8, 100, 0.25 );
+        BookQueryService service = new BookQueryService( state );
+        String prefix = service.getPrefix();
+        assertTrue( service.getSubscriptionTopic().endsWith( prefix + ">" ) );
+
+        JSONObject bbo = parse( service.OnRequest( prefix + "bbo", null ) );
+        assertEquals( "MSFT", bbo.get( "instrument" ) );
+        assertEquals( 12345L, bbo.get( "lastInput" ) );
+        JSONArray buys = (JSONArray) bbo.get( "buys" );
+        assertEquals( 1, buys.size() );
+        assertEquals( 99.75, ((JSONObject) buys.get(0)).get( "price" ) );
+        assertEquals( 100.25, ((JSONObject) ((JSONArray) bbo.get( "sells" )).get(0)).get( "price" ) );
+
+        assertEquals( 2, ((JSONArray) parse( service.OnRequest( prefix + "depth/2", null ) ).get( "sells" )).size() );
+        assertEquals( 4, ((JSONArray) parse( service.OnRequest( prefix + "book", null ) ).get( "buys" )).size() );
+
+        for (String bad : new String[] { "depth/0", "depth/", "depth/x", "depth/51", "bbox", "other" })
+            assertNotNull( parse( service.OnRequest( prefix + bad, null ) ).get( "error" ) );
+    }
+
+    @Test
+    public void cachingTest() throws Exception {
+        MatcherState state = AppStateHelper.makeAppState( 8, 100, 0.25 );
+        BookQueryService service = new BookQueryService( state );
+        String topic = service.getPrefix() + "bbo";
+
+        ByteBuffer first = service.OnRequest( topic, null );
+        assertSame( first, service.OnRequest( topic, null ) );
+        assertEquals( 1, service.getEncodingCount() );
+
+        // Changes to the live book are not seen until a version is published
+        state.getMatcher().addOrder( OrderHelper.makeBuy( 99, "MSFT", 99.875, 7.0 ) );
+        assertSame( first, service.OnRequest( topic, null ) );
+        assertEquals( 1, service.getEncodingCount() );
+
+        // A new state from the active member
+        state.setMatcher( state.getMatcher() );
+        JSONObject bbo = parse( service.OnRequest( topic, null ) );
+        assertEquals( 2, service.getEncodingCount() );
+        assertEquals( 99.875, ((JSONObject) ((JSONArray) bbo.get( "buys" )).get(0)).get( "price" ) );
+    }
+}
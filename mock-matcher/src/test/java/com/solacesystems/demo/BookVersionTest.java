@@ -0,0 +1,119 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.serial.JSONWriter;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BookVersionTest {
+
+    private static List<double[]> levels(PersistentLevels side, boolean descending) {
+        final List<double[]> out = new ArrayList<double[]>();
+        side.ForEach( descending, (price, quantity) -> out.add( new double[] { price, quantity } ) );
+        return out;
+    }
+
+    private static void assertSide(List<Matcher.Lvl> expected, PersistentLevels actual, boolean descending) {
+        List<double[]> levels = levels( actual, descending );
+        assertEquals( expected.size(), levels.size() );
+        for (int i = 0; i < levels.size(); i++) {
+            assertEquals( expected.get(i).getPrice(), levels.get(i)[0], 0.0 );
+            assertEquals( expected.get(i).getQuantity(), levels.get(i)[1], 0.0 );
+        }
+    }
+
+    @Test
+    public void versionsAreIndependent() {
+        Random rand = new Random( 7 );
+        TreeMap<Double,Double> expected = new TreeMap<Double,Double>();
+        PersistentLevels levels = PersistentLevels.EMPTY;
+        for (int i = 0; i < 5000; i++) {
+            double price = rand.nextInt( 200 ) * 0.25;
+            double quantity = (rand.nextInt( 3 ) == 0) ? 0 : rand.nextInt( 100 ) + 1;
+            PersistentLevels before = levels;
+            int sizeBefore = expected.size();
+            levels = levels.Put( price, quantity );
+            if (quantity > 0) expected.put( price, quantity );
+            else expected.remove( price );
+            // the old version never changes
+            assertEquals( sizeBefore, before.getSize() );
+            assertEquals( expected.size(), levels.getSize() );
+        }
+        List<double[]> ascending = levels( levels, false );
+        int i = 0;
+        for (Map.Entry<Double,Double> e : expected.entrySet()) {
+            assertEquals( e.getKey(), ascending.get(i)[0], 0.0 );
+            assertEquals( e.getValue(), levels.getQuantity( e.getKey() ), 0.0 );
+            i++;
+        }
+        assertEquals( expected.lastKey(), levels( levels, true ).get(0)[0], 0.0 );
+        assertTrue( Double.isNaN( levels.getQuantity( -1.0 ) ) );
+        assertSame( PersistentLevels.EMPTY, PersistentLevels.EMPTY.Put( 1.0, 0 ) );
+    }
+
+    @Test
+    public void versionTracksMatcher() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        Fills fills = new Fills();
+        BookVersion empty = matcher.getVersion( 0 );
+        for (int oid = 1; oid <= 5000; oid++) {
+            if (oid % 4 == 0)
+                matcher.cancelOrder( oid - 3 );
+            else
+                matcher.addOrder( OrderHelper.nextOrder( oid ), fills );
+            if (oid % 500 == 0) {
+                BookVersion version = matcher.getVersion( oid );
+                assertEquals( oid, version.getSequence() );
+                assertSide( matcher.getBuys(), version.getBuys(), true );
+                assertSide( matcher.getSells(), version.getSells(), false );
+            }
+        }
+        assertEquals( 0, empty.getBuys().getSize() );
+        assertEquals( 0, empty.getSells().getSize() );
+    }
+
+    @Test
+    public void versionSerializesLikeMatcher() throws Exception {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        for (int oid = 1; oid <= 50; oid++)
+            matcher.addOrder( OrderHelper.nextOrder( oid ) );
+        MatcherState state = new MatcherState( "app", 1, "MSFT" );
+        state.setLastInput( 50 );
+        state.setMatcher( matcher );
+
+        JSONWriter writer = new JSONWriter( new BufferPool() );
+        writer.Begin( ByteBuffer.allocate( 256 ) );
+        JSONSerializer.WriteOrderStack( writer, state.getVersion() );
+        String fromVersion = text( writer.End() );
+        writer.Begin( ByteBuffer.allocate( 256 ) );
+        JSONSerializer.WriteOrderStack( writer, matcher );
+        // the same levels; only the live book carries the resting orders
+        String fromMatcher = text( writer.End() );
+        assertTrue( fromMatcher.contains( "\"orders\":[{" ) );
+        assertEquals( fromMatcher.replaceAll( ",\"orders\":\\[[^\\]]*\\]", "" ), fromVersion );
+
+        // a version read back is an ordinary state
+        JSONObject json = (JSONObject) new JSONParser().parse( fromVersion );
+        Matcher copy = JSONSerializer.DeserializeOrderStack( json );
+        assertSide( matcher.getBuys(), copy.getVersion( 0 ).getBuys(), true );
+        assertSide( matcher.getSells(), copy.getVersion( 0 ).getSells(), false );
+    }
+
+    private static String text(ByteBuffer buffer) {
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,69 @@
+package com.solacesystems.demo;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares deserializing ClientOrder input with the byte-level ClientOrderParser against
+ * the original path (copy to byte[], build a String, parse with json-simple), reporting time
+ * and bytes allocated per order. Not run as part of the unit tests; after `mvn test-compile`
+ * run its main() from the mock-matcher directory with target/classes, target/test-classes,
+ * ../solace-ha/target/classes and the dependency jars on the classpath. An optional argument
+ * sets the number of iterations.
+ */
+public class ClientOrderParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+
+        ByteBuffer[] inputs = new ByteBuffer[1024];
+        MockMatchingEngineSerializer serializer = new MockMatchingEngineSerializer();
+        for (int i = 0; i < inputs.length; i++) {
+            ByteBuffer serialized = serializer.SerializeInput( OrderHelper.nextOrder( i + 1 ) );
+            serialized.flip();
+            inputs[i] = ByteBuffer.allocateDirect( serialized.remaining() );
+            inputs[i].put( serialized ).flip();
+        }
+
+        final ClientOrderParser parser = new ClientOrderParser();
+        final ClientOrder order = new ClientOrder( 0 );
+        final org.json.simple.parser.JSONParser generic = new org.json.simple.parser.JSONParser();
+
+        for (int round = 0; round < 3; round++) {
+            long sink = 0;
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ByteBuffer msg = inputs[i & (inputs.length - 1)];
+                byte[] data = new byte[msg.limit()];
+                msg.get( data, 0, data.length );
+                msg.rewind();
+                ClientOrder parsed = JSONSerializer.DeserializeClientOrder(
+                        (org.json.simple.JSONObject) generic.parse( new String( data ) ) );
+                sink += parsed.getSequenceId();
+            }
+            report( "json-simple", iterations, System.nanoTime() - start, allocatedBytes() - bytes, sink );
+
+            sink = 0;
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (parser.Parse( inputs[i & (inputs.length - 1)], order ))
+                    sink += order.getSequenceId();
+            }
+            report( "ClientOrderParser", iterations, System.nanoTime() - start, allocatedBytes() - bytes, sink );
+        }
+    }
+
+    private static void report(String name, int iterations, long nanos, long bytes, long sink) {
+        System.out.printf( "%-18s %8.1f ns/op %10.1f bytes/op  (checksum %d)%n",
+                name, (double) nanos / iterations, (double) bytes / iterations, sink );
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes( Thread.currentThread().getId() );
+        return 0;
+    }
+}
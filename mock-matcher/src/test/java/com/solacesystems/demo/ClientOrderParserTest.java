@@ -0,0 +1,119 @@
+package com.solacesystems.demo;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ClientOrderParserTest {
+
+    private static ByteBuffer wrap(String json) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(json.length());
+        buffer.put(json.getBytes());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ClientOrder generic(String json) throws Exception {
+        return JSONSerializer.DeserializeClientOrder( (JSONObject) new JSONParser().parse(json) );
+    }
+
+    @Test
+    public void matchesGenericParserTest() throws Exception {
+        ClientOrderParser parser = new ClientOrderParser();
+        ClientOrder order = new ClientOrder(0);
+        for (int i = 1; i <= 1000; i++) {
+            ClientOrder input = OrderHelper.nextOrder( i );
+            if (i % 3 == 0) input.setQuantity( 100 * (i % 7) + 0.5 );
+            String json = JSONSerializer.SerializeClientOrder( input ).toJSONString();
+
+            ByteBuffer buffer = wrap( json );
+            assertTrue( json, parser.Parse( buffer, order ) );
+            assertEquals( 0, buffer.position() );
+
+            ClientOrder expected = generic( json );
+            assertEquals( expected.getSequenceId(), order.getSequenceId() );
+            assertEquals( expected.getInstrument(), order.getInstrument() );
+            assertEquals( expected.getTrader(),     order.getTrader() );
+            assertEquals( expected.isBuy(),         order.isBuy() );
+            assertEquals( Double.doubleToLongBits( expected.getQuantity() ), Double.doubleToLongBits( order.getQuantity() ) );
+            assertEquals( Double.doubleToLongBits( expected.getPrice() ),    Double.doubleToLongBits( order.getPrice() ) );
+        }
+    }
+
+    @Test
+    public void numberFormsTest() {
+        ClientOrderParser parser = new ClientOrderParser();
+        ClientOrder order = new ClientOrder(0);
+        String json = "{ \"seqId\" : 7, \"trader\":null, \"price\":-1.25E2, \"quantity\":0.001,"
+                + " \"buyOrSell\":\"S\", \"instrument\":\"AAPL\" }";
+        assertTrue( parser.Parse( wrap( json ), order ) );
+        assertEquals( 7, order.getSequenceId() );
+        assertNull( order.getTrader() );
+        assertEquals( -125.0, order.getPrice(), 0.0 );
+        assertEquals( 0.001, order.getQuantity(), 0.0 );
+        assertFalse( order.isBuy() );
+        assertEquals( "AAPL", order.getInstrument() );
+    }
+
+    @Test
+    public void unknownShapesFallBackTest() throws Exception {
+        ClientOrderParser parser = new ClientOrderParser();
+        ClientOrder order = new ClientOrder(42);
+        String base = "\"seqId\":1,\"instrument\":\"MSFT\",\"buyOrSell\":\"B\",\"quantity\":1.5,\"price\":100.25";
+        String[] rejected = {
+                "{" + base + "}",                                   // missing trader
+                "{" + base + ",\"trader\":\"a\",\"extra\":1}",      // unknown field
+                "{" + base + ",\"trader\":\"a\\/b\"}",              // escaped string
+                "{" + base + ",\"trader\":\"a\",\"seqId\":2}",      // duplicate field
+                "{" + base.replace("1.5", "15") + ",\"trader\":\"a\"}", // integer quantity
+                "{" + base + ",\"trader\":\"a\"} x",                // trailing garbage
+                "[]",
+                ""
+        };
+        for (String json : rejected) {
+            assertFalse( json, parser.Parse( wrap( json ), order ) );
+            assertEquals( 42, order.getSequenceId() );
+        }
+
+        // The serializer then falls back to json-simple
+        MockMatchingEngineSerializer serializer = new MockMatchingEngineSerializer();
+        String json = "{" + base + ",\"trader\":\"a\\/b\"}";
+        ClientOrder result = serializer.DeserializeInput( ByteBuffer.wrap( json.getBytes() ) );
+        assertEquals( "a/b", result.getTrader() );
+        assertEquals( generic( json ).getPrice(), result.getPrice(), 0.0 );
+    }
+
+    @Test
+    public void cancelAndReplaceTest() throws Exception {
+        ClientOrderParser parser = new ClientOrderParser();
+        ClientOrder order = new ClientOrder(0);
+        ClientOrder[] inputs = {
+                OrderHelper.makeCancel( 11, "MSFT", 7 ),
+                OrderHelper.makeReplace( 12, "MSFT", 8, 99.75, 50.5 )
+        };
+        for (ClientOrder input : inputs) {
+            String json = JSONSerializer.SerializeClientOrder( input ).toJSONString();
+            assertTrue( json, parser.Parse( wrap( json ), order ) );
+            assertEquals( input.getType(), order.getType() );
+            assertEquals( input.getOrigSequenceId(), order.getOrigSequenceId() );
+            assertEquals( input.getSequenceId(), order.getSequenceId() );
+            assertEquals( input.getPrice(), order.getPrice(), 0.0 );
+
+            ClientOrder expected = generic( json );
+            assertEquals( input.getType(), expected.getType() );
+            assertEquals( input.getOrigSequenceId(), expected.getOrigSequenceId() );
+        }
+
+        // A new order after them parses as new again
+        String json = JSONSerializer.SerializeClientOrder( OrderHelper.nextOrder( 13 ) ).toJSONString();
+        assertFalse( json.contains( "origSeqId" ) );
+        assertTrue( parser.Parse( wrap( json ), order ) );
+        assertEquals( ClientOrder.Type.NEW, order.getType() );
+        assertEquals( 0, order.getOrigSequenceId() );
+        assertFalse( parser.Parse( wrap( json.replace( "}", ",\"type\":\"X\"}" ) ), order ) );
+    }
+}
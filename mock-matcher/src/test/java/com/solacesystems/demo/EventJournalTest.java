@@ -0,0 +1,97 @@
+package com.solacesystems.demo;
+
+import com.solacesystems.ha.model.HAState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String decode(File file, long expected) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals( expected, EventJournal.Decode( file, new PrintStream( bytes, true, "UTF-8" ) ) );
+        return bytes.toString( "UTF-8" );
+    }
+
+    /**
+     * @return the decoded lines without their timestamps
+     */
+    private static String[] events(String text) {
+        String[] lines = text.split( "\n" );
+        String[] events = new String[lines.length - 1];
+        for (int i = 1; i < lines.length; i++)
+            events[i - 1] = lines[i].substring( lines[i].indexOf( ' ' ) + 1 );
+        return events;
+    }
+
+    @Test
+    public void roundtripTest() throws Exception {
+        File file = folder.newFile( "events.journal" );
+        // Larger than everything recorded, so nothing can be dropped whatever the drainer does
+        EventJournal journal = new EventJournal( 64 );
+        journal.Trade( 100.5, 10.0 ); // not started yet: ignored
+        journal.Start( file );
+        journal.HAChange( HAState.CONNECTED, HAState.ACTIVE );
+        for (int i = 0; i < 3; i++)
+            journal.Level( false, 100.25 + i, 5.0 );
+        journal.Trade( 100.5, 10.0 );
+        journal.Close();
+
+        assertEquals( 0, journal.getDroppedCount() );
+        assertEquals( EventJournal.HEADER_SIZE + 5 * EventJournal.RECORD_SIZE, file.length() );
+        assertArrayEquals( new String[] {
+                "HA Change: CONNECTED => ACTIVE",
+                "SELL LEVEL 100.25 QTY: 5.0",
+                "SELL LEVEL 101.25 QTY: 5.0",
+                "SELL LEVEL 102.25 QTY: 5.0",
+                "TRADE: 10.0 @ 100.5" }, events( decode( file, 5 ) ) );
+    }
+
+    @Test
+    public void fullRingDropsNewEventsTest() throws Exception {
+        File file = folder.newFile( "full.journal" );
+        EventJournal journal = new EventJournal( 4 );
+        // Nothing drains the ring until Close, so the last two events find it full
+        journal.Start( file, false );
+        for (int i = 0; i < 6; i++)
+            journal.Trade( 100.0 + i, 1.0 );
+        assertEquals( 2, journal.getDroppedCount() );
+        journal.Close();
+
+        assertEquals( EventJournal.HEADER_SIZE + 4 * EventJournal.RECORD_SIZE, file.length() );
+        assertArrayEquals( new String[] {
+                "TRADE: 1.0 @ 100.0",
+                "TRADE: 1.0 @ 101.0",
+                "TRADE: 1.0 @ 102.0",
+                "TRADE: 1.0 @ 103.0" }, events( decode( file, 4 ) ) );
+    }
+
+    @Test
+    public void matcherTradesTest() throws Exception {
+        File file = folder.newFile( "matcher.journal" );
+        EventJournal journal = EventJournal.getDefault();
+        journal.Start( file );
+        try {
+            Matcher matcher = new Matcher( 100, 0.25 );
+            matcher.addOrder( OrderHelper.makeSell( 1, "MSFT", 101.0, 1.0 ) );
+            matcher.addOrder( OrderHelper.makeBuy( 2, "MSFT", 101.0, 10.0 ) );
+            matcher.addOrder( OrderHelper.makeSell( 3, "MSFT", 101.0, 4.0 ) );
+        }
+        finally {
+            journal.Close();
+        }
+        String text = decode( file, 6 );
+        assertTrue( text.contains( "TRADE: 1.0 @ 101.0" ) );
+        assertTrue( text.contains( "TRADE: 4.0 @ 101.0" ) );
+        assertTrue( text.contains( "BUY LEVEL 101.0 QTY: 5.0" ) );
+        assertTrue( text.contains( "SELL LEVEL 101.0 QTY: 0.0" ) );
+    }
+}
@@ -0,0 +1,81 @@
+package com.solacesystems.demo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures the latency of the first orders a matcher handles after taking over, with and
+ * without the backup warm-up. Each order goes through the active path short of the send:
+ * parsing the order bytes, matching, encoding trades and serializing the state. Run it once
+ * per mode in a fresh JVM, since a JVM cannot be made cold again:
+ *
+ *   FailoverWarmupBenchmark cold [warm-up runs] [orders]
+ *   FailoverWarmupBenchmark warm [warm-up runs] [orders]
+ *
+ * "warm" first runs Warmup as a backup would between failovers, 20 times unless the second
+ * argument says otherwise; "cold" ignores that number. The optional third argument sets the
+ * orders measured after the failover, 10000 by default. Not run as part of the unit tests; after
+ * `mvn test-compile` run its main() from the mock-matcher directory with target/classes,
+ * target/test-classes, ../solace-ha/target/classes and the dependency jars on the classpath.
+ */
+public class FailoverWarmupBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean warm = args.length > 0 && args[0].equals("warm");
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int orders = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+
+        // The post-failover flow, encoded up front as it would arrive from the input queue
+        MockMatchingEngineSerializer serializer = new MockMatchingEngineSerializer();
+        ByteBuffer[] input = new ByteBuffer[orders];
+        for (int i = 0; i < orders; i++) {
+            ByteBuffer encoded = serializer.SerializeInput( OrderHelper.nextOrder( i + 1 ) );
+            encoded.flip();
+            input[i] = ByteBuffer.allocate( encoded.remaining() );
+            input[i].put( encoded ).flip();
+        }
+
+        if (warm) {
+            Warmup warmup = new Warmup( 100, 0.25, "MSFT", 20000 );
+            for (int r = 0; r < runs; r++)
+                System.out.printf( "warm-up run %d: %d us%n", r + 1, warmup.Run() / 1000 );
+            // Let queued compilations finish, as they would between warm-up runs on a backup
+            Thread.sleep( 1000 );
+        }
+
+        // Failover: a fresh book, as after becomeActive
+        MatcherState state = new MatcherState( "bench", 1, "MSFT" );
+        state.setMatcher( new Matcher( 100, 0.25, new EventJournal( 2 ) ) );
+        Fills fills = new Fills();
+        ByteBuffer trades = ByteBuffer.allocate( 4096 );
+        long[] nanos = new long[orders];
+        for (int i = 0; i < orders; i++) {
+            long start = System.nanoTime();
+            ClientOrder order = serializer.DeserializeInput( input[i] );
+            fills.Clear();
+            state.applyOrder( order, fills );
+            if (fills.getCount() > 0) {
+                trades.clear();
+                TradeFrame.Encode( trades, order.getSequenceId(), "MSFT", fills );
+            }
+            serializer.SerializeOutput( state );
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        System.out.println( warm ? "after warm-up:" : "cold:" );
+        report( "orders 1-100", nanos, 0, Math.min( 100, orders ) );
+        report( "orders 101-1000", nanos, 100, Math.min( 1000, orders ) );
+        report( "orders 1001-" + orders, nanos, 1000, orders );
+    }
+
+    private static void report(String label, long[] nanos, int from, int to) {
+        if (to <= from) return;
+        long[] window = Arrays.copyOfRange( nanos, from, to );
+        Arrays.sort( window );
+        long total = 0;
+        for (long n : window) total += n;
+        System.out.printf( "  %-18s mean %7d ns  p50 %7d ns  p99 %7d ns  max %8d ns%n", label,
+                total / window.length, window[window.length / 2],
+                window[(int) (window.length * 0.99)], window[window.length - 1] );
+    }
+}
@@ -64,6 +64,23 @@ public class JSONFnTest {
         assertEquals(input.isBuy(), result.isBuy());
     }
 
+    @Test
+    public void clientOrderReuseTest() {
+        MockMatchingEngineSerializer local = new MockMatchingEngineSerializer();
+        ClientOrder first = local.DeserializeInput(
+                ByteBuffer.wrap("{\"seqId\":1,\"instrument\":\"MSFT\",\"buyOrSell\":\"B\",\"quantity\":10.0,\"price\":100.25,\"trader\":\"t1\"}".getBytes()));
+        // Integer-valued doubles and a missing trader take the json-simple path
+        ClientOrder second = local.DeserializeInput(
+                ByteBuffer.wrap("{\"seqId\":2,\"instrument\":\"AMZN\",\"buyOrSell\":\"S\",\"quantity\":5,\"price\":99}".getBytes()));
+        Assert.assertSame(first, second);
+        assertEquals(2, second.getSequenceId());
+        assertEquals("AMZN", second.getInstrument());
+        assertEquals(false, second.isBuy());
+        // The generic path has always read integer prices as NaN
+        Assert.assertTrue(Double.isNaN(second.getPrice()));
+        assertEquals("", second.getTrader());
+    }
+
 
     @Test
     public void appStateTest() throws Throwable {
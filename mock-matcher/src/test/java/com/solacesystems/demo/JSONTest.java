@@ -1,15 +1,19 @@
 package com.solacesystems.demo;
 
+import com.solacesystems.ha.conn.BufferPool;
 import com.solacesystems.ha.model.HAState;
 import com.solacesystems.ha.model.SeqState;
+import com.solacesystems.ha.serial.JSONWriter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static com.solacesystems.demo.JSONSerializer.stringOrEmpty;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class JSONTest {
 
@@ -65,6 +69,39 @@ public class JSONTest {
         testMatcher( last.getMatcher(), (JSONObject)json.get("data") );
     }
 
+    @Test
+    public void restoredMatcherCancelsOrdersRestingBeforeFailover() {
+        MatcherState state = new MatcherState( "app", 1, "MSFT" );
+        state.setMatcher( new Matcher( 100, 0.25 ) );
+        Fills fills = new Fills();
+        state.applyOrder( OrderHelper.makeBuy( 1, "MSFT", 99.75, 10 ), fills );
+        state.applyOrder( OrderHelper.makeBuy( 2, "MSFT", 99.75, 20 ), fills );
+        state.applyOrder( OrderHelper.makeSell( 3, "MSFT", 100.25, 5 ), fills );
+        state.applyOrder( OrderHelper.makeSell( 4, "MSFT", 100.50, 7 ), fills );
+
+        // Replicated the way a backup receives it
+        MockMatchingEngineSerializer serializer = new MockMatchingEngineSerializer();
+        ByteBuffer output = serializer.SerializeOutput( state );
+        output.flip();
+        Matcher restored = serializer.DeserializeOutput( output ).getMatcher();
+        assertEquals( 4, restored.getOrders().getOrderCount() );
+
+        // Time priority survives: the older order at 99.75 fills first
+        MatcherState next = new MatcherState( "app", 1, "MSFT" );
+        next.setMatcher( restored );
+        next.applyOrder( OrderHelper.makeSell( 5, "MSFT", 99.75, 15 ), fills );
+        assertFalse( restored.getOrders().Contains( 1 ) );
+        assertEquals( 15, restored.getOrders().getOrderQuantity( 2 ), 0.0 );
+
+        // Orders given to the failed member can be cancelled and replaced after the takeover
+        assertEquals( 15, restored.cancelOrder( 2 ), 0.0 );
+        assertTrue( restored.getBuys().isEmpty() );
+        assertTrue( restored.replaceOrder( OrderHelper.makeReplace( 6, "MSFT", 3, 100.25, 2 ), fills ) );
+        assertEquals( 2, restored.getOrders().getOrderQuantity( 6 ), 0.0 );
+        assertEquals( 2, restored.getSells().get(0).getQuantity(), 0.0 );
+        assertTrue( Double.isNaN( restored.cancelOrder( 99 ) ) );
+    }
+
     private void testMatcher(Matcher matcher, JSONObject jsMatcher) {
         assertEquals( matcher.getPriceIncrement(), (Double)jsMatcher.get("priceInc"), .0001 );
         // test buys array
@@ -93,4 +130,23 @@ public class JSONTest {
         }
     }
 
+    @Test
+    public void writerMatchesJsonSimpleTest() throws Exception {
+        MatcherState state = AppStateHelper.makeAppState( 8, 100, 0.25 );
+        state.getMatcher().getBuys().add( new Matcher.Lvl( 99.125, 1234.5678901234 ) );
+        String expected = JSONSerializer.SerializeMatcherState( state ).toJSONString();
+
+        // Start small so the writer has to grow the buffer
+        BufferPool pool = new BufferPool();
+        JSONWriter writer = new JSONWriter( pool );
+        writer.Begin( pool.Acquire( 16 ) );
+        JSONSerializer.WriteMatcherState( writer, state );
+        ByteBuffer buffer = writer.End();
+        buffer.flip();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get( data );
+
+        JSONParser parser = new JSONParser();
+        assertEquals( parser.parse( expected ), parser.parse( new String( data ) ) );
+    }
 }
@@ -0,0 +1,107 @@
+package com.solacesystems.demo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedBookTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertSameBook(Matcher expected, Matcher actual) {
+        assertSameSide( expected, actual, expected.getBuys(), actual.getBuys(), true );
+        assertSameSide( expected, actual, expected.getSells(), actual.getSells(), false );
+        assertEquals( expected.isInAuction(), actual.isInAuction() );
+        assertEquals( expected.getOrders().getOrderCount(), actual.getOrders().getOrderCount() );
+    }
+
+    private static void assertSameSide(Matcher expected, Matcher actual, List<Matcher.Lvl> want, List<Matcher.Lvl> got, boolean isBuy) {
+        assertEquals( want.size(), got.size() );
+        long[] wantIds = new long[4096];
+        long[] gotIds = new long[4096];
+        for (int i = 0; i < want.size(); i++) {
+            double price = want.get(i).getPrice();
+            assertEquals( price, got.get(i).getPrice(), 0.0 );
+            assertEquals( want.get(i).getQuantity(), got.get(i).getQuantity(), 0.0 );
+            // same orders, in the same time priority
+            int count = expected.getOrders().CopyOrderIds( isBuy, price, wantIds );
+            assertEquals( count, actual.getOrders().CopyOrderIds( isBuy, price, gotIds ) );
+            for (int j = 0; j < count; j++) {
+                assertEquals( wantIds[j], gotIds[j] );
+                assertEquals( expected.getOrders().getOrderQuantity( wantIds[j] ),
+                              actual.getOrders().getOrderQuantity( gotIds[j] ), 0.0 );
+            }
+        }
+    }
+
+    @Test
+    public void restoresBookAndTimePriority() throws Exception {
+        File file = folder.newFile( "test.book" );
+        MatcherState state = new MatcherState( "app", 1, "MSFT" );
+        Matcher matcher = new Matcher( 100, 0.25 );
+        state.setMatcher( matcher );
+        Fills fills = new Fills();
+        try (MappedBook book = MappedBook.Open( file, 256, 16 )) {
+            matcher.setStore( book, 0 );
+            for (int oid = 1; oid <= 3000; oid++) {
+                ClientOrder order;
+                if (oid % 5 == 0)
+                    order = OrderHelper.makeCancel( oid, "MSFT", oid - 4 );
+                else if (oid % 7 == 0)
+                    order = OrderHelper.makeReplace( oid, "MSFT", oid - 6, 100, 1.0 );
+                else
+                    order = OrderHelper.nextOrder( oid );
+                state.applyOrder( order, fills );
+            }
+            state.applyOrder( OrderHelper.makeControl( 3001, "MSFT", ClientOrder.Type.AUCTION ), fills );
+            // the order pool grew past the file's initial records
+            assertTrue( book.getOrderLimit() > 16 );
+            matcher.setStore( null, 0 );
+        }
+
+        try (MappedBook book = MappedBook.Open( file, 256, 16 )) {
+            assertTrue( book.isValid() );
+            assertEquals( 3001, book.getLastInput() );
+            Matcher restored = Matcher.Restore( book );
+            assertSameBook( matcher, restored );
+
+            // the restored matcher carries on writing through
+            MatcherState next = new MatcherState( "app", 1, "MSFT" );
+            next.setMatcher( restored );
+            next.applyOrder( OrderHelper.makeControl( 3002, "MSFT", ClientOrder.Type.UNCROSS ), fills );
+            state.applyOrder( OrderHelper.makeControl( 3002, "MSFT", ClientOrder.Type.UNCROSS ), fills );
+            assertSameBook( matcher, restored );
+        }
+        try (MappedBook book = MappedBook.Open( file, 256, 16 )) {
+            assertEquals( 3002, book.getLastInput() );
+            assertSameBook( matcher, Matcher.Restore( book ) );
+        }
+    }
+
+    @Test
+    public void dirtyOrForeignFileIsNotRestored() throws Exception {
+        File file = folder.newFile( "dirty.book" );
+        Matcher matcher = new Matcher( 100, 0.25 );
+        try (MappedBook book = MappedBook.Open( file, 64, 16 )) {
+            assertFalse( book.isValid() );
+            matcher.setStore( book, 10 );
+            assertTrue( book.isValid() );
+            // changed but never checkpointed, as if the process died mid-input
+            matcher.addOrder( OrderHelper.makeBuy( 11, "MSFT", 99.0, 5.0 ) );
+        }
+        try (MappedBook book = MappedBook.Open( file, 64, 16 )) {
+            assertFalse( book.isValid() );
+            matcher.setStore( book, 11 );
+        }
+        // a different layout is not read
+        try (MappedBook book = MappedBook.Open( file, 128, 16 )) {
+            assertFalse( book.isValid() );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.solacesystems.demo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MarketDataFeedTest {
+
+    private final List<String> topics = new ArrayList<String>();
+    private final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+    private boolean backpressured = false;
+
+    private MarketDataFeed makeFeed(Matcher matcher, int depth) {
+        MarketDataFeed feed = new MarketDataFeed( "app", "MSFT", depth, 50, 1000,
+                (topic, frame) -> {
+                    ByteBuffer copy = ByteBuffer.allocate( frame.position() );
+                    frame.flip();
+                    copy.put( frame ).flip();
+                    topics.add( topic );
+                    frames.add( copy );
+                },
+                () -> backpressured );
+        feed.Attach( matcher );
+        feed.SetActive( true );
+        feed.Publish( 0 );
+        return feed;
+    }
+
+    private static MarketDataFrame.Level find(List<MarketDataFrame.Level> levels, boolean isBuy, double price) {
+        for (MarketDataFrame.Level lvl : levels)
+            if (lvl.isBuy == isBuy && lvl.price == price) return lvl;
+        return null;
+    }
+
+    @Test
+    public void conflationTest() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        matcher.addOrder( OrderHelper.makeBuy( 1, "MSFT", 99.75, 1.0 ) );
+        MarketDataFeed feed = makeFeed( matcher, 10 );
+        assertEquals( 1, frames.size() );
+        assertEquals( feed.getSnapshotTopic(), topics.get(0) );
+        assertTrue( MarketDataFrame.IsSnapshot( frames.get(0) ) );
+        assertEquals( 1, MarketDataFrame.Decode( frames.get(0) ).size() );
+
+        // Within the update interval: held back and conflated
+        for (int i = 2; i < 6; i++) {
+            matcher.addOrder( OrderHelper.makeBuy( i, "MSFT", 99.75, 1.0 ) );
+            feed.Publish( 10 );
+        }
+        assertEquals( 1, frames.size() );
+        // Under backpressure: still held back
+        backpressured = true;
+        feed.Publish( 100 );
+        assertEquals( 1, frames.size() );
+
+        backpressured = false;
+        feed.Publish( 100 );
+        assertEquals( 2, frames.size() );
+        assertEquals( feed.getUpdateTopic(), topics.get(1) );
+        assertEquals( 1L, MarketDataFrame.Sequence( frames.get(1) ) );
+        List<MarketDataFrame.Level> levels = MarketDataFrame.Decode( frames.get(1) );
+        assertEquals( 1, levels.size() );
+        assertEquals( 5.0, find( levels, true, 99.75 ).quantity, 0.0 );
+
+        // Not active: nothing goes out
+        feed.SetActive( false );
+        matcher.addOrder( OrderHelper.makeBuy( 6, "MSFT", 99.75, 1.0 ) );
+        feed.Publish( 500 );
+        assertEquals( 2, frames.size() );
+    }
+
+    @Test
+    public void topLevelsTest() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        matcher.addOrder( OrderHelper.makeBuy( 1, "MSFT", 99.5, 3.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 2, "MSFT", 99.75, 2.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 3, "MSFT", 100.0, 5.0 ) );
+        MarketDataFeed feed = makeFeed( matcher, 2 );
+        List<MarketDataFrame.Level> snapshot = MarketDataFrame.Decode( frames.get(0) );
+        assertEquals( 2, snapshot.size() );
+        assertNull( find( snapshot, true, 99.5 ) );
+
+        // A change below the top two levels is not published
+        matcher.addOrder( OrderHelper.makeBuy( 4, "MSFT", 99.5, 1.0 ) );
+        feed.Publish( 100 );
+        assertEquals( 1, frames.size() );
+
+        // Emptying the best bid brings 99.5 into the top two
+        matcher.addOrder( OrderHelper.makeSell( 5, "MSFT", 100.0, 1.0 ) );
+        matcher.addOrder( OrderHelper.makeSell( 6, "MSFT", 100.0, 10.0 ) );
+        feed.Publish( 200 );
+        assertEquals( 2, frames.size() );
+        List<MarketDataFrame.Level> update = MarketDataFrame.Decode( frames.get(1) );
+        assertEquals( 0.0, find( update, true, 100.0 ).quantity, 0.0 );
+        assertEquals( 4.0, find( update, true, 99.5 ).quantity, 0.0 );
+        assertEquals( 6.0, find( update, false, 100.0 ).quantity, 0.0 );
+    }
+}
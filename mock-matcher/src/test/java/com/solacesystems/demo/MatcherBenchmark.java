@@ -0,0 +1,67 @@
+package com.solacesystems.demo;
+
+import java.util.Random;
+
+/**
+ * Drives a Matcher with a long synthetic order flow whose mid price wanders, as it would
+ * over a trading session, and reports the cost per message and the book size for each
+ * window of messages. With empty levels pruned both stay flat however long the flow runs;
+ * without pruning every level the price ever visited stays in the book and the cost per
+ * message climbs. Not run as part of the unit tests; after `mvn test-compile` run its
+ * main() from the mock-matcher directory with target/classes, target/test-classes,
+ * ../solace-ha/target/classes and the dependency jars on the classpath. Optional arguments
+ * set the number of windows and the messages per window.
+ */
+public class MatcherBenchmark {
+
+    public static void main(String[] args) {
+        int windows = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        int perWindow = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+        double tick = 0.25;
+
+        Random rand = new Random( 11 );
+        Matcher matcher = new Matcher( 100, tick );
+        long[] live = new long[1 << 16];
+        int liveCount = 0;
+        ClientOrder order = new ClientOrder();
+        Fills fills = new Fills();
+        double mid = 100;
+        int oid = 1;
+
+        for (int w = 0; w < windows; w++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < perWindow; i++, oid++) {
+                // A tick of drift every 1000 messages or so
+                if (rand.nextInt( 1000 ) == 0)
+                    mid += rand.nextBoolean() ? tick : -tick;
+                if (liveCount > 0 && rand.nextInt( 100 ) < 45) {
+                    int k = rand.nextInt( liveCount );
+                    matcher.cancelOrder( live[k] );
+                    live[k] = live[--liveCount];
+                    continue;
+                }
+                boolean isBuy = rand.nextBoolean();
+                order.Reset();
+                order.setSequenceId( oid );
+                order.setIsBuy( isBuy );
+                order.setQuantity( 1 + rand.nextInt( 100 ) );
+                order.setPrice( mid + (isBuy ? -1 : 1) * tick * rand.nextInt( 8 ) );
+                fills.Clear();
+                matcher.addOrder( order, fills );
+                if (liveCount < live.length) {
+                    live[liveCount++] = oid;
+                }
+                else {
+                    // Traders cancel what they no longer want; keeps the resting orders bounded
+                    int k = rand.nextInt( live.length );
+                    matcher.cancelOrder( live[k] );
+                    live[k] = oid;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf( "window %3d  %7.1f ns/msg  levels %5d  resting orders %7d%n",
+                    w, (double) nanos / perWindow, matcher.getBuys().size() + matcher.getSells().size(),
+                    matcher.getOrders().getOrderCount() );
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.solacesystems.demo;
+
+import java.util.Random;
+
+/**
+ * Measures OrderBook add, cancel and fill with millions of resting orders spread over a few
+ * hundred levels, reporting time per operation. Not run as part of the unit tests; after
+ * `mvn test-compile` run its main() from the mock-matcher directory with target/classes,
+ * target/test-classes, ../solace-ha/target/classes and the dependency jars on the classpath.
+ * An optional argument sets the number of resting orders.
+ */
+public class OrderBookBenchmark {
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+        int levels = 256;
+
+        Random rand = new Random( 7 );
+        boolean[] sides = new boolean[count];
+        double[] prices = new double[count];
+        long[] cancels = new long[count / 2];
+        for (int i = 0; i < count; i++) {
+            sides[i] = rand.nextBoolean();
+            prices[i] = 100 + (sides[i] ? -1 : 1) * 0.25 * rand.nextInt( levels / 2 );
+        }
+        for (int i = 0; i < cancels.length; i++)
+            cancels[i] = 1 + rand.nextInt( count );
+
+        OrderBook book = new OrderBook( count );
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++)
+                book.Add( i + 1, sides[i], prices[i], 100 );
+            report( "add", count, System.nanoTime() - start, book.getOrderCount() );
+
+            double sink = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < cancels.length; i++) {
+                double qty = book.Cancel( cancels[i] );
+                if (qty == qty) sink += qty;
+            }
+            report( "cancel", cancels.length, System.nanoTime() - start, (long) sink );
+
+            int fills = 0;
+            sink = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++, fills++)
+                sink += book.Fill( sides[i], prices[i], 150 );
+            report( "fill", fills, System.nanoTime() - start, (long) sink );
+            book.Clear();
+        }
+    }
+
+    private static void report(String name, int ops, long nanos, long sink) {
+        System.out.printf( "%-7s %8.1f ns/op  (checksum %d)%n", name, (double) nanos / ops, sink );
+    }
+}
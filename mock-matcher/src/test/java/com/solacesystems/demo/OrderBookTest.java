@@ -0,0 +1,122 @@
+package com.solacesystems.demo;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderBookTest {
+
+    @Test
+    public void fifoCancelAndFill() {
+        OrderBook book = new OrderBook( 4 );
+        for (int id = 1; id <= 5; id++)
+            assertEquals( id - 1, book.Add( id, true, 99.75, 10 * id ) );
+        book.Add( 6, false, 99.75, 7 );
+        assertEquals( OrderBook.NIL, book.Add( 3, true, 99.5, 1 ) );
+        assertEquals( 150, book.getLevelQuantity( true, 99.75 ), 0.0001 );
+        assertEquals( 7, book.getLevelQuantity( false, 99.75 ), 0.0001 );
+
+        // Cancel from the middle, the head and the tail
+        assertEquals( 30, book.Cancel( 3 ), 0.0001 );
+        assertEquals( 10, book.Cancel( 1 ), 0.0001 );
+        assertEquals( 50, book.Cancel( 5 ), 0.0001 );
+        assertTrue( Double.isNaN( book.Cancel( 5 ) ) );
+        long[] ids = new long[8];
+        assertEquals( 2, book.CopyOrderIds( true, 99.75, ids ) );
+        assertEquals( 2, ids[0] );
+        assertEquals( 4, ids[1] );
+
+        // A fill takes the oldest order first and leaves the next one partly filled
+        assertEquals( 35, book.Fill( true, 99.75, 35 ), 0.0001 );
+        assertFalse( book.Contains( 2 ) );
+        assertEquals( 25, book.getOrderQuantity( 4 ), 0.0001 );
+
+        // More than rests fills what there is and frees the level; its slots are reused
+        assertEquals( 25, book.Fill( true, 99.75, 100 ), 0.0001 );
+        assertEquals( 0, book.getLevelOrderCount( true, 99.75 ) );
+        assertEquals( 1, book.getOrderCount() );
+        assertEquals( 1, book.getLevelCount() );
+        assertEquals( 3, book.Add( 7, true, 99.5, 1 ) );
+        assertEquals( 1, book.getLevelOrderCount( true, 99.5 ) );
+    }
+
+    @Test
+    public void matcherFillsInTimePriority() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        matcher.addOrder( OrderHelper.makeSell( 1, "MSFT", 101.0, 5.0 ) );
+        matcher.addOrder( OrderHelper.makeSell( 2, "MSFT", 101.0, 3.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 3, "MSFT", 101.0, 1.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 4, "MSFT", 101.0, 5.0 ) );
+
+        OrderBook orders = matcher.getOrders();
+        assertFalse( orders.Contains( 1 ) );
+        assertEquals( 2.0, orders.getOrderQuantity( 2 ), 0.0001 );
+        assertFalse( orders.Contains( 3 ) );
+        assertFalse( orders.Contains( 4 ) );
+        assertEquals( matcher.getSells().get(0).getQuantity(), orders.getLevelQuantity( false, 101.0 ), 0.0001 );
+        assertEquals( 1, orders.getOrderCount() );
+    }
+
+    @Test
+    public void matcherCancelAndReplace() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        OrderBook orders = matcher.getOrders();
+        Fills fills = new Fills();
+        matcher.addOrder( OrderHelper.makeBuy( 1, "MSFT", 99.75, 10.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 2, "MSFT", 99.75, 20.0 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 3, "MSFT", 99.75, 30.0 ) );
+
+        assertEquals( 10.0, matcher.cancelOrder( 1 ), 0.0001 );
+        assertTrue( Double.isNaN( matcher.cancelOrder( 1 ) ) );
+        assertEquals( 50.0, matcher.getBuys().get(0).getQuantity(), 0.0001 );
+
+        // Lowering the quantity keeps the order ahead of order 3 under its new id
+        assertTrue( matcher.replaceOrder( OrderHelper.makeReplace( 4, "MSFT", 2, 99.75, 5.0 ), fills ) );
+        assertFalse( orders.Contains( 2 ) );
+        long[] ids = new long[4];
+        assertEquals( 2, orders.CopyOrderIds( true, 99.75, ids ) );
+        assertEquals( 4, ids[0] );
+        assertEquals( 35.0, matcher.getBuys().get(0).getQuantity(), 0.0001 );
+
+        // A new price requeues it on the original side
+        assertTrue( matcher.replaceOrder( OrderHelper.makeReplace( 5, "MSFT", 4, 100.0, 5.0 ), fills ) );
+        assertEquals( 100.0, orders.getOrderPrice( 5 ), 0.0 );
+        assertTrue( orders.isBuyOrder( 5 ) );
+        assertEquals( 100.0, matcher.getBuys().get(0).getPrice(), 0.0 );
+        assertEquals( 30.0, matcher.getBuys().get(1).getQuantity(), 0.0001 );
+
+        // Replacing an order that is gone changes nothing
+        assertFalse( matcher.replaceOrder( OrderHelper.makeReplace( 6, "MSFT", 4, 100.0, 1.0 ), fills ) );
+        assertFalse( orders.Contains( 6 ) );
+        assertEquals( 2, orders.getOrderCount() );
+        assertEquals( 0, fills.getCount() );
+    }
+
+    @Test
+    public void indexMatchesHashMap() {
+        LongIntIndex index = new LongIntIndex( 8 );
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random rand = new Random( 42 );
+        for (int i = 0; i < 200000; i++) {
+            // A small key space forces long probe runs and plenty of removals inside them
+            long key = rand.nextInt( 5000 ) * 4096L;
+            if (rand.nextInt( 3 ) == 0) {
+                Integer old = expected.remove( key );
+                assertEquals( old == null ? LongIntIndex.MISSING : old, index.Remove( key ) );
+            }
+            else {
+                Integer old = expected.put( key, i );
+                assertEquals( old == null ? LongIntIndex.MISSING : old, index.Put( key, i ) );
+            }
+        }
+        assertEquals( expected.size(), index.getSize() );
+        for (long key = 0; key < 5000; key++) {
+            Integer value = expected.get( key * 4096L );
+            assertEquals( value == null ? LongIntIndex.MISSING : value, index.Get( key * 4096L ) );
+        }
+    }
+}
@@ -2,7 +2,10 @@ package com.solacesystems.demo;
 
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 public class StackTest {
     @Test
@@ -30,7 +33,7 @@ public class StackTest {
         for(int i = 0; i < max_sells; i++) {
             ClientOrder order = OrderHelper.nextOrder(oid++);
             order.setIsBuy(false);
-            order.setPrice(102.5 + i);
+            order.setPrice(106.5 + i);
             matcher.addOrder(order);
         }
         assertEquals(max_sells, matcher.getSells().size());
@@ -134,4 +137,62 @@ public class StackTest {
         matcher.addOrder(four);
         assertEquals(3.234, matcher.maxPrice(), 0.00001);
     }
+
+    @Test
+    public void emptyLevelsArePruned() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        final List<String> events = new ArrayList<String>();
+        matcher.setLevelListener( (isBuy, price, quantity) -> events.add( (isBuy ? "B" : "S") + price + "=" + quantity ) );
+        matcher.addOrder( OrderHelper.makeSell( 1, "MSFT", 101.0, 5.0 ) );
+        Matcher.Lvl sellLevel = matcher.getSells().get(0);
+
+        // The level trades out: listeners see it go to 0, then it leaves the book
+        List<Trade> trades = matcher.addOrder( OrderHelper.makeBuy( 2, "MSFT", 101.0, 5.0 ) );
+        assertEquals( 1, trades.size() );
+        assertEquals( 5.0, trades.get(0).getQuantity(), 0.0001 );
+        assertTrue( events.contains( "S101.0=0.0" ) );
+        assertEquals( 0, matcher.getBuys().size() );
+        assertEquals( 0, matcher.getSells().size() );
+
+        // A new level reuses the pruned one
+        matcher.addOrder( OrderHelper.makeBuy( 3, "MSFT", 99.0, 2.0 ) );
+        assertSame( sellLevel, matcher.getBuys().get(0) );
+        assertEquals( 99.0, sellLevel.getPrice(), 0.0 );
+        assertEquals( 2.0, sellLevel.getQuantity(), 0.0 );
+
+        // A cancel that empties a level prunes it too
+        matcher.addOrder( OrderHelper.makeBuy( 5, "MSFT", 98.5, 0.1 ) );
+        matcher.addOrder( OrderHelper.makeBuy( 6, "MSFT", 98.5, 0.2 ) );
+        matcher.cancelOrder( 5 );
+        matcher.cancelOrder( 6 );
+        assertEquals( 1, matcher.getBuys().size() );
+        assertEquals( 99.0, matcher.getBuys().get(0).getPrice(), 0.0 );
+    }
+
+    @Test
+    public void sweepStopsAtLimit() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        for (int i = 0; i < 5; i++)
+            matcher.addOrder( OrderHelper.makeSell( i + 1, "MSFT", 100.0 + (0.25 * i), 10.0 ) );
+
+        // Crosses three levels at their own prices, then rests the rest at its limit
+        Fills fills = new Fills();
+        matcher.addOrder( OrderHelper.makeBuy( 6, "MSFT", 100.5, 35.0 ), fills );
+        assertEquals( 3, fills.getCount() );
+        for (int i = 0; i < 3; i++) {
+            assertEquals( 100.0 + (0.25 * i), fills.getPrice(i), 0.0 );
+            assertEquals( 10.0, fills.getQuantity(i), 0.0 );
+        }
+        assertEquals( 2, matcher.getSells().size() );
+        assertEquals( 100.75, matcher.getSells().get(0).getPrice(), 0.0 );
+        assertEquals( 100.5, matcher.getBuys().get(0).getPrice(), 0.0 );
+        assertEquals( 5.0, matcher.getBuys().get(0).getQuantity(), 0.0 );
+        assertEquals( 5.0, matcher.getOrders().getOrderQuantity( 6 ), 0.0 );
+
+        // A partial fill leaves the level in place
+        fills.Clear();
+        matcher.addOrder( OrderHelper.makeSell( 7, "MSFT", 100.5, 2.0 ), fills );
+        assertEquals( 1, fills.getCount() );
+        assertEquals( 3.0, matcher.getBuys().get(0).getQuantity(), 0.0 );
+    }
 }
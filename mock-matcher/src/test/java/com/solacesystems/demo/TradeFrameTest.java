@@ -0,0 +1,85 @@
+package com.solacesystems.demo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TradeFrameTest {
+    @Test
+    public void sweepIsOneFrame() {
+        Matcher matcher = new Matcher( 100, 0.25 );
+        matcher.addOrder( OrderHelper.makeBuy( 1, "MSFT", 101.0, 1.0 ) );
+        for (int i = 0; i < 3; i++)
+            matcher.addOrder( OrderHelper.makeSell( i+2, "MSFT", 100.25 + (i * 0.25), 10.0 ) );
+        // One aggressive buy sweeping every sell level
+        List<Trade> trades = matcher.addOrder( OrderHelper.makeBuy( 5, "MSFT", 101.0, 100.0 ) );
+        assertNotNull( trades );
+        assertTrue( trades.size() > 1 );
+
+        ByteBuffer buffer = ByteBuffer.allocate( TradeFrame.EncodedSize( "MSFT", trades.size() ) );
+        TradeFrame.Encode( buffer, 4, "MSFT", trades );
+        assertEquals( 0, buffer.remaining() );
+        buffer.flip();
+
+        List<Trade> decoded = TradeFrame.Decode( buffer );
+        assertNotNull( decoded );
+        assertEquals( trades.size(), decoded.size() );
+        for (int i = 0; i < trades.size(); i++) {
+            assertEquals( "MSFT", decoded.get(i).getInstrument() );
+            assertEquals( trades.get(i).getPrice(), decoded.get(i).getPrice(), 0.0 );
+            assertEquals( trades.get(i).getQuantity(), decoded.get(i).getQuantity(), 0.0 );
+        }
+    }
+
+    @Test
+    public void rejectsOtherPayloads() {
+        ByteBuffer json = ByteBuffer.wrap( "{\"price\":100.0,\"quantity\":1.0}".getBytes() );
+        assertNull( TradeFrame.Decode( json ) );
+    }
+
+    @Test
+    public void rejectsCountBeyondBuffer() {
+        List<Trade> trades = new ArrayList<Trade>();
+        for (int i = 0; i < 2; i++) {
+            Trade trade = new Trade();
+            trade.setPrice( 100.0 + i );
+            trade.setQuantity( 10.0 );
+            trades.add( trade );
+        }
+        ByteBuffer buffer = ByteBuffer.allocate( TradeFrame.EncodedSize( "MSFT", trades.size() ) );
+        TradeFrame.Encode( buffer, 1, "MSFT", trades );
+        // magic, sequence id, instrument length and "MSFT" come before the count
+        int countAt = 4 + 8 + 1 + 4;
+
+        // One trade more than the frame carries
+        buffer.putInt( countAt, 3 );
+        buffer.flip();
+        assertNull( TradeFrame.Decode( buffer.duplicate() ) );
+
+        // Large enough that count * RECORD_SIZE overflows an int
+        buffer.putInt( countAt, Integer.MAX_VALUE );
+        assertNull( TradeFrame.Decode( buffer.duplicate() ) );
+
+        buffer.putInt( countAt, -1 );
+        assertNull( TradeFrame.Decode( buffer.duplicate() ) );
+
+        // A frame cut short
+        buffer.putInt( countAt, 2 );
+        buffer.limit( buffer.limit() - 1 );
+        assertNull( TradeFrame.Decode( buffer.duplicate() ) );
+        buffer.limit( buffer.limit() + 1 );
+        assertEquals( 2, TradeFrame.Decode( buffer.duplicate() ).size() );
+    }
+
+    @Test
+    public void rejectsInstrumentBeyondBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate( TradeFrame.HEADER_SIZE );
+        buffer.putInt( TradeFrame.MAGIC ).putLong( 1 ).put( (byte) 200 ).putInt( 0 );
+        buffer.flip();
+        assertNull( TradeFrame.Decode( buffer ) );
+    }
+}
@@ -0,0 +1,13 @@
+package com.solacesystems.ha.conn;
+
+/**
+ * Notified by the SolaceConnector when non-blocking sends start parking messages in the
+ * retry queue, and again once the queue has drained. Producers should stop generating
+ * output while backpressure is engaged instead of overrunning the queue.
+ */
+public interface BackpressureListener {
+    /**
+     * @param engaged -- true when the first message was parked, false when the queue is empty again
+     */
+    void OnBackpressureChange(boolean engaged);
+}
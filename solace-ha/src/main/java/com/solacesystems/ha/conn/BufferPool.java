@@ -0,0 +1,139 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct ByteBuffers handed out in power-of-two size classes. Message attachments are
+ * copied in and out of the Solace API over JNI, which is cheapest when the Java side is a direct
+ * buffer; pooling them keeps the cost of allocating direct memory off the message path.
+ *
+ * Buffers are acquired at a minimum capacity and rounded up to the next size class. When an
+ * attachment outgrows its buffer the owner calls Grow(), which moves the written content into
+ * a buffer from a larger class and returns the old one to the pool. Requests beyond the largest
+ * size class are allocated exactly and never pooled.
+ *
+ * Hit, miss and growth counters are kept so deployments can size their initial buffers.
+ */
+public class BufferPool {
+
+    public static BufferPool getDefault() {
+        return _default;
+    }
+
+    public BufferPool() {
+        this(MIN_CLASS_SHIFT, MAX_CLASS_SHIFT);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int minClassShift, int maxClassShift) {
+        if (minClassShift < 0 || maxClassShift < minClassShift || maxClassShift > 30)
+            throw new IllegalArgumentException("Invalid buffer pool size classes");
+        _minShift = minClassShift;
+        _maxShift = maxClassShift;
+        _free = new ArrayDeque[maxClassShift - minClassShift + 1];
+        for (int i = 0; i < _free.length; i++)
+            _free[i] = new ArrayDeque<ByteBuffer>();
+    }
+
+    /**
+     * Returns a cleared direct buffer with at least the requested capacity.
+     *
+     * @param capacity -- minimum number of bytes the buffer must hold
+     * @return a direct ByteBuffer, from the pool if one of the right size class was free
+     */
+    public synchronized ByteBuffer Acquire(int capacity) {
+        int cls = sizeClass(capacity);
+        if (cls < 0) {
+            _misses++;
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        ByteBuffer buffer = _free[cls].pollFirst();
+        if (buffer == null) {
+            _misses++;
+            return ByteBuffer.allocateDirect(1 << (cls + _minShift));
+        }
+        _hits++;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers not created by a pool (heap buffers, oversized
+     * buffers) are dropped for the garbage collector.
+     *
+     * @param buffer -- buffer previously returned by Acquire or Grow; may be null
+     */
+    public synchronized void Release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) return;
+        int cls = Integer.numberOfTrailingZeros(capacity) - _minShift;
+        if (cls < 0 || cls >= _free.length) return;
+        buffer.clear();
+        _free[cls].addFirst(buffer);
+    }
+
+    /**
+     * Moves the content written so far (from 0 to position) into a buffer of at least the
+     * requested capacity and releases the old buffer. The returned buffer keeps the position
+     * and byte order of the original, so the caller can simply carry on writing.
+     *
+     * @param buffer -- the buffer that is too small
+     * @param capacity -- minimum capacity required
+     * @return the original buffer if it is already large enough, otherwise its replacement
+     */
+    public ByteBuffer Grow(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() >= capacity) return buffer;
+        ByteBuffer bigger = Acquire(capacity);
+        bigger.order(buffer.order());
+        buffer.flip();
+        bigger.put(buffer);
+        Release(buffer);
+        synchronized (this) {
+            _growths++;
+        }
+        return bigger;
+    }
+
+    /**
+     * Convenience for writers: grows the buffer if it cannot take another `needed` bytes
+     * from its current position.
+     */
+    public ByteBuffer EnsureRemaining(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) return buffer;
+        return Grow(buffer, buffer.position() + needed);
+    }
+
+    public synchronized long getHitCount() { return _hits; }
+
+    public synchronized long getMissCount() { return _misses; }
+
+    public synchronized long getGrowthCount() { return _growths; }
+
+    @Override
+    public synchronized String toString() {
+        return "BufferPool{hits=" + _hits + ", misses=" + _misses + ", growths=" + _growths + "}";
+    }
+
+    private int sizeClass(int capacity) {
+        int shift = (capacity <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        if (shift < _minShift) shift = _minShift;
+        if (shift > _maxShift) return -1;
+        return shift - _minShift;
+    }
+
+    /** Smallest pooled buffer is 256 bytes, largest is 16 MB */
+    public final static int MIN_CLASS_SHIFT = 8;
+    public final static int MAX_CLASS_SHIFT = 24;
+
+    private final static BufferPool _default = new BufferPool();
+
+    private final int _minShift;
+    private final int _maxShift;
+    private final ArrayDeque<ByteBuffer>[] _free;
+
+    private long _hits;
+    private long _misses;
+    private long _growths;
+}
@@ -0,0 +1,45 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compression algorithm the CompressionStage can apply to serialized outputs. The codec id
+ * travels with every compressed message so receivers can pick the matching codec, which means
+ * ids must be unique and stable across all members of a cluster.
+ *
+ * Implementations are used from one thread at a time and may keep scratch state between calls.
+ */
+public interface CompressionCodec {
+    /** Reserved id meaning "not compressed" */
+    byte NONE = 0;
+
+    /**
+     * @return the non-zero id written into the frame header of compressed messages
+     */
+    byte getId();
+
+    String getName();
+
+    /**
+     * @param rawLength -- size of the data to be compressed
+     * @return worst-case size of the compressed data
+     */
+    int MaxCompressedLength(int rawLength);
+
+    /**
+     * Compresses the bytes from src position to limit into dst at its position, advancing
+     * both positions.
+     *
+     * @return number of bytes written to dst
+     */
+    int Compress(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * Decompresses the bytes from src position to limit into dst at its position, advancing
+     * both positions. The caller must ensure dst has room for the whole raw payload.
+     *
+     * @return number of bytes written to dst
+     * @throws IllegalStateException if src is not a valid compressed payload
+     */
+    int Decompress(ByteBuffer src, ByteBuffer dst);
+}
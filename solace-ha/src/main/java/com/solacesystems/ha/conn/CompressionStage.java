@@ -0,0 +1,129 @@
+package com.solacesystems.ha.conn;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Optional compression step between serializing an output and sending it, and between
+ * receiving a state message and deserializing it. Outputs smaller than the threshold, or that
+ * do not shrink, are passed through untouched so they can still be sent as plain messages.
+ *
+ * Every known codec is registered for decompression regardless of which one (if any) this
+ * member uses to compress, so members with different settings can still follow each other.
+ */
+public class CompressionStage {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionStage.class);
+
+    public CompressionStage(BufferPool pool) {
+        _pool = pool;
+        _compressed   = pool.Acquire(8192);
+        _decompressed = pool.Acquire(8192);
+        RegisterCodec(new LZ4BlockCodec());
+    }
+
+    /**
+     * Makes a codec available for decompressing messages carrying its id.
+     */
+    public void RegisterCodec(CompressionCodec codec) {
+        if (codec.getId() == CompressionCodec.NONE)
+            throw new IllegalArgumentException("Codec id " + CompressionCodec.NONE + " is reserved");
+        _codecs[codec.getId() & 0xFF] = codec;
+    }
+
+    /**
+     * Selects the codec used to compress outputs; null disables compression.
+     *
+     * @param codec -- the codec to compress with; it is registered for decompression too
+     * @param threshold -- outputs smaller than this many bytes are sent uncompressed
+     */
+    public void SetCodec(CompressionCodec codec, int threshold) {
+        if (codec != null) RegisterCodec(codec);
+        _codec = codec;
+        _threshold = threshold;
+    }
+
+    public CompressionCodec getCodec() { return _codec; }
+
+    public int getThreshold() { return _threshold; }
+
+    public CompressionStats getStats() { return _stats; }
+
+    /**
+     * @param output -- serialized output, written but not yet flipped
+     * @return a compressed copy (written but not flipped, owned by this stage), or the
+     *         output itself if it was not worth compressing
+     */
+    public ByteBuffer Compress(ByteBuffer output) {
+        int rawLength = output.position();
+        if (_codec == null || rawLength < _threshold) {
+            _stats.RecordRaw();
+            return output;
+        }
+        _compressed.clear();
+        _compressed = _pool.Grow(_compressed, _codec.MaxCompressedLength(rawLength));
+
+        long start = System.nanoTime();
+        output.flip();
+        int compressedLength = _codec.Compress(output, _compressed);
+        long nanos = System.nanoTime() - start;
+        // leave the original as it was handed in, in case it is sent raw
+        output.limit(output.capacity());
+        output.position(rawLength);
+
+        if (compressedLength >= rawLength) {
+            _stats.RecordRaw();
+            return output;
+        }
+        _stats.RecordCompressed(rawLength, compressedLength, nanos);
+        if (logger.isDebugEnabled())
+            logger.debug("Compressed output {} => {} bytes ({}) in {} ns",
+                    rawLength, compressedLength, _stats.getLastRatio(), nanos);
+        return _compressed;
+    }
+
+    /**
+     * @param payload -- compressed payload, flipped for reading
+     * @param codecId -- id of the codec that compressed it
+     * @param rawLength -- size of the uncompressed payload
+     * @return the decompressed payload flipped for reading (owned by this stage), or null on failure
+     */
+    public ByteBuffer Decompress(ByteBuffer payload, byte codecId, int rawLength) {
+        CompressionCodec codec = _codecs[codecId & 0xFF];
+        if (codec == null) {
+            logger.error("No compression codec registered with id {}", codecId);
+            return null;
+        }
+        _decompressed.clear();
+        _decompressed = _pool.Grow(_decompressed, rawLength);
+        _decompressed.limit(rawLength);
+
+        long start = System.nanoTime();
+        try {
+            if (codec.Decompress(payload, _decompressed) != rawLength)
+                throw new IllegalStateException("payload did not decompress to " + rawLength + " bytes");
+        }
+        catch (RuntimeException e) {
+            logger.error("Failed to decompress {} payload: {}", codec.getName(), e.getMessage());
+            return null;
+        }
+        _stats.RecordDecompressed(System.nanoTime() - start);
+        _decompressed.flip();
+        return _decompressed;
+    }
+
+    public void destroy() {
+        _pool.Release(_compressed);
+        _pool.Release(_decompressed);
+    }
+
+    private final BufferPool _pool;
+    private final CompressionCodec[] _codecs = new CompressionCodec[256];
+    private final CompressionStats _stats = new CompressionStats();
+    private CompressionCodec _codec;
+    private int _threshold;
+
+    private ByteBuffer _compressed;
+    private ByteBuffer _decompressed;
+}
@@ -0,0 +1,65 @@
+package com.solacesystems.ha.conn;
+
+/**
+ * Counters kept by the CompressionStage so the codec and threshold can be tuned per deployment:
+ * how many outputs were compressed or sent raw, the bytes in and out, and the CPU time spent in
+ * the codec. The ratio and time of the most recent message are kept alongside the totals.
+ */
+public class CompressionStats {
+
+    public long getCompressedCount()   { return _compressed; }
+    public long getRawCount()          { return _raw; }
+    public long getBytesIn()           { return _bytesIn; }
+    public long getBytesOut()          { return _bytesOut; }
+    public long getCompressNanos()     { return _compressNanos; }
+    public long getDecompressedCount() { return _decompressed; }
+    public long getDecompressNanos()   { return _decompressNanos; }
+    public double getLastRatio()       { return _lastRatio; }
+    public long getLastNanos()         { return _lastNanos; }
+
+    /**
+     * @return compressed size over raw size for all compressed outputs; 1.0 before any
+     */
+    public double getOverallRatio() {
+        return (_bytesIn == 0) ? 1.0 : (double) _bytesOut / _bytesIn;
+    }
+
+    void RecordCompressed(int rawLength, int compressedLength, long nanos) {
+        _compressed++;
+        _bytesIn  += rawLength;
+        _bytesOut += compressedLength;
+        _compressNanos += nanos;
+        _lastRatio = (double) compressedLength / rawLength;
+        _lastNanos = nanos;
+    }
+
+    void RecordRaw() {
+        _raw++;
+    }
+
+    void RecordDecompressed(long nanos) {
+        _decompressed++;
+        _decompressNanos += nanos;
+        _lastNanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressed=" + _compressed +
+                ", raw=" + _raw +
+                ", ratio=" + String.format("%.3f", getOverallRatio()) +
+                ", compressNs=" + _compressNanos +
+                ", decompressed=" + _decompressed +
+                ", decompressNs=" + _decompressNanos + "}";
+    }
+
+    private long _compressed;
+    private long _raw;
+    private long _bytesIn;
+    private long _bytesOut;
+    private long _compressNanos;
+    private long _decompressed;
+    private long _decompressNanos;
+    private double _lastRatio = 1.0;
+    private long _lastNanos;
+}
@@ -0,0 +1,138 @@
+package com.solacesystems.ha.conn;
+
+import com.solacesystems.solclientj.core.handle.MessageHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds payloads sent by SolaceConnector.SendFragments. Each fragment's attachment is copied
+ * by the Solace API directly into its place in a single reassembly buffer, so there is no copy
+ * beyond the one the API has to make anyway.
+ *
+ * Fragments arrive in order on a guaranteed flow. A fragment that does not continue the current
+ * stream (e.g. the sender failed over mid-stream) discards the partial payload; a new stream
+ * always begins at index 0. A stream declaring more than the maximum payload length is refused
+ * before anything is allocated for it.
+ */
+public class FragmentAssembler {
+    private static final Logger logger = LoggerFactory.getLogger(FragmentAssembler.class);
+
+    /** Largest payload accepted unless the constructor is given another limit */
+    public final static int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+    public FragmentAssembler(BufferPool pool) {
+        this(pool, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param pool -- provides the reassembly buffer
+     * @param maxLength -- largest payload, in bytes, a stream may declare
+     */
+    public FragmentAssembler(BufferPool pool, int maxLength) {
+        if (maxLength <= 0)
+            throw new IllegalArgumentException("Maximum payload length must be positive");
+        _pool = pool;
+        _maxLength = maxLength;
+        _buffer = pool.Acquire(8192);
+    }
+
+    /**
+     * Copies a fragment into the reassembly buffer.
+     *
+     * @param msg -- a message whose application message type is FragmentHeader.MSG_TYPE
+     * @return the complete payload, flipped for reading, once the last fragment arrived; null otherwise.
+     *         The buffer stays owned by the assembler and is only valid until the next call.
+     */
+    public ByteBuffer Accept(MessageHandle msg) {
+        _hdrbuf.clear();
+        msg.getUserData(_hdrbuf);
+        _hdrbuf.flip();
+        if (!_header.Read(_hdrbuf)) {
+            logger.warn("Discarding fragment with an invalid header");
+            Reset();
+            return null;
+        }
+        if (_header.getIndex() == 0) {
+            if (_inProgress)
+                logger.warn("Discarding incomplete stream {} at fragment {} of {}", _streamId, _next, _count);
+            if (_header.getTotalLength() > _maxLength) {
+                logger.warn("Discarding stream {} longer than the {} byte limit", _header, _maxLength);
+                Reset();
+                return null;
+            }
+            _streamId = _header.getStreamId();
+            _count    = _header.getCount();
+            _total    = _header.getTotalLength();
+            _rawLength= _header.getRawLength();
+            _codec    = _header.getCodec();
+            _next     = 0;
+            _buffer.clear();
+            _buffer = _pool.Grow(_buffer, _total);
+            _inProgress = true;
+        }
+        else if (!_inProgress || _header.getStreamId() != _streamId || _header.getIndex() != _next) {
+            logger.warn("Discarding out-of-sequence fragment {}", _header);
+            Reset();
+            return null;
+        }
+
+        int size = msg.getBinaryAttachmentSize();
+        if (_buffer.position() + size > _total) {
+            logger.warn("Fragment {} overflows the declared stream length", _header);
+            Reset();
+            return null;
+        }
+        _buffer.limit(_total);
+        msg.getBinaryAttachment(_buffer);
+        _next++;
+
+        if (_next < _count) return null;
+        _inProgress = false;
+        if (_buffer.position() != _total) {
+            logger.warn("Stream {} completed with {} of {} bytes", _streamId, _buffer.position(), _total);
+            return null;
+        }
+        _buffer.flip();
+        return _buffer;
+    }
+
+    /**
+     * Drops any partially reassembled payload.
+     */
+    public void Reset() {
+        _inProgress = false;
+        _buffer.clear();
+    }
+
+    public boolean isInProgress() { return _inProgress; }
+
+    /**
+     * @return the CompressionCodec id of the last completed payload
+     */
+    public byte getCodec() { return _codec; }
+
+    /**
+     * @return the decompressed size of the last completed payload
+     */
+    public int getRawLength() { return _rawLength; }
+
+    public void destroy() {
+        _pool.Release(_buffer);
+    }
+
+    private final BufferPool _pool;
+    private final int _maxLength;
+    private final FragmentHeader _header = new FragmentHeader();
+    private final ByteBuffer _hdrbuf = ByteBuffer.allocateDirect(FragmentHeader.USER_DATA_MAX);
+    private ByteBuffer _buffer;
+
+    private boolean _inProgress;
+    private long _streamId;
+    private int _count;
+    private int _next;
+    private int _total;
+    private int _rawLength;
+    private byte _codec;
+}
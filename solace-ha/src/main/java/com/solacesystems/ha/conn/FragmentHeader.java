@@ -0,0 +1,96 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Header carried in the Solace User Data field of every fragment of a payload too large to send
+ * as one message, or compressed. Keeping it out of the binary attachment means the payload chunks
+ * can be copied straight from the serialized buffer on send, and straight into the reassembly
+ * buffer on receive. A compressed payload that fits in one message is sent as a single fragment.
+ *
+ * Layout (big-endian, 29 bytes; User Data allows at most 36):
+ *
+ *     int  magic        -- MAGIC, guards against foreign User Data
+ *     long streamId     -- identifies the payload all fragments belong to
+ *     int  index        -- 0-based position of this fragment in the stream
+ *     int  count        -- total number of fragments in the stream
+ *     int  totalLength  -- size in bytes of the reassembled payload
+ *     int  rawLength    -- size in bytes of the payload once decompressed
+ *     byte codec        -- CompressionCodec id, or CompressionCodec.NONE
+ *
+ * Instances are mutable so that a single one can be reused for every fragment.
+ */
+public class FragmentHeader {
+    /** Application message type marking a message as a fragment */
+    public final static String MSG_TYPE = "HA_FRAGMENT";
+    public final static int MAGIC = 0x48414631; // "HAF1"
+    public final static int SIZE  = 29;
+    public final static int USER_DATA_MAX = 36;
+
+    public long getStreamId()    { return _streamId; }
+    public int  getIndex()       { return _index; }
+    public int  getCount()       { return _count; }
+    public int  getTotalLength() { return _totalLength; }
+    public int  getRawLength()   { return _rawLength; }
+    public byte getCodec()       { return _codec; }
+
+    public FragmentHeader Set(long streamId, int index, int count, int totalLength) {
+        return Set(streamId, index, count, totalLength, totalLength, CompressionCodec.NONE);
+    }
+
+    public FragmentHeader Set(long streamId, int index, int count, int totalLength, int rawLength, byte codec) {
+        _streamId    = streamId;
+        _index       = index;
+        _count       = count;
+        _totalLength = totalLength;
+        _rawLength   = rawLength;
+        _codec       = codec;
+        return this;
+    }
+
+    /**
+     * Writes the header at the buffer's position.
+     */
+    public void Write(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putLong(_streamId);
+        buffer.putInt(_index);
+        buffer.putInt(_count);
+        buffer.putInt(_totalLength);
+        buffer.putInt(_rawLength);
+        buffer.put(_codec);
+    }
+
+    /**
+     * Reads a header from the buffer's position.
+     *
+     * @return false if the buffer does not hold a fragment header
+     */
+    public boolean Read(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE || buffer.getInt() != MAGIC) return false;
+        _streamId    = buffer.getLong();
+        _index       = buffer.getInt();
+        _count       = buffer.getInt();
+        _totalLength = buffer.getInt();
+        _rawLength   = buffer.getInt();
+        _codec       = buffer.get();
+        return _index >= 0 && _index < _count && _totalLength >= 0 && _rawLength >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentHeader{stream=" + _streamId +
+                ", index=" + _index +
+                ", count=" + _count +
+                ", total=" + _totalLength +
+                ", raw=" + _rawLength +
+                ", codec=" + _codec + "}";
+    }
+
+    private long _streamId;
+    private int  _index;
+    private int  _count;
+    private int  _totalLength;
+    private int  _rawLength;
+    private byte _codec;
+}
@@ -0,0 +1,143 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FIFO handing input messages from the messaging thread to an application thread in batches.
+ * The messaging thread copies each payload into a pooled slot with Offer; the application
+ * thread waits in Take until at least one message is queued, then takes everything queued up
+ * to the batch limit, so a single message on an idle system is handed over at once while a
+ * burst is handed over in batches as large as the backlog allows.
+ *
+ * The queue never blocks the messaging thread: when it is full it doubles. Offer returns the
+ * number of messages queued so the caller can pause its flow well before that happens.
+ *
+ * Thread-safe for one producer and one consumer.
+ */
+public class InputBatchQueue {
+
+    public InputBatchQueue(int maxBatch, int slotCapacity, BufferPool pool) {
+        if (maxBatch <= 0)
+            throw new IllegalArgumentException("Input batch size must be positive");
+        _pool = pool;
+        _maxBatch = maxBatch;
+        _slotCapacity = slotCapacity;
+        _payloads = new ByteBuffer[2 * maxBatch];
+        _ids = new long[2 * maxBatch];
+        for (int i = 0; i < _payloads.length; i++)
+            _payloads[i] = pool.Acquire(slotCapacity);
+        _batch = new ByteBuffer[maxBatch];
+        _batchIds = new long[maxBatch];
+    }
+
+    /**
+     * Copies a message into the tail slot.
+     *
+     * @param payload -- attachment from position to limit; position is not moved
+     * @param msgId -- id to acknowledge the message with once it has been processed
+     * @return number of messages queued, including any batch the consumer has not released
+     */
+    public synchronized int Offer(ByteBuffer payload, long msgId) {
+        if (_size == _payloads.length) grow();
+        int slot = (_head + _size) % _payloads.length;
+        ByteBuffer buffer = _payloads[slot];
+        buffer.clear();
+        buffer = _pool.Grow(buffer, payload.remaining());
+        int pos = payload.position();
+        buffer.put(payload);
+        payload.position(pos);
+        buffer.flip();
+        _payloads[slot] = buffer;
+        _ids[slot] = msgId;
+        _size++;
+        notify();
+        return _size;
+    }
+
+    /**
+     * Waits for at least one message and takes up to the batch limit of the queued messages;
+     * they stay owned by the consumer until Release.
+     *
+     * @param timeoutMillis -- longest time to wait for a message
+     * @return number of messages in the batch, 0 if none arrived in time
+     */
+    public synchronized int Take(long timeoutMillis) throws InterruptedException {
+        if (_taken > 0)
+            throw new IllegalStateException("Previous input batch was not released");
+        if (_size == 0) wait(timeoutMillis);
+        _taken = Math.min(_size, _maxBatch);
+        for (int i = 0; i < _taken; i++) {
+            int slot = (_head + i) % _payloads.length;
+            _batch[i] = _payloads[slot];
+            _batchIds[i] = _ids[slot];
+        }
+        return _taken;
+    }
+
+    /** @return the i'th payload of the current batch, flipped for reading */
+    public ByteBuffer getPayload(int i) { return _batch[i]; }
+
+    public long getMessageId(int i) { return _batchIds[i]; }
+
+    /**
+     * Returns the slots of the current batch for reuse.
+     */
+    public synchronized void Release() {
+        for (int i = 0; i < _taken; i++)
+            _batch[i] = null;
+        _head = (_head + _taken) % _payloads.length;
+        _size -= _taken;
+        _taken = 0;
+    }
+
+    /**
+     * Discards the queued messages not yet taken, e.g. when this member stops being active
+     * and another member will be redelivered them.
+     *
+     * @return number of messages discarded
+     */
+    public synchronized int Clear() {
+        int dropped = _size - _taken;
+        _size = _taken;
+        return dropped;
+    }
+
+    public synchronized int size() { return _size; }
+
+    public int getMaxBatch() { return _maxBatch; }
+
+    public synchronized void destroy() {
+        for (ByteBuffer buffer : _payloads)
+            _pool.Release(buffer);
+    }
+
+    /**
+     * Unrolls the ring into one twice as large; the batch the consumer holds keeps its
+     * buffers since only the references move.
+     */
+    private void grow() {
+        int capacity = _payloads.length;
+        ByteBuffer[] payloads = new ByteBuffer[2 * capacity];
+        long[] ids = new long[2 * capacity];
+        for (int i = 0; i < capacity; i++) {
+            payloads[i] = _payloads[(_head + i) % capacity];
+            ids[i] = _ids[(_head + i) % capacity];
+        }
+        for (int i = capacity; i < payloads.length; i++)
+            payloads[i] = _pool.Acquire(_slotCapacity);
+        _payloads = payloads;
+        _ids = ids;
+        _head = 0;
+    }
+
+    private final BufferPool _pool;
+    private final int _maxBatch;
+    private final int _slotCapacity;
+    private ByteBuffer[] _payloads;
+    private long[] _ids;
+    private int _head;
+    private int _size;
+    private int _taken;
+    private final ByteBuffer[] _batch;
+    private final long[] _batchIds;
+}
@@ -0,0 +1,168 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * In-tree implementation of the LZ4 block format: a greedy, single-pass LZ77 compressor using a
+ * hash table of recent 4-byte sequences, and a decoder that needs no state at all. It trades some
+ * ratio for speed, which suits state snapshots that repeat the same JSON keys and values.
+ *
+ * Works directly on (typically direct) ByteBuffers with absolute accessors and allocates nothing
+ * after construction. Output is a raw LZ4 block without the LZ4 frame header.
+ */
+public class LZ4BlockCodec implements CompressionCodec {
+    public final static byte ID = 1;
+
+    public byte getId() { return ID; }
+
+    public String getName() { return "lz4-block"; }
+
+    public int MaxCompressedLength(int rawLength) {
+        return rawLength + (rawLength / 255) + 16;
+    }
+
+    public int Compress(ByteBuffer src, ByteBuffer dst) {
+        final int srcStart = src.position();
+        final int srcEnd   = src.limit();
+        final int dstStart = dst.position();
+        int d = dstStart;
+
+        int anchor = srcStart;
+        if (srcEnd - srcStart >= MIN_LENGTH) {
+            Arrays.fill(_table, -1);
+            final int matchLimit = srcEnd - LAST_LITERALS;
+            final int mfLimit    = srcEnd - MF_LIMIT;
+            int ip = srcStart;
+            while (ip < mfLimit) {
+                int seq = src.getInt(ip);
+                int h = hash(seq);
+                int ref = _table[h];
+                _table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || src.getInt(ref) != seq) {
+                    ip++;
+                    continue;
+                }
+                // extend the match backwards into pending literals, then forwards
+                while (ip > anchor && ref > srcStart && src.get(ip - 1) == src.get(ref - 1)) {
+                    ip--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && src.get(ip + matchLen) == src.get(ref + matchLen))
+                    matchLen++;
+
+                d = writeSequence(src, anchor, ip - anchor, dst, d, ip - ref, matchLen);
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+        d = writeLastLiterals(src, anchor, srcEnd - anchor, dst, d);
+
+        src.position(srcEnd);
+        dst.position(d);
+        return d - dstStart;
+    }
+
+    public int Decompress(ByteBuffer src, ByteBuffer dst) {
+        int s = src.position();
+        final int srcEnd   = src.limit();
+        final int dstStart = dst.position();
+        final int dstEnd   = dst.limit();
+        int d = dstStart;
+
+        while (s < srcEnd) {
+            int token = src.get(s++) & 0xFF;
+
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+                int b;
+                do {
+                    if (s >= srcEnd) throw corrupt();
+                    b = src.get(s++) & 0xFF;
+                    litLen += b;
+                } while (b == 255);
+            }
+            if (s + litLen > srcEnd || d + litLen > dstEnd) throw corrupt();
+            for (int i = 0; i < litLen; i++)
+                dst.put(d++, src.get(s++));
+            if (s == srcEnd) break; // the last sequence carries literals only
+
+            if (s + 2 > srcEnd) throw corrupt();
+            int offset = (src.get(s) & 0xFF) | ((src.get(s + 1) & 0xFF) << 8);
+            s += 2;
+            if (offset == 0 || d - offset < dstStart) throw corrupt();
+
+            int matchLen = token & 0x0F;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    if (s >= srcEnd) throw corrupt();
+                    b = src.get(s++) & 0xFF;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (d + matchLen > dstEnd) throw corrupt();
+            // byte-wise so overlapping matches (offset < length) replicate correctly
+            for (int i = 0; i < matchLen; i++, d++)
+                dst.put(d, dst.get(d - offset));
+        }
+
+        src.position(srcEnd);
+        dst.position(d);
+        return d - dstStart;
+    }
+
+    private static int writeSequence(ByteBuffer src, int litStart, int litLen,
+                                     ByteBuffer dst, int d, int offset, int matchLen) {
+        int tokenPos = d++;
+        int matchCode = matchLen - MIN_MATCH;
+        int token = (Math.min(litLen, 15) << 4) | Math.min(matchCode, 15);
+        if (litLen >= 15)
+            d = writeLength(dst, d, litLen - 15);
+        for (int i = 0; i < litLen; i++)
+            dst.put(d++, src.get(litStart + i));
+        dst.put(d++, (byte) offset);
+        dst.put(d++, (byte) (offset >>> 8));
+        if (matchCode >= 15)
+            d = writeLength(dst, d, matchCode - 15);
+        dst.put(tokenPos, (byte) token);
+        return d;
+    }
+
+    private static int writeLastLiterals(ByteBuffer src, int litStart, int litLen, ByteBuffer dst, int d) {
+        dst.put(d++, (byte) (Math.min(litLen, 15) << 4));
+        if (litLen >= 15)
+            d = writeLength(dst, d, litLen - 15);
+        for (int i = 0; i < litLen; i++)
+            dst.put(d++, src.get(litStart + i));
+        return d;
+    }
+
+    private static int writeLength(ByteBuffer dst, int d, int len) {
+        while (len >= 255) {
+            dst.put(d++, (byte) 255);
+            len -= 255;
+        }
+        dst.put(d++, (byte) len);
+        return d;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static IllegalStateException corrupt() {
+        return new IllegalStateException("Corrupt LZ4 block");
+    }
+
+    private final static int MIN_MATCH     = 4;
+    private final static int LAST_LITERALS = 5;
+    private final static int MF_LIMIT      = 12;
+    private final static int MIN_LENGTH    = MF_LIMIT + 1;
+    private final static int MAX_DISTANCE  = 65535;
+    private final static int HASH_LOG      = 12;
+
+    private final int[] _table = new int[1 << HASH_LOG];
+}
@@ -0,0 +1,69 @@
+package com.solacesystems.ha.conn;
+
+/**
+ * Fixed-size histogram of latencies in nanoseconds with power-of-two buckets: bucket i holds
+ * values in [2^(i-1), 2^i). Recording is a couple of arithmetic operations and never allocates,
+ * so it can sit on the messaging thread; percentiles are reported as the upper bound of the
+ * bucket they fall in, which is accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+
+    public synchronized void Record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        _buckets[64 - Long.numberOfLeadingZeros(nanos)]++;
+        _count++;
+        _sum += nanos;
+        if (nanos < _min) _min = nanos;
+        if (nanos > _max) _max = nanos;
+    }
+
+    public synchronized void Reset() {
+        for (int i = 0; i < _buckets.length; i++)
+            _buckets[i] = 0;
+        _count = 0;
+        _sum = 0;
+        _min = Long.MAX_VALUE;
+        _max = 0;
+    }
+
+    public synchronized long getCount() { return _count; }
+
+    public synchronized long getMin() { return (_count == 0) ? 0 : _min; }
+
+    public synchronized long getMax() { return _max; }
+
+    public synchronized long getMean() { return (_count == 0) ? 0 : _sum / _count; }
+
+    /**
+     * @param percentile -- between 0 and 100
+     * @return upper bound in nanoseconds of the bucket holding the given percentile
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (_count == 0) return 0;
+        long rank = (long) Math.ceil(_count * percentile / 100.0);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < _buckets.length; i++) {
+            seen += _buckets[i];
+            if (seen >= rank)
+                return Math.min(_max, (i == 0) ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1));
+        }
+        return _max;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Latency{count=" + _count +
+                ", min=" + getMin() +
+                ", mean=" + getMean() +
+                ", p50=" + getPercentile(50) +
+                ", p99=" + getPercentile(99) +
+                ", max=" + _max + " ns}";
+    }
+
+    private final long[] _buckets = new long[65];
+    private long _count;
+    private long _sum;
+    private long _min = Long.MAX_VALUE;
+    private long _max;
+}
@@ -0,0 +1,14 @@
+package com.solacesystems.ha.conn;
+
+/**
+ * Notified by the SolaceConnector when the broker acknowledges or rejects a guaranteed message
+ * sent with publisher acknowledgements enabled.
+ */
+public interface PublishAckListener {
+    /**
+     * @param token -- the token the message was sent with; negative for untracked messages
+     * @param accepted -- true if the broker spooled the message, false if it rejected it
+     * @param latencyNanos -- time from the send call to the acknowledgement
+     */
+    void OnPublishAck(long token, boolean accepted, long latencyNanos);
+}
@@ -0,0 +1,119 @@
+package com.solacesystems.ha.conn;
+
+/**
+ * Correlates guaranteed publishes with the broker's acknowledgements, in the manner of the
+ * solclientj CorrelationArrayUtil sample: correlation keys index a pre-allocated array twice
+ * the size of the publish window (plus two), and are recycled in order, so a key is never
+ * reused while the message that carried it can still be in flight.
+ *
+ * Messages are acknowledged in the order they were sent, and with windowed ack events one
+ * acknowledgement covers every earlier message too; acknowledging a key therefore completes
+ * all outstanding keys up to and including it. Each completion records its latency and is
+ * reported to the listener together with the token the message was sent with.
+ */
+public class PublishAckTracker {
+
+    public PublishAckTracker(int windowSize) {
+        if (windowSize < 1 || windowSize > MAX_WINDOW)
+            throw new IllegalArgumentException("Publish window must be between 1 and " + MAX_WINDOW);
+        _windowSize = windowSize;
+        int size = (windowSize * 2) + 2;
+        _tokens   = new long[size];
+        _sentAt   = new long[size];
+        _inFlight = new boolean[size];
+    }
+
+    public int getWindowSize() { return _windowSize; }
+
+    /**
+     * @return the correlation key the next committed message will use
+     */
+    public long NextKey() {
+        return nextKey(_lastKey);
+    }
+
+    /**
+     * Records that the message carrying NextKey() was accepted by the session.
+     *
+     * @param token -- caller-defined identifier reported back on acknowledgement
+     */
+    public synchronized void Commit(long token) {
+        int key = (int) nextKey(_lastKey);
+        _tokens[key]   = token;
+        _sentAt[key]   = System.nanoTime();
+        _inFlight[key] = true;
+        if (_outstanding == 0) _oldestKey = key;
+        _outstanding++;
+        _lastKey = key;
+    }
+
+    /**
+     * Completes every outstanding message up to and including the given key.
+     *
+     * @param key -- correlation key from the ACKNOWLEDGEMENT or REJECTED_MSG_ERROR event
+     * @param accepted -- false if the event was a rejection; applies to that key only
+     * @return number of messages completed
+     */
+    public int Acknowledge(long key, boolean accepted, PublishAckListener listener) {
+        if (key <= 0 || key >= _tokens.length) return 0;
+        int completed = 0;
+        boolean done = false;
+        while (!done) {
+            long token, latency;
+            boolean ok;
+            synchronized (this) {
+                if (!_inFlight[(int) key] || _outstanding == 0) break;
+                int k = _oldestKey;
+                _inFlight[k] = false;
+                _outstanding--;
+                _oldestKey = (int) nextKey(k);
+                token   = _tokens[k];
+                latency = System.nanoTime() - _sentAt[k];
+                done = (k == key);
+                ok = accepted || !done;
+                if (ok) _accepted++; else _rejected++;
+            }
+            _latency.Record(latency);
+            completed++;
+            if (listener != null)
+                listener.OnPublishAck(token, ok, latency);
+        }
+        return completed;
+    }
+
+    /**
+     * Forgets all outstanding messages, e.g. when the session goes down for good.
+     */
+    public synchronized void Reset() {
+        for (int i = 0; i < _inFlight.length; i++)
+            _inFlight[i] = false;
+        _outstanding = 0;
+    }
+
+    public synchronized int getInFlight() { return _outstanding; }
+
+    public synchronized long getAcceptedCount() { return _accepted; }
+
+    public synchronized long getRejectedCount() { return _rejected; }
+
+    public LatencyHistogram getLatency() { return _latency; }
+
+    private long nextKey(long key) {
+        return (key >= _tokens.length - 1) ? 1 : key + 1;
+    }
+
+    /** Largest publish window the Solace API accepts */
+    public final static int MAX_WINDOW = 255;
+
+    private final int _windowSize;
+    private final long[] _tokens;
+    private final long[] _sentAt;
+    private final boolean[] _inFlight;
+    private final LatencyHistogram _latency = new LatencyHistogram();
+
+    private int _lastKey;
+    private int _oldestKey = 1;
+    private int _outstanding;
+    private long _accepted;
+    private long _rejected;
+}
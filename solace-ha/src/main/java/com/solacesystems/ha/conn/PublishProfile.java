@@ -0,0 +1,83 @@
+package com.solacesystems.ha.conn;
+
+import com.solacesystems.solclientj.core.SolEnum.MessageDeliveryMode;
+import com.solacesystems.solclientj.core.handle.MessageHandle;
+
+/**
+ * How messages to a destination are published: delivery mode, dead message queue
+ * eligibility, time-to-live and priority. SolaceConnector builds one message handle per
+ * profile up front, so choosing a profile costs nothing per message.
+ *
+ * Only guaranteed (persistent or non-persistent) messages are spooled, acknowledged by the
+ * broker and tracked for publish acks; DIRECT messages are best effort.
+ */
+public class PublishProfile {
+
+    /** Leaves the priority unset, so the broker treats messages as priority 4 */
+    public final static int NO_PRIORITY = -1;
+
+    /** Spooled by the broker; every send uses this unless its topic has a profile of its own */
+    public final static PublishProfile PERSISTENT =
+            new PublishProfile(MessageDeliveryMode.PERSISTENT, false, 0, NO_PRIORITY);
+
+    /** Best effort, for updates that a newer one soon supersedes */
+    public final static PublishProfile DIRECT =
+            new PublishProfile(MessageDeliveryMode.DIRECT, false, 0, NO_PRIORITY);
+
+    /**
+     * @param deliveryMode -- SolEnum.MessageDeliveryMode.DIRECT, PERSISTENT or NONPERSISTENT
+     * @param dmqEligible -- guaranteed messages that expire go to the dead message queue
+     * @param timeToLive -- milliseconds a guaranteed message may stay spooled, 0 for no limit
+     * @param priority -- 0 (lowest) to 255, or NO_PRIORITY
+     */
+    public PublishProfile(int deliveryMode, boolean dmqEligible, long timeToLive, int priority) {
+        if (deliveryMode != MessageDeliveryMode.DIRECT
+                && deliveryMode != MessageDeliveryMode.PERSISTENT
+                && deliveryMode != MessageDeliveryMode.NONPERSISTENT)
+            throw new IllegalArgumentException("Unknown delivery mode " + deliveryMode);
+        if (timeToLive < 0)
+            throw new IllegalArgumentException("Time-to-live must not be negative");
+        if (priority != NO_PRIORITY && (priority < 0 || priority > 255))
+            throw new IllegalArgumentException("Priority must be 0 to 255");
+        _deliveryMode = deliveryMode;
+        _dmqEligible = dmqEligible;
+        _timeToLive = timeToLive;
+        _priority = priority;
+    }
+
+    public int getDeliveryMode() { return _deliveryMode; }
+
+    public boolean isDMQEligible() { return _dmqEligible; }
+
+    public long getTimeToLive() { return _timeToLive; }
+
+    public int getPriority() { return _priority; }
+
+    public boolean isGuaranteed() { return _deliveryMode != MessageDeliveryMode.DIRECT; }
+
+    @Override
+    public String toString() {
+        return MessageDeliveryMode.toString(_deliveryMode)
+                + (_dmqEligible ? " dmq" : "")
+                + (_timeToLive > 0 ? " ttl=" + _timeToLive : "")
+                + (_priority != NO_PRIORITY ? " priority=" + _priority : "");
+    }
+
+    /**
+     * Sets the fields that stay the same for every message sent with this profile.
+     */
+    void Apply(MessageHandle msg) {
+        msg.setMessageDeliveryMode(_deliveryMode);
+        if (isGuaranteed()) {
+            msg.setDMQEligible(_dmqEligible);
+            msg.setTimeToLive(_timeToLive);
+        }
+        if (_priority != NO_PRIORITY)
+            msg.setPriority(_priority);
+    }
+
+    private final int _deliveryMode;
+    private final boolean _dmqEligible;
+    private final long _timeToLive;
+    private final int _priority;
+}
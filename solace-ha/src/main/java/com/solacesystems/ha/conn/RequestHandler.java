@@ -0,0 +1,27 @@
+package com.solacesystems.ha.conn;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serves direct request/reply queries on a topic subscription; see SolaceConnector.ServeRequests.
+ * Requests arrive on the Solace context thread, so OnRequest must not block.
+ */
+public interface RequestHandler {
+    /**
+     * @return topic subscription expression the requests are published to
+     */
+    String getSubscriptionTopic();
+
+    /**
+     * @return buffer to copy each request's payload into before calling OnRequest
+     */
+    ByteBuffer getBuffer();
+
+    /**
+     * @param topic -- the full topic the request was published on
+     * @param request -- the request payload, flipped for reading
+     * @return reply payload between its position and limit, which are left unchanged so the
+     *         same buffer can be returned again; or null to send no reply
+     */
+    ByteBuffer OnRequest(String topic, ByteBuffer request);
+}
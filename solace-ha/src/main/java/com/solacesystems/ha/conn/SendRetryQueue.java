@@ -0,0 +1,130 @@
+package com.solacesystems.ha.conn;
+
+import com.solacesystems.solclientj.core.resource.Destination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded FIFO of messages the session could not accept (session.send() returned WOULD_BLOCK).
+ * All slots and their buffers are allocated up front; parking a message copies its payload
+ * and User Data header into the next free slot, so the caller's buffers can be reused at once.
+ * Payload buffers come from the BufferPool and grow if a message is larger than the slot.
+ *
+ * Not thread-safe; the SolaceConnector guards it with its send lock.
+ */
+public class SendRetryQueue {
+
+    public static class Slot {
+        public Destination getDestination() { return _dest; }
+        public String getMsgType()          { return _msgType; }
+        public boolean hasPayload()         { return _hasPayload; }
+        public boolean hasHeader()          { return _hasHeader; }
+        public long getToken()              { return _token; }
+        public PublishProfile getProfile()  { return _profile; }
+
+        /** @return the parked payload, flipped for reading */
+        public ByteBuffer getPayload()      { return _payload; }
+
+        /** @return the parked User Data header, flipped for reading */
+        public ByteBuffer getHeader()       { return _header; }
+
+        private Destination _dest;
+        private String _msgType;
+        private boolean _hasPayload;
+        private boolean _hasHeader;
+        private long _token;
+        private PublishProfile _profile;
+        private ByteBuffer _payload;
+        private final ByteBuffer _header = ByteBuffer.allocateDirect(FragmentHeader.USER_DATA_MAX);
+    }
+
+    public SendRetryQueue(int depth, int slotCapacity, BufferPool pool) {
+        if (depth <= 0)
+            throw new IllegalArgumentException("Retry queue depth must be positive");
+        _pool = pool;
+        _slots = new Slot[depth];
+        for (int i = 0; i < depth; i++) {
+            _slots[i] = new Slot();
+            _slots[i]._payload = pool.Acquire(slotCapacity);
+        }
+    }
+
+    /**
+     * Copies a message into the tail slot.
+     *
+     * @param payload -- attachment from position to limit, or null for none; position is not moved
+     * @param header -- User Data from position to limit, or null for none; position is not moved
+     * @param token -- publish-ack token to send the message with
+     * @param profile -- how to publish the message when it is re-sent
+     * @return false if the queue is full
+     */
+    public boolean Offer(Destination dest, String msgType, ByteBuffer header, ByteBuffer payload, long token,
+                         PublishProfile profile) {
+        if (_size == _slots.length) return false;
+        Slot slot = _slots[(_head + _size) % _slots.length];
+        slot._dest = dest;
+        slot._msgType = msgType;
+        slot._token = token;
+        slot._profile = profile;
+
+        slot._hasHeader = (header != null);
+        slot._header.clear();
+        if (header != null) {
+            int pos = header.position();
+            slot._header.put(header);
+            header.position(pos);
+        }
+        slot._header.flip();
+
+        slot._hasPayload = (payload != null);
+        slot._payload.clear();
+        if (payload != null) {
+            slot._payload = _pool.Grow(slot._payload, payload.remaining());
+            int pos = payload.position();
+            slot._payload.put(payload);
+            payload.position(pos);
+        }
+        slot._payload.flip();
+
+        _size++;
+        return true;
+    }
+
+    /**
+     * @return the oldest parked message, or null if empty. Its buffers are rewound on each call.
+     */
+    public Slot Peek() {
+        if (_size == 0) return null;
+        Slot slot = _slots[_head];
+        slot._header.rewind();
+        slot._payload.rewind();
+        return slot;
+    }
+
+    /**
+     * Discards the oldest parked message.
+     */
+    public void Pop() {
+        if (_size == 0) return;
+        _slots[_head]._dest = null;
+        _slots[_head]._profile = null;
+        _head = (_head + 1) % _slots.length;
+        _size--;
+    }
+
+    public boolean isEmpty() { return _size == 0; }
+
+    public int size() { return _size; }
+
+    public int capacity() { return _slots.length; }
+
+    public void destroy() {
+        for (Slot slot : _slots)
+            _pool.Release(slot._payload);
+    }
+
+    private final BufferPool _pool;
+    private final Slot[] _slots;
+    private int _head;
+    private int _size;
+}
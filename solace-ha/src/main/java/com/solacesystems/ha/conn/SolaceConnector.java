@@ -6,6 +6,7 @@ import com.solacesystems.solclientj.core.handle.*;
 import com.solacesystems.solclientj.core.resource.*;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.logging.Level;
 
 import com.solacesystems.solclientj.core.SolEnum.ProvisionFlags;
@@ -26,21 +27,23 @@ public class SolaceConnector {
         rc = Solclient.createContextForHandle(_ctx, new String[0]);
         if (rc != ReturnCode.OK)
             throw new IllegalStateException("Failed to allocate Solace context handle");
-        rc = Solclient.createMessageForHandle(_outmsg);
-        if (rc != ReturnCode.OK)
-            throw new IllegalStateException("Failed to allocate Solace message handle");
-        _outmsg.setMessageDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        _default = new Publisher(PublishProfile.PERSISTENT);
     }
 
     public void destroy() {
-        Helper.destroyHandle(_outmsg);
+        if (_retryQueue != null)
+            _retryQueue.destroy();
+        for (Publisher publisher : _publishers)
+            Helper.destroyHandle(publisher._msg);
+        Helper.destroyHandle(_default._msg);
+        Helper.destroyHandle(_replymsg);
         Helper.destroyHandle(_sess);
         Helper.destroyHandle(_ctx);
     }
 
-    public void ConnectSession(String host, String vpn, String user, String pass, String clientName, SessionEventCallback eventHandler) throws SolclientException {
+    public void ConnectSession(String host, String vpn, String user, String pass, String clientName, final SessionEventCallback eventHandler) throws SolclientException {
 
-        final String[] props = new String[22];
+        final String[] props = new String[28];
         int i = 0;
         props[i++] = PROPERTIES.HOST;               props[i++] = host;
         props[i++] = PROPERTIES.VPN_NAME;           props[i++] = vpn;
@@ -52,13 +55,40 @@ public class SolaceConnector {
         props[i++] = PROPERTIES.RECONNECT_RETRIES;  props[i++] = "300";
         props[i++] = PROPERTIES.KEEP_ALIVE_LIMIT;   props[i++] = "3";
         props[i++] = PROPERTIES.KEEP_ALIVE_INT_MS;  props[i++] = "1000";
-        props[i++] = PROPERTIES.TOPIC_DISPATCH;     props[i] = BooleanValue.ENABLE;
+        props[i++] = PROPERTIES.TOPIC_DISPATCH;     props[i++] = BooleanValue.ENABLE;
+        props[i++] = PROPERTIES.SEND_BLOCKING;      props[i++] = (_retryQueue != null) ? BooleanValue.DISABLE : BooleanValue.ENABLE;
+        if (_acks != null) {
+            props[i++] = PROPERTIES.PUB_WINDOW_SIZE; props[i++] = Integer.toString(_acks.getWindowSize());
+            props[i++] = PROPERTIES.ACK_EVENT_MODE;  props[i]   = AckEventMode.WINDOWED;
+        }
 
         int rc = _ctx.createSessionForHandle(_sess, props, new MessageCallback() {
             public void onMessage(Handle handle) {
                 logger.error("MAYDAY! SHOULD NOT BE ANY DIRECT MESSAGES!");
             }
-        }, eventHandler);
+        }, new SessionEventCallback() {
+            public void onEvent(SessionHandle sessionHandle) {
+                SessionEvent event = sessionHandle.getSessionEvent();
+                switch (event.getSessionEventCode()) {
+                    case SessionEventCode.CAN_SEND:
+                        drainRetryQueue();
+                        break;
+                    case SessionEventCode.ACKNOWLEDGEMENT:
+                        if (_acks != null)
+                            _acks.Acknowledge(event.getCorrelationKey(), true, _ackListener);
+                        break;
+                    case SessionEventCode.REJECTED_MSG_ERROR:
+                        if (_acks != null)
+                            _acks.Acknowledge(event.getCorrelationKey(), false, _ackListener);
+                        break;
+                    case SessionEventCode.DOWN_ERROR:
+                        if (_acks != null)
+                            _acks.Reset();
+                        break;
+                }
+                eventHandler.onEvent(sessionHandle);
+            }
+        });
         if (rc != ReturnCode.OK)
             throw new IllegalStateException("Failed to create Solace session handle");
 
@@ -74,7 +104,22 @@ public class SolaceConnector {
         _sess.disconnect();
     }
 
+    /**
+     * Provisions a durable queue unless one with the name already exists, in which case
+     * it is left as it is.
+     *
+     * @param quotaMB -- spool quota; 0 makes a last value queue, which keeps only the newest
+     *                   message that has not been delivered
+     */
     public boolean ProvisionQueue(String name, int quotaMB) {
+        return ProvisionQueue(name, quotaMB, 0);
+    }
+
+    /**
+     * @param maxMsgSize -- largest guaranteed message the queue accepts, in bytes; 0 keeps
+     *                      the broker's default
+     */
+    public boolean ProvisionQueue(String name, int quotaMB, int maxMsgSize) {
         int queueProps = 0;
 
         String[] queueProperties = new String[10];
@@ -85,6 +130,11 @@ public class SolaceConnector {
         queueProperties[queueProps++] = Endpoint.PROPERTIES.QUOTA_MB;
         queueProperties[queueProps++] = Integer.toString(quotaMB);
 
+        if (maxMsgSize > 0) {
+            queueProperties[queueProps++] = Endpoint.PROPERTIES.MAXMSG_SIZE;
+            queueProperties[queueProps++] = Integer.toString(maxMsgSize);
+        }
+
         // The Queue with name
         Queue queue = Solclient.Allocator.newQueue(name, queueProperties);
 
@@ -108,13 +158,39 @@ public class SolaceConnector {
     }
 
     public FlowHandle BindQueue(String name, MessageCallback msgHandler, FlowEventCallback flowEventHandler) {
+        return BindQueue(name, msgHandler, flowEventHandler, false);
+    }
+
+    /**
+     * @param clientAck -- if true, messages stay on the queue until FlowHandle.ack is called
+     *                     for them; otherwise they are acknowledged when the callback returns
+     */
+    public FlowHandle BindQueue(String name, MessageCallback msgHandler, FlowEventCallback flowEventHandler, boolean clientAck) {
+        return BindQueue(name, msgHandler, flowEventHandler, clientAck, false);
+    }
+
+    /**
+     * @param cutThrough -- if true, and the broker supports it, binds a cut-through flow
+     *                      (as in the CutThroughFlowToQueue sample): messages are forwarded
+     *                      to the flow as they arrive, at direct-message latency, while the
+     *                      broker still spools them for redelivery. Brokers without the
+     *                      capability get a store-and-forward flow.
+     */
+    public FlowHandle BindQueue(String name, MessageCallback msgHandler, FlowEventCallback flowEventHandler,
+                                boolean clientAck, boolean cutThrough) {
+        if (cutThrough && !_sess.isCapable(CapabilityName.CAPABILITY_CUT_THROUGH)) {
+            logger.warn("Broker does not support cut-through flows; binding {} store-and-forward", name);
+            cutThrough = false;
+        }
         int i = 0;
-        String[] props = new String[8];
+        String[] props = new String[10];
 
         props[i++] = FlowHandle.PROPERTIES.BIND_BLOCKING;  props[i++] = BooleanValue.ENABLE;
-        props[i++] = FlowHandle.PROPERTIES.ACKMODE;        props[i++] = AckMode.AUTO;
+        props[i++] = FlowHandle.PROPERTIES.ACKMODE;        props[i++] = clientAck ? AckMode.CLIENT : AckMode.AUTO;
         props[i++] = FlowHandle.PROPERTIES.ACTIVE_FLOW_IND;props[i++] = BooleanValue.ENABLE;
-        props[i++] = FlowHandle.PROPERTIES.START_STATE;    props[i]   = BooleanValue.DISABLE;
+        props[i++] = FlowHandle.PROPERTIES.START_STATE;    props[i++] = BooleanValue.DISABLE;
+        props[i++] = FlowHandle.PROPERTIES.FORWARDING_MODE;
+        props[i]   = cutThrough ? ForwardingMode.CUT_THROUGH : ForwardingMode.STORE_AND_FORWARD;
 
         Queue queue = Solclient.Allocator.newQueue(name, null);
 
@@ -151,6 +227,42 @@ public class SolaceConnector {
         );
     }
 
+    /**
+     * Subscribes the handler to its request topic and replies to every request it answers,
+     * as the RRDirectReplier sample does. Neither this nor StopServingRequests waits for the
+     * broker to confirm, so both may be called from session and flow callbacks.
+     *
+     * @return the subscription, to pass to StopServingRequests
+     */
+    public MessageDispatchTargetHandle ServeRequests(final RequestHandler handler) {
+        MessageDispatchTargetHandle target = Solclient.Allocator.newMessageDispatchTargetHandle(
+                Solclient.Allocator.newTopic( handler.getSubscriptionTopic() ),
+                new MessageCallback() {
+                    public void onMessage(Handle handle) {
+                        MessageSupport ms = (MessageSupport) handle;
+                        MessageHandle request = ms.getRxMessage();
+                        ByteBuffer container = handler.getBuffer();
+                        container.clear();
+                        request.getBinaryAttachment(container);
+                        container.flip();
+                        ByteBuffer reply = handler.OnRequest(request.getDestination().getName(), container);
+                        if (reply != null)
+                            sendReply(request, reply);
+                    }
+                },
+                false);
+        int rc = _sess.subscribe(target, 0, 0);
+        if (rc != ReturnCode.OK && rc != ReturnCode.IN_PROGRESS)
+            throw new IllegalStateException("Failed to subscribe to requests on " + handler.getSubscriptionTopic());
+        return target;
+    }
+
+    public void StopServingRequests(MessageDispatchTargetHandle target) {
+        int rc = _sess.unsubscribe(target, 0, 0);
+        if (rc != ReturnCode.OK && rc != ReturnCode.IN_PROGRESS)
+            logLastError("When unsubscribing from requests, session.unsubscribe() returned " + ReturnCode.toString(rc));
+    }
+
     public void SubscribeQueueToTopic(String name, String subscription) {
         Queue queue = Solclient.Allocator.newQueue(name, null);
         Topic topic = Solclient.Allocator.newTopic(subscription);
@@ -160,22 +272,317 @@ public class SolaceConnector {
             throw new IllegalStateException("Failed to bind Solace queue to topic");
     }
 
+    /**
+     * Publishes everything sent to topics starting with the prefix with the profile; the
+     * longest matching prefix wins. Topics without a profile, and sentinels, are sent
+     * PublishProfile.PERSISTENT. Each distinct profile gets one message handle, shared by
+     * all the prefixes set to it.
+     *
+     * @param topicPrefix -- e.g. "md/" or a full topic name
+     */
+    public void SetPublishProfile(String topicPrefix, PublishProfile profile) {
+        synchronized (_sendLock) {
+            Route[] routes = _routes;
+            int i = 0;
+            while (i < routes.length && !routes[i]._prefix.equals(topicPrefix))
+                i++;
+            routes = Arrays.copyOf(routes, Math.max(routes.length, i + 1));
+            routes[i] = new Route(topicPrefix, profile);
+            _routes = routes;
+            publisherFor(profile);
+            releaseUnusedPublishers();
+        }
+        logger.info("Publishing {}* as {}", topicPrefix, profile);
+    }
+
     public void SendBuffer(String sendTopic, ByteBuffer payload) {
+        SendBuffer(sendTopic, payload, UNTRACKED);
+    }
+
+    /**
+     * @param token -- reported to the PublishAckListener when the broker acknowledges the message;
+     *                 never reported for topics published DIRECT
+     */
+    public void SendBuffer(String sendTopic, ByteBuffer payload, long token) {
         payload.flip();
-        _outmsg.setBinaryAttachment(payload);
-        _outmsg.deleteApplicationMessageType();
-        _outmsg.setDestination(Solclient.Allocator.newTopic(sendTopic));
-        int rc = _sess.send(_outmsg);
-        if (rc != ReturnCode.OK)
-            logLastError( "When sending output, session.send() returned " + ReturnCode.toString(rc));
+        dispatch(profileFor(sendTopic), Solclient.Allocator.newTopic(sendTopic), null, null, payload, token, "output");
+    }
+
+    /**
+     * Sends a payload as a sequence of messages of at most maxFragmentSize bytes each. Every
+     * fragment carries a FragmentHeader in its User Data and FragmentHeader.MSG_TYPE as its
+     * application message type; receivers rebuild the payload with a FragmentAssembler.
+     * Fragments are attached directly from the payload buffer without intermediate copies.
+     *
+     * @param sendTopic -- topic to publish all fragments to
+     * @param payload -- serialized payload, written but not yet flipped (as for SendBuffer)
+     * @param streamId -- identifier shared by all fragments of this payload
+     * @param maxFragmentSize -- largest attachment to put in a single message
+     */
+    public void SendFragments(String sendTopic, ByteBuffer payload, long streamId, int maxFragmentSize) {
+        SendFragments(sendTopic, payload, streamId, maxFragmentSize, CompressionCodec.NONE, payload.position(), UNTRACKED);
+    }
+
+    /**
+     * As above, for a payload compressed by the codec with the given id. Only the last
+     * fragment carries the publish-ack token: acknowledgements arrive in send order, so
+     * its acknowledgement means the whole payload has been spooled.
+     *
+     * @param codec -- CompressionCodec id, or CompressionCodec.NONE
+     * @param rawLength -- size of the payload before compression
+     * @param token -- reported to the PublishAckListener once the last fragment is acknowledged
+     */
+    public void SendFragments(String sendTopic, ByteBuffer payload, long streamId, int maxFragmentSize,
+                              byte codec, int rawLength, long token) {
+        payload.flip();
+        final int total = payload.remaining();
+        final int count = Math.max(1, (total + maxFragmentSize - 1) / maxFragmentSize);
+        final int end = payload.limit();
+        final Destination dest = Solclient.Allocator.newTopic(sendTopic);
+        final PublishProfile profile = profileFor(sendTopic);
+
+        for (int i = 0; i < count; i++) {
+            _hdrbuf.clear();
+            _header.Set(streamId, i, count, total, rawLength, codec).Write(_hdrbuf);
+            _hdrbuf.flip();
+
+            int fragmentEnd = Math.min(end, payload.position() + maxFragmentSize);
+            payload.limit(fragmentEnd);
+            boolean sent = dispatch(profile, dest, FragmentHeader.MSG_TYPE, _hdrbuf, payload,
+                    (i == count - 1) ? token : UNTRACKED, "fragment");
+            payload.limit(end);
+            payload.position(fragmentEnd);
+            if (!sent) break;
+        }
     }
 
     public void SendSentinel(String queueName, String msgType) {
-        _outmsg.setDestination(Solclient.Allocator.newQueue(queueName));
-        _outmsg.setApplicationMessageType(msgType);
-        int rc = _sess.send(_outmsg);
-        if (rc != ReturnCode.OK)
-            logLastError("When sending Sentinel, session.send() returned " + ReturnCode.toString(rc));
+        dispatch(PublishProfile.PERSISTENT, Solclient.Allocator.newQueue(queueName), msgType, null, null, UNTRACKED, "Sentinel");
+    }
+
+    /**
+     * Enables asynchronous publisher acknowledgements; must be called before ConnectSession.
+     * Up to windowSize guaranteed messages may be in flight before the broker acknowledges
+     * them. Every message sent carries a correlation key from a PublishAckTracker, and each
+     * acknowledgement (or rejection) is passed to the listener with the token the message
+     * was sent with; messages sent without a token report UNTRACKED.
+     *
+     * @param windowSize -- publish window, 1 to PublishAckTracker.MAX_WINDOW
+     * @param listener -- told when messages are acknowledged or rejected; may be null
+     */
+    public void EnablePublishAcks(int windowSize, PublishAckListener listener) {
+        if (_sess.isBound())
+            throw new IllegalStateException("Publish acknowledgements must be enabled before connecting");
+        _acks = new PublishAckTracker(windowSize);
+        _ackListener = listener;
+    }
+
+    /**
+     * @return the acknowledgement tracker, or null if EnablePublishAcks was not called
+     */
+    public PublishAckTracker getPublishAckTracker() {
+        return _acks;
+    }
+
+    /**
+     * Switches the session to non-blocking sends; must be called before ConnectSession.
+     * Messages the session cannot take (WOULD_BLOCK) are parked in a bounded queue of
+     * pre-allocated slots and re-sent in order when the session raises CAN_SEND. Any
+     * send made while messages are parked joins the back of the queue to keep ordering.
+     *
+     * @param retryQueueDepth -- maximum number of parked messages; beyond it sends fail
+     * @param slotCapacity -- initial payload capacity of each slot, grown on demand
+     * @param listener -- told when parking starts and when the queue has drained; may be null
+     */
+    public void EnableNonBlockingSend(int retryQueueDepth, int slotCapacity, BackpressureListener listener) {
+        if (_sess.isBound())
+            throw new IllegalStateException("Non-blocking send must be enabled before connecting");
+        _retryQueue = new SendRetryQueue(retryQueueDepth, slotCapacity, BufferPool.getDefault());
+        _backpressureListener = listener;
+    }
+
+    public boolean isBackpressured() {
+        synchronized (_sendLock) {
+            return _retryQueue != null && !_retryQueue.isEmpty();
+        }
+    }
+
+    /**
+     * @return the profile of the longest prefix of the topic with one, else PERSISTENT
+     */
+    private PublishProfile profileFor(String topic) {
+        Route[] routes = _routes;
+        PublishProfile match = _default._profile;
+        int longest = -1;
+        for (Route route : routes) {
+            if (route._prefix.length() > longest && topic.startsWith(route._prefix)) {
+                match = route._profile;
+                longest = route._prefix.length();
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Finds the message handle built for the profile, creating it if there is none; that only
+     * happens for a parked message whose profile was replaced since. Called under _sendLock.
+     */
+    private Publisher publisherFor(PublishProfile profile) {
+        if (profile == _default._profile)
+            return _default;
+        for (Publisher publisher : _publishers)
+            if (publisher._profile == profile)
+                return publisher;
+        Publisher publisher = new Publisher(profile);
+        _publishers = Arrays.copyOf(_publishers, _publishers.length + 1);
+        _publishers[_publishers.length - 1] = publisher;
+        return publisher;
+    }
+
+    /**
+     * Destroys the message handles of profiles no prefix is set to any more. Called under _sendLock.
+     */
+    private void releaseUnusedPublishers() {
+        Publisher[] kept = new Publisher[_publishers.length];
+        int count = 0;
+        for (Publisher publisher : _publishers) {
+            if (isRouted(publisher._profile))
+                kept[count++] = publisher;
+            else
+                Helper.destroyHandle(publisher._msg);
+        }
+        _publishers = Arrays.copyOf(kept, count);
+    }
+
+    private boolean isRouted(PublishProfile profile) {
+        for (Route route : _routes)
+            if (route._profile == profile)
+                return true;
+        return false;
+    }
+
+    /**
+     * Loads the profile's output message and sends it, parking it in the retry queue
+     * if the session would block (or earlier messages are still parked).
+     *
+     * @param header -- User Data to set, or null for none; position is not moved
+     * @param payload -- attachment to set, or null for none; position is not moved
+     * @return true if the message was sent or parked
+     */
+    private boolean dispatch(PublishProfile profile, Destination dest, String msgType, ByteBuffer header,
+                             ByteBuffer payload, long token, String what) {
+        synchronized (_sendLock) {
+            if (_retryQueue != null && !_retryQueue.isEmpty())
+                return park(profile, dest, msgType, header, payload, token, what);
+
+            int rc = sendMessage(profile, dest, msgType, header, payload, token);
+            if (rc == ReturnCode.OK)
+                return true;
+            if (rc == ReturnCode.WOULD_BLOCK && _retryQueue != null)
+                return park(profile, dest, msgType, header, payload, token, what);
+            logLastError("When sending " + what + ", session.send() returned " + ReturnCode.toString(rc));
+            return false;
+        }
+    }
+
+    private int sendMessage(PublishProfile profile, Destination dest, String msgType, ByteBuffer header,
+                            ByteBuffer payload, long token) {
+        Publisher publisher = publisherFor(profile);
+        MessageHandle msg = publisher._msg;
+        msg.setDestination(dest);
+        if (msgType != null)
+            msg.setApplicationMessageType(msgType);
+        else
+            msg.deleteApplicationMessageType();
+
+        if (header != null) {
+            int pos = header.position();
+            msg.setUserData(header);
+            header.position(pos);
+            publisher._hasUserData = true;
+        }
+        else if (publisher._hasUserData) {
+            msg.setUserData((ByteBuffer) null);
+            publisher._hasUserData = false;
+        }
+
+        if (payload != null) {
+            int pos = payload.position();
+            msg.setBinaryAttachment(payload);
+            payload.position(pos);
+        }
+        else {
+            msg.setBinaryAttachment((ByteBuffer) null);
+        }
+
+        // Direct messages are never acknowledged, so they take no place in the publish window.
+        // The key is only committed to the tracker once the session has taken the message
+        boolean tracked = _acks != null && publisher._profile.isGuaranteed();
+        if (tracked)
+            msg.setCorrelationKey(_acks.NextKey());
+        int rc = _sess.send(msg);
+        if (rc == ReturnCode.OK && tracked)
+            _acks.Commit(token);
+        return rc;
+    }
+
+    private boolean park(PublishProfile profile, Destination dest, String msgType, ByteBuffer header,
+                         ByteBuffer payload, long token, String what) {
+        boolean wasEmpty = _retryQueue.isEmpty();
+        if (!_retryQueue.Offer(dest, msgType, header, payload, token, profile)) {
+            logger.error("Retry queue full ({} messages); dropping {}", _retryQueue.capacity(), what);
+            return false;
+        }
+        if (wasEmpty) {
+            logger.warn("Session would block; parking outputs until it can send again");
+            if (_backpressureListener != null)
+                _backpressureListener.OnBackpressureChange(true);
+        }
+        return true;
+    }
+
+    /**
+     * Re-sends parked messages in order; invoked on the CAN_SEND session event.
+     */
+    private void drainRetryQueue() {
+        synchronized (_sendLock) {
+            if (_retryQueue == null || _retryQueue.isEmpty()) return;
+            SendRetryQueue.Slot slot;
+            while ((slot = _retryQueue.Peek()) != null) {
+                int rc = sendMessage(slot.getProfile(), slot.getDestination(), slot.getMsgType(),
+                        slot.hasHeader() ? slot.getHeader() : null,
+                        slot.hasPayload() ? slot.getPayload() : null,
+                        slot.getToken());
+                if (rc == ReturnCode.WOULD_BLOCK)
+                    return;
+                if (rc != ReturnCode.OK)
+                    logLastError("When re-sending parked message, session.send() returned " + ReturnCode.toString(rc));
+                _retryQueue.Pop();
+            }
+            logger.info("Retry queue drained");
+            if (_backpressureListener != null)
+                _backpressureListener.OnBackpressureChange(false);
+        }
+    }
+
+    /**
+     * Replies are Direct and best effort: if the session would block the reply is dropped,
+     * and the requester is expected to time out and ask again.
+     */
+    private void sendReply(MessageHandle request, ByteBuffer reply) {
+        synchronized (_replymsg) {
+            if (!_replymsg.isBound() && Solclient.createMessageForHandle(_replymsg) != ReturnCode.OK) {
+                logLastError("Failed to allocate the reply message handle");
+                return;
+            }
+            int position = reply.position();
+            _replymsg.setDestination(request.getReplyTo());
+            _replymsg.setBinaryAttachment(reply);
+            reply.position(position);
+            int rc = _sess.sendReply(request, _replymsg);
+            if (rc != ReturnCode.OK)
+                logger.warn("Reply not sent, session.sendReply() returned {}", ReturnCode.toString(rc));
+        }
     }
 
     private void logLastError(String message) {
@@ -190,5 +597,51 @@ public class SolaceConnector {
 
     private final ContextHandle _ctx = Solclient.Allocator.newContextHandle();
     private final SessionHandle _sess = Solclient.Allocator.newSessionHandle();
-    private final MessageHandle _outmsg = Solclient.Allocator.newMessageHandle();
+    // Profile set for each topic prefix, and one output message for each distinct profile
+    private volatile Route[] _routes = new Route[0];
+    private final Publisher _default;
+    private Publisher[] _publishers = new Publisher[0];
+    // Direct message reused for every query reply; allocated on first use
+    private final MessageHandle _replymsg = Solclient.Allocator.newMessageHandle();
+
+    private final FragmentHeader _header = new FragmentHeader();
+    private final ByteBuffer _hdrbuf = ByteBuffer.allocateDirect(FragmentHeader.USER_DATA_MAX);
+
+    // Sends come from the context thread and application threads alike
+    private final Object _sendLock = new Object();
+    private SendRetryQueue _retryQueue;
+    private BackpressureListener _backpressureListener;
+
+    /** Token for messages whose acknowledgement nobody is waiting on */
+    public final static long UNTRACKED = -1;
+
+    private PublishAckTracker _acks;
+    private PublishAckListener _ackListener;
+
+    private static class Route {
+        Route(String prefix, PublishProfile profile) {
+            _prefix = prefix;
+            _profile = profile;
+        }
+
+        private final String _prefix;
+        private final PublishProfile _profile;
+    }
+
+    /**
+     * A message handle with a profile's fixed fields already set.
+     */
+    private static class Publisher {
+        Publisher(PublishProfile profile) {
+            if (Solclient.createMessageForHandle(_msg) != ReturnCode.OK)
+                throw new IllegalStateException("Failed to allocate Solace message handle");
+            profile.Apply(_msg);
+            _profile = profile;
+        }
+
+        private final PublishProfile _profile;
+        private final MessageHandle _msg = Solclient.Allocator.newMessageHandle();
+        // Set while the handle carries User Data from the last message
+        private boolean _hasUserData;
+    }
 }
@@ -1,6 +1,19 @@
 package com.solacesystems.ha.model;
 
+import com.solacesystems.ha.conn.BackpressureListener;
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.CompressionCodec;
+import com.solacesystems.ha.conn.CompressionStage;
+import com.solacesystems.ha.conn.CompressionStats;
+import com.solacesystems.ha.conn.FragmentAssembler;
+import com.solacesystems.ha.conn.FragmentHeader;
 import com.solacesystems.ha.conn.Helper;
+import com.solacesystems.ha.conn.InputBatchQueue;
+import com.solacesystems.ha.conn.LatencyHistogram;
+import com.solacesystems.ha.conn.PublishAckListener;
+import com.solacesystems.ha.conn.PublishAckTracker;
+import com.solacesystems.ha.conn.PublishProfile;
+import com.solacesystems.ha.conn.RequestHandler;
 import com.solacesystems.ha.conn.SolaceConnector;
 import com.solacesystems.solclientj.core.SolEnum;
 import com.solacesystems.solclientj.core.SolclientException;
@@ -43,12 +56,135 @@ public class ClusterConnector<InputType, OutputType> {
 
     public ClusterConnector(ClusterEventListener<InputType, OutputType> listener,
                             ClusteredAppSerializer<InputType, OutputType> serializer) {
+        this(listener, serializer, new SolaceConnector());
+    }
+
+    ClusterConnector(ClusterEventListener<InputType, OutputType> listener,
+                     ClusteredAppSerializer<InputType, OutputType> serializer,
+                     SolaceConnector connector) {
         _model = new ClusterModel<InputType, OutputType>(listener);
         _serializer = serializer;
-        _connector = new SolaceConnector();
+        _connector = connector;
         initState();
     }
 
+    /**
+     * Publishes without blocking the calling thread; must be called before Connect. Outputs
+     * the session cannot take yet are parked in a bounded retry queue, and the input flow is
+     * paused until the queue drains so that no state or output is dropped under burst load.
+     *
+     * @param retryQueueDepth -- maximum number of parked messages
+     */
+    public void EnableNonBlockingSend(int retryQueueDepth) {
+        _connector.EnableNonBlockingSend(retryQueueDepth, 8192,
+                new BackpressureListener() {
+                    public void OnBackpressureChange(boolean engaged) {
+                        onBackpressureChange(engaged);
+                    }
+                });
+    }
+
+    /**
+     * Tracks broker acknowledgements of published outputs asynchronously; must be called
+     * before Connect. Up to windowSize messages may be awaiting acknowledgement at once, and
+     * the listener's OnOutputDurable is called with the sequence SendOutput returned once
+     * the broker has spooled that output. Rejected outputs are logged as errors.
+     *
+     * @param windowSize -- publish window, 1 to 255
+     */
+    public void EnablePublishAcks(int windowSize) {
+        _connector.EnablePublishAcks(windowSize,
+                new PublishAckListener() {
+                    public void OnPublishAck(long token, boolean accepted, long latencyNanos) {
+                        onPublishAck(token, accepted, latencyNanos);
+                    }
+                });
+    }
+
+    /**
+     * Publishes outputs sent to topics starting with the prefix with the profile rather
+     * than as persistent messages, e.g. PublishProfile.DIRECT for feeds where a lost update
+     * is soon superseded. The active topic feeds the peers' state queues, so it must keep a
+     * guaranteed profile.
+     */
+    public void SetPublishProfile(String topicPrefix, PublishProfile profile) {
+        _connector.SetPublishProfile(topicPrefix, profile);
+    }
+
+    /**
+     * Binds the state queue with a cut-through flow, so backups receive each state output as
+     * the active member publishes it rather than after the broker has spooled it; must be
+     * called before BindQueues. The outputs are still spooled, so recovery from the queue
+     * and the sentinel handshake are unchanged. Falls back to a store-and-forward flow if
+     * the broker does not support cut-through.
+     */
+    public void EnableCutThroughState() {
+        _cutThroughState = true;
+    }
+
+    /**
+     * Provisions the state queue as a last value queue (quota 0), so the broker discards
+     * each state output once a newer one arrives and a member that takes over or restarts
+     * reads the last state alone rather than every output since it stopped following; must
+     * be called before BindQueues. An existing state queue is not changed.
+     *
+     * This member keeps the newest state it received unacknowledged until a newer one or the
+     * sentinel arrives, so the queue still holds it if the member restarts; the broker only
+     * discards undelivered messages. The sentinel that ends recovery goes through the same
+     * queue, which is why the state flow is started before the input flow that triggers it.
+     *
+     * As the queue keeps only the last message, each output is sent as one message of up to
+     * MAX_STATE_MESSAGE_SIZE bytes; SetMaxFragmentSize, called afterwards, lowers that limit.
+     * An output that still does not fit is not sent: it is counted (GetRefusedOutputCount)
+     * and this member stops taking input, leaving the input behind it unacknowledged, so a
+     * member that takes over applies it again on top of the last state that was replicated.
+     */
+    public void EnableLastValueState() {
+        _lastValueState = true;
+        _maxFragmentSize = MAX_STATE_MESSAGE_SIZE;
+    }
+
+    /**
+     * Serves direct request/reply queries with the handler, but only while this instance
+     * is a BACKUP: the subscription is added when it becomes BACKUP and removed when it
+     * leaves that state, so queries never add load to the active member. Handlers should
+     * answer from the state the backup follows through OnStateMessage.
+     *
+     * @param handler -- query handler; its subscription should normally be a shared
+     *                   subscription so that each query is answered by a single backup
+     */
+    public void EnableQueryService(RequestHandler handler) {
+        _queryHandler = handler;
+        updateQueryService(_model.GetHAStatus());
+    }
+
+    /**
+     * Hands inputs to the listener in batches on a dedicated thread; must be called before
+     * BindQueues. Every input waiting on the flow, up to maxBatch, goes to the batch form of
+     * UpdateApplicationState in one call, so the application can publish one output state per
+     * batch. An idle flow still hands each input over as soon as it arrives. Inputs are only
+     * acknowledged to the broker once their batch has been processed, and the flow is paused
+     * while more than two batches are waiting.
+     *
+     * @param maxBatch -- most inputs per call; keep it well below the queue's
+     *                    max-delivered-unacked-msgs-per-flow
+     */
+    public void EnableInputBatching(int maxBatch) {
+        _batchQueue = new InputBatchQueue(maxBatch, 8192, _pool);
+        _batching = true;
+        _batchThread = new Thread(this::processInputBatches, "cluster-input");
+        _batchThread.setDaemon(true);
+        _batchThread.start();
+    }
+
+    /**
+     * @return ack latency of all guaranteed messages sent, or null if publish acks are not enabled
+     */
+    public LatencyHistogram GetPublishAckLatency() {
+        PublishAckTracker acks = _connector.getPublishAckTracker();
+        return (acks == null) ? null : acks.getLatency();
+    }
+
     public void Connect(String host, String vpn, String user, String pass, String clientName) throws SolclientException {
         _connector.ConnectSession(host, vpn, user, pass, clientName,
                 new SessionEventCallback() {
@@ -67,7 +203,10 @@ public class ClusterConnector<InputType, OutputType> {
             if (_model.GetHAStatus() == HAState.CONNECTED) {
                 _connector.ProvisionQueue(inputQueue, 150);
                 _connector.SubscribeQueueToTopic(inputQueue, inputSubscription);
-                _connector.ProvisionQueue(stateQueue, 150);
+                if (_lastValueState)
+                    _connector.ProvisionQueue(stateQueue, 0, MAX_STATE_MESSAGE_SIZE);
+                else
+                    _connector.ProvisionQueue(stateQueue, 150);
                 _connector.SubscribeQueueToTopic(stateQueue, outputSubscription);
                 // The order of instantiation matters; inputflow is used for active-flow-ind
                 // which triggers recovering state via browser, then starts appflow
@@ -85,7 +224,8 @@ public class ClusterConnector<InputType, OutputType> {
                                 FlowEvent event = flowHandle.getFlowEvent();
                                 onStateFlowEvent(event);
                             }
-                        });
+                        },
+                        _lastValueState, _cutThroughState);
                 _inputflow = _connector.BindQueue(inputQueue,
                         new MessageCallback() {
                             public void onMessage(Handle handle) {
@@ -98,7 +238,8 @@ public class ClusterConnector<InputType, OutputType> {
                                 FlowEvent event = flowHandle.getFlowEvent();
                                 onInputFlowEvent(event);
                             }
-                        });
+                        },
+                        true);
                 _stateflow.start();
                 connected = true;
             }
@@ -109,26 +250,89 @@ public class ClusterConnector<InputType, OutputType> {
 
     public ClusterModel<InputType,OutputType> getModel() { return _model; }
 
+    public BufferPool getBufferPool() { return _pool; }
+
+    /**
+     * Serialized outputs larger than this are sent as a sequence of fragments
+     * and reassembled by the peers reading them from their state queue. With a last
+     * value state queue nothing is fragmented, and this is the largest output sent.
+     *
+     * @param maxFragmentSize -- largest binary attachment to send in a single message,
+     *                           up to MAX_STATE_MESSAGE_SIZE
+     */
+    public void SetMaxFragmentSize(int maxFragmentSize) {
+        if (maxFragmentSize <= 0 || maxFragmentSize > MAX_STATE_MESSAGE_SIZE)
+            throw new IllegalArgumentException("Fragment size must be 1 to " + MAX_STATE_MESSAGE_SIZE);
+        _maxFragmentSize = maxFragmentSize;
+    }
+
+    public int GetMaxFragmentSize() { return _maxFragmentSize; }
+
+    /**
+     * @return outputs not sent because they did not fit in one last value state message
+     */
+    public long GetRefusedOutputCount() { return _refusedOutputs; }
+
+    /**
+     * @return true once this member has stopped taking input because an input failed or its
+     *         output could not be replicated; it stays so until the member is restarted
+     */
+    public boolean IsInputHalted() { return _inputHalted; }
+
+    /**
+     * Compresses serialized state outputs of at least `threshold` bytes with the given
+     * codec before sending them. Compression is off by default; peers decompress any
+     * registered codec whatever their own setting.
+     *
+     * @param codec -- e.g. LZ4BlockCodec, or null to disable compression
+     * @param threshold -- outputs smaller than this are sent uncompressed
+     */
+    public void SetCompression(CompressionCodec codec, int threshold) {
+        _compression.SetCodec(codec, threshold);
+    }
+
+    public CompressionStats GetCompressionStats() { return _compression.getStats(); }
+
     public void SendSerializedOutput(String topic, ByteBuffer output) {
         // Just in case you need to send multiple outputs
         _connector.SendBuffer(topic, output);
     }
 
-    public void SendOutput(String activeTopic, OutputType output) {
+    /**
+     * Outputs are numbered and sent in the order of the calls, and peers keep the last one
+     * they receive, so an application sending from more than one thread must apply inputs
+     * and send under one lock; otherwise an older output can follow a newer one.
+     *
+     * @return sequence number of the output sent, reported again by OnOutputDurable
+     *         when publish acks are enabled; -1 if nothing was sent, including when the
+     *         output was refused (see EnableLastValueState)
+     */
+    public long SendOutput(String activeTopic, OutputType output) {
         // If we're the active member of the cluster, we are responsible
         // for all output but don't publish until we have new input data
         if (_model.GetHAStatus() == HAState.ACTIVE)
         {
             if(_model.GetSequenceStatus() == SeqState.UP_TO_DATE)
-                _connector.SendBuffer(activeTopic, _serializer.SerializeOutput(output));
+                return sendOutputState(activeTopic, _serializer.SerializeOutput(output));
         }
         else {
             logger.debug("NOT sending output because HA status is not active.");
         }
-
+        return SolaceConnector.UNTRACKED;
     }
 
     public void Destroy() {
+        if (_batchThread != null) {
+            _batching = false;
+            _batchThread.interrupt();
+            try {
+                _batchThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            _batchThread = null;
+        }
         if (_inputflow != null) {
             _inputflow.stop();
             Helper.destroyHandle(_inputflow);
@@ -139,6 +343,13 @@ public class ClusterConnector<InputType, OutputType> {
         }
         _connector.DisconnectSession();
         _connector.destroy();
+        _pool.Release(_inbuff);
+        _pool.Release(_outbuff);
+        _inbuff = _outbuff = null;
+        _assembler.destroy();
+        _compression.destroy();
+        if (_batchQueue != null)
+            _batchQueue.destroy();
     }
 
     ////////////////////////////////////////////////////////////////////////
@@ -154,11 +365,11 @@ public class ClusterConnector<InputType, OutputType> {
     private void onSessionEvent(SessionEvent event) {
         switch(event.getSessionEventCode()) {
             case SolEnum.SessionEventCode.UP_NOTICE:
-                _model.SetHAStatus(HAState.CONNECTED);
+                setHAStatus(HAState.CONNECTED);
                 _model.SetSequenceStatus(SeqState.CONNECTED);
                 break;
             case SolEnum.SessionEventCode.DOWN_ERROR:
-                _model.SetHAStatus(HAState.DISCONNECTED);
+                setHAStatus(HAState.DISCONNECTED);
                 _model.SetSequenceStatus(SeqState.INIT);
                 break;
             case SolEnum.SessionEventCode.RECONNECTING_NOTICE:
@@ -199,10 +410,22 @@ public class ClusterConnector<InputType, OutputType> {
      * @param msg -- new solace message from the input queue
      */
     private void onInputMessage(MessageHandle msg) {
+        // Left unacknowledged for the member that takes over
+        if (_inputHalted) return;
         _inbuff.clear();
+        _inbuff = _pool.Grow(_inbuff, msg.getBinaryAttachmentSize());
         msg.getBinaryAttachment(_inbuff);
         _inbuff.flip();
-        processInputMsg(_serializer.DeserializeInput(_inbuff));
+        if (_batchQueue == null) {
+            processInputMsg(_serializer.DeserializeInput(_inbuff), msg.getGuaranteedMessageId());
+            return;
+        }
+        int waiting = _batchQueue.Offer(_inbuff, msg.getGuaranteedMessageId());
+        if (!_batchPaused && waiting >= 2 * _batchQueue.getMaxBatch()) {
+            logger.warn("{} inputs waiting for the application; pausing the input flow", waiting);
+            _batchPaused = true;
+            _inputflow.stop();
+        }
     }
 
     private void onStateFlowEvent(FlowEvent event) {
@@ -211,7 +434,7 @@ public class ClusterConnector<InputType, OutputType> {
             case SolEnum.FlowEventCode.UP_NOTICE:
                 break;
             case SolEnum.FlowEventCode.ACTIVE:
-                _model.SetHAStatus(HAState.BACKUP);
+                setHAStatus(HAState.BACKUP);
                 _model.SetSequenceStatus(SeqState.FOLLOWING);
                 break;
             case SolEnum.FlowEventCode.INACTIVE:
@@ -229,22 +452,168 @@ public class ClusterConnector<InputType, OutputType> {
      */
     private void onStateMessage(MessageHandle msg) {
         String msgtype = msg.getApplicationMessageType();
-        if (msgtype != null && msgtype.equals(SENTINEL))
+        if (_lastValueState)
+            holdLastState(_stateflow, msg.getGuaranteedMessageId(), msgtype != null && msgtype.equals(SENTINEL));
+        if (msgtype != null && msgtype.equals(SENTINEL)) {
+            _assembler.Reset();
             processStateMessage(null, true);
+        }
+        else if (msgtype != null && msgtype.equals(FragmentHeader.MSG_TYPE)) {
+            ByteBuffer state = _assembler.Accept(msg);
+            if (state != null && _assembler.getCodec() != CompressionCodec.NONE)
+                state = _compression.Decompress(state, _assembler.getCodec(), _assembler.getRawLength());
+            if (state != null)
+                processStateMessage(_serializer.DeserializeOutput(state), false);
+        }
         else {
             _outbuff.clear();
+            _outbuff = _pool.Grow(_outbuff, msg.getBinaryAttachmentSize());
             msg.getBinaryAttachment(_outbuff);
             _outbuff.flip();
             processStateMessage(_serializer.DeserializeOutput(_outbuff), false);
         }
     }
 
+    /**
+     * With a last value state queue, acknowledges the state message the new one supersedes
+     * and keeps the new one, so the queue still holds the last state if this member restarts.
+     * Once the sentinel arrives this member has recovered, and nothing is held.
+     */
+    void holdLastState(FlowHandle stateflow, long msgId, boolean isSentinel) {
+        if (_heldStateId != NO_MESSAGE)
+            stateflow.ack(_heldStateId);
+        if (isSentinel) {
+            stateflow.ack(msgId);
+            _heldStateId = NO_MESSAGE;
+        }
+        else {
+            _heldStateId = msgId;
+        }
+    }
+
+    /**
+     * Numbers the output and sends it; synchronized so sequence order is send order.
+     */
+    private synchronized long sendOutputState(String topic, ByteBuffer output) {
+        // Only taken once sent, so a refused output leaves no gap in the sequence
+        long sequence = _outputSequence + 1;
+        if (!sendState(topic, output, sequence))
+            return SolaceConnector.UNTRACKED;
+        _outputSequence = sequence;
+        return sequence;
+    }
+
+    long getOutputSequence() { return _outputSequence; }
+
+    /**
+     * Sends serialized state output, compressing it if configured and splitting
+     * it into fragments if it does not fit in a single message.
+     *
+     * @param topic -- the output topic peers' state queues are subscribed to
+     * @param output -- serialized output, written but not yet flipped
+     * @param sequence -- output sequence passed to the connector as the publish-ack token
+     * @return false if the output was refused rather than sent
+     */
+    private boolean sendState(String topic, ByteBuffer output, long sequence) {
+        int rawLength = output.position();
+        ByteBuffer payload = _compression.Compress(output);
+        byte codec = (payload != output) ? _compression.getCodec().getId() : CompressionCodec.NONE;
+        if (_lastValueState && payload.position() > _maxFragmentSize) {
+            // A last value queue keeps only the newest message, so fragments could never be reassembled
+            _refusedOutputs++;
+            haltInput("Output of " + payload.position() + " bytes does not fit in one "
+                    + _maxFragmentSize + "-byte last value state message");
+            return false;
+        }
+        if (codec != CompressionCodec.NONE || payload.position() > _maxFragmentSize)
+            _connector.SendFragments(topic, payload, ++_streamId, _maxFragmentSize, codec, rawLength, sequence);
+        else
+            _connector.SendBuffer(topic, payload, sequence);
+        return true;
+    }
+
+    /**
+     * Stops taking input once an input failed or its state could not be replicated. That
+     * input, and any after it, stay unacknowledged, so when this member is restarted the
+     * member taking over applies them in order on top of the last replicated state.
+     */
+    private void haltInput(String reason) {
+        if (_inputHalted) return;
+        _inputHalted = true;
+        logger.error("{}; no longer taking input, restart this member to hand over to another", reason);
+        if (_inputflow != null)
+            _inputflow.stop();
+    }
+
+    /**
+     * Invoked on the Solace context thread for every acknowledged or rejected message.
+     *
+     * @param token -- output sequence, or SolaceConnector.UNTRACKED for sentinels and fragments
+     */
+    private void onPublishAck(long token, boolean accepted, long latencyNanos) {
+        if (!accepted) {
+            logger.error("Broker rejected {}", (token < 0) ? "a message" : "output " + token);
+            return;
+        }
+        if (token >= 0)
+            _model.SetLastDurableOutput(token);
+    }
+
+    /**
+     * Invoked by the SolaceConnector when outputs start being parked and when
+     * they have all been sent; pauses and resumes the input flow accordingly.
+     *
+     * @param engaged -- true if the session cannot currently take more output
+     */
+    private void onBackpressureChange(boolean engaged) {
+        _backpressured = engaged;
+        if (_inputflow == null) return;
+        if (engaged) {
+            logger.warn("Output backpressure; pausing the input flow");
+            _inputflow.stop();
+        }
+        else if (canResumeInput()) {
+            logger.info("Output backpressure cleared; resuming the input flow");
+            _inputflow.start();
+        }
+    }
+
+    private boolean canResumeInput() {
+        return !_backpressured && !_batchPaused && !_inputHalted &&
+                _model.GetHAStatus() == HAState.ACTIVE && _model.GetSequenceStatus() == SeqState.UP_TO_DATE;
+    }
+
     ////////////////////////////////////////////////////////////////////////
     //////////          State Transitions                          /////////
     ////////////////////////////////////////////////////////////////////////
+    private void setHAStatus(HAState status) {
+        _model.SetHAStatus(status);
+        updateQueryService(status);
+    }
+
+    /**
+     * Subscribes the query handler on becoming BACKUP and unsubscribes it on leaving; a
+     * DISCONNECTED session has lost its subscriptions already.
+     */
+    private void updateQueryService(HAState status) {
+        if (_queryHandler == null) return;
+        if (status == HAState.BACKUP) {
+            if (_queryTarget == null) {
+                logger.info("Serving queries on {}", _queryHandler.getSubscriptionTopic());
+                _queryTarget = _connector.ServeRequests(_queryHandler);
+            }
+        }
+        else if (_queryTarget != null) {
+            logger.info("No longer serving queries as {}", status);
+            if (status != HAState.DISCONNECTED)
+                _connector.StopServingRequests(_queryTarget);
+            _queryTarget = null;
+        }
+    }
+
     private void initState() {
         _model.SetLastOutput(null);
-        _model.SetHAStatus(HAState.DISCONNECTED);
+        setHAStatus(HAState.DISCONNECTED);
         _model.SetSequenceStatus(SeqState.INIT);
     }
 
@@ -257,11 +626,14 @@ public class ClusterConnector<InputType, OutputType> {
         if (isSentinel) {
             logger.info("Finished recovering state!");
             _model.SetSequenceStatus(SeqState.UP_TO_DATE);
-            _model.SetHAStatus(HAState.ACTIVE);
-            _inputflow.start(); // if a msg arrives it is passed to processLastOutputMsg (below)
+            setHAStatus(HAState.ACTIVE);
+            // if a msg arrives it is passed to processLastOutputMsg (below); under
+            // backpressure the flow is started once the retry queue has drained
+            if (canResumeInput())
+                _inputflow.start();
         }
         else {
-            _model.SetHAStatus(HAState.BACKUP);
+            setHAStatus(HAState.BACKUP);
             _model.SetLastOutput(state);
         }
     }
@@ -274,10 +646,91 @@ public class ClusterConnector<InputType, OutputType> {
      * state and output something representing that state.
      *
      * @param input -- new application input message
+     * @param msgId -- acknowledged once the input is applied, unless its state was refused
      */
-    private void processInputMsg(InputType input) {
+    void processInputMsg(InputType input, long msgId) {
         // Construct a new app state
-        _model.UpdateApplicationState(input);
+        try {
+            _model.UpdateApplicationState(input);
+        }
+        catch (RuntimeException e) {
+            logger.error("Failed to apply an input", e);
+            haltInput("An input failed and may have been partly applied");
+            return;
+        }
+        if (!_inputHalted && _model.GetHAStatus() == HAState.ACTIVE)
+            _inputflow.ack(msgId);
+    }
+
+    /**
+     * Runs on the batching thread: hands each batch of queued inputs to the application,
+     * then acknowledges them, and resumes a paused flow once the backlog is down to a batch.
+     * A batch that finished after this member stopped being ACTIVE, and so had no state
+     * published for it, is left unacknowledged for redelivery. A batch that failed may have
+     * been partly applied, so input is halted rather than carrying on past it: the broker
+     * would otherwise redeliver it after later inputs. The thread ends once input is halted.
+     */
+    private void processInputBatches() {
+        try {
+            while (_batching && !_inputHalted) {
+                int count = _batchQueue.Take(BATCH_POLL_MILLIS);
+                if (count == 0) continue;
+                _batch.Reset(count);
+                boolean applied = false;
+                try {
+                    _model.UpdateApplicationState(_batch);
+                    applied = true;
+                }
+                catch (RuntimeException e) {
+                    logger.error("Failed to apply a batch of {} inputs", count, e);
+                    haltInput("A batch of " + count + " inputs failed and may have been partly applied");
+                }
+                if (applied && !_inputHalted && _model.GetHAStatus() == HAState.ACTIVE) {
+                    for (int i = 0; i < count; i++)
+                        _inputflow.ack(_batchQueue.getMessageId(i));
+                }
+                else if (applied && !_inputHalted) {
+                    logger.info("No longer active; leaving a batch of {} inputs unacknowledged", count);
+                }
+                _batchQueue.Release();
+                if (_batchPaused && _batchQueue.size() <= _batchQueue.getMaxBatch()) {
+                    _batchPaused = false;
+                    if (canResumeInput()) {
+                        logger.info("Input backlog cleared; resuming the input flow");
+                        _inputflow.start();
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The current batch of the InputBatchQueue, deserialized as the application reads it
+     */
+    private class Batch implements InputBatch<InputType> {
+        void Reset(int size) {
+            _size = size;
+            _next = 0;
+            _last = null;
+        }
+
+        public int getSize() { return _size; }
+
+        public boolean HasNext() { return _next < _size; }
+
+        public InputType Next() {
+            _last = _serializer.DeserializeInput(_batchQueue.getPayload(_next++));
+            return _last;
+        }
+
+        public InputType getLast() { return _last; }
+
+        private int _size;
+        private int _next;
+        private InputType _last;
     }
 
     /**
@@ -300,7 +753,7 @@ public class ClusterConnector<InputType, OutputType> {
     private void becomeActive()
     {
         recoverAllState();
-        _model.SetHAStatus(HAState.ACTIVE);
+        setHAStatus(HAState.ACTIVE);
     }
 
     /**
@@ -309,10 +762,23 @@ public class ClusterConnector<InputType, OutputType> {
     private void becomeBackup()
     {
         _inputflow.stop();
-        _model.SetHAStatus(HAState.BACKUP);
+        if (_batchQueue != null) {
+            // Left unacknowledged, so the broker redelivers them to the new active member
+            int dropped = _batchQueue.Clear();
+            if (dropped > 0)
+                logger.info("Dropped {} queued inputs on becoming backup", dropped);
+            _batchPaused = false;
+        }
+        setHAStatus(HAState.BACKUP);
     }
 
     private final static String SENTINEL = "SENTINEL";
+    private final static int DEFAULT_MAX_FRAGMENT_SIZE = 65536;
+    private final static long BATCH_POLL_MILLIS = 100;
+    private final static long NO_MESSAGE = -1;
+
+    /** Largest state output sent to a last value state queue; the broker's default max-msg-size */
+    public final static int MAX_STATE_MESSAGE_SIZE = 10000000;
 
     private final SolaceConnector _connector;
     private final ClusterModel<InputType,OutputType> _model;
@@ -320,7 +786,32 @@ public class ClusterConnector<InputType, OutputType> {
     private String _inputQueueName, _stateQueueName;
 
     private FlowHandle _stateflow, _inputflow;
+    private boolean _cutThroughState;
+    private boolean _lastValueState;
+    // State message left unacknowledged so the last value queue keeps it; context thread only
+    private long _heldStateId = NO_MESSAGE;
 
-    private final ByteBuffer _inbuff  = ByteBuffer.allocate(8192);
-    private final ByteBuffer _outbuff = ByteBuffer.allocate(8192);
+    // Direct buffers drawn from the pool; replaced with larger ones when an attachment outgrows them
+    private final BufferPool _pool = BufferPool.getDefault();
+    private ByteBuffer _inbuff  = _pool.Acquire(8192);
+    private ByteBuffer _outbuff = _pool.Acquire(8192);
+    // Rebuilds state outputs that the active member had to fragment
+    private final FragmentAssembler _assembler = new FragmentAssembler(_pool);
+    // Optional codec applied between the serializer and the wire
+    private final CompressionStage _compression = new CompressionStage(_pool);
+    private int _maxFragmentSize = DEFAULT_MAX_FRAGMENT_SIZE;
+    private long _streamId;
+    private long _outputSequence;
+    private long _refusedOutputs;
+    // Set once an input failed or its state output was refused; input is left on the queue from then on
+    private volatile boolean _inputHalted;
+    private volatile boolean _backpressured;
+    private RequestHandler _queryHandler;
+    private MessageDispatchTargetHandle _queryTarget;
+    // Optional hand-off of inputs to the batching thread
+    private InputBatchQueue _batchQueue;
+    private final Batch _batch = new Batch();
+    private Thread _batchThread;
+    private volatile boolean _batching;
+    private volatile boolean _batchPaused;
 }
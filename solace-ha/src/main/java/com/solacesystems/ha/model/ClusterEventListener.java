@@ -9,7 +9,9 @@ package com.solacesystems.ha.model;
  *                    e.g. following, up-to-date, etc.
  * - State message:   when the LastValueQueue of the cluster has been read to provide
  *                    last known state of the application cluster
- * - Input message:   when a new input message is read by the ClusterConnector
+ * - Input message:   when a new input message is read by the ClusterConnector, or
+ *                    a batch of them if input batching is enabled
+ * - Durable output:  when the broker acknowledges an output (if publish acks are enabled)
  *
  * @param <InputType> -- input message type
  * @param <OutputType>-- output message type
@@ -48,4 +50,28 @@ public interface ClusterEventListener<InputType, OutputType> {
      * @return new output state reflecting the input
      */
     OutputType UpdateApplicationState(InputType input);
+
+    /**
+     * Called instead of the single-input form when ClusterConnector.EnableInputBatching is
+     * used, with every input available on the flow up to the batch limit. Implementations
+     * should apply all the inputs and send one output for the batch; by default each input
+     * is applied with the single-input form.
+     *
+     * @param inputs -- inputs in arrival order
+     * @return new output state reflecting all the inputs
+     */
+    default OutputType UpdateApplicationState(InputBatch<InputType> inputs) {
+        OutputType output = null;
+        while (inputs.HasNext())
+            output = UpdateApplicationState(inputs.Next());
+        return output;
+    }
+
+    /**
+     * Called on the messaging thread when the broker has acknowledged an output sent with
+     * publish acks enabled; outputs are acknowledged in the order they were sent.
+     *
+     * @param outputSequence -- the value ClusterConnector.SendOutput returned for the output
+     */
+    default void OnOutputDurable(long outputSequence) {}
 }
@@ -41,6 +41,9 @@ public class ClusterModel<InputType, OutputType> {
         _listener.OnSeqStateChange(old, seqStatus);
     }
 
+    /**
+     * May be an instance the serializer reuses, so only valid until the next input arrives
+     */
     public InputType GetLastInput() {
         return _lastInput;
     }
@@ -54,6 +57,15 @@ public class ClusterModel<InputType, OutputType> {
         _lastOutput = lastOutput;
     }
 
+    public long GetLastDurableOutput() {
+        return _lastDurableOutput;
+    }
+
+    public void SetLastDurableOutput(long outputSequence) {
+        _lastDurableOutput = outputSequence;
+        _listener.OnOutputDurable(outputSequence);
+    }
+
     /**
      * This is an important variation of SetLastInput where the
      * ClusterConnector knows that the cluster instance is LIVE and UP_TO_DATE,
@@ -66,6 +78,16 @@ public class ClusterModel<InputType, OutputType> {
         _lastInput  = input;
     }
 
+    /**
+     * Batched form of UpdateApplicationState; one output represents every input in the batch
+     *
+     * @param inputs -- the input messages driving a potential application state change
+     */
+    public void UpdateApplicationState(InputBatch<InputType> inputs) {
+        _lastOutput = _listener.UpdateApplicationState(inputs);
+        _lastInput  = inputs.getLast();
+    }
+
     @Override
     public String toString() {
         return  "] HA = ["  + _haStatus +
@@ -83,6 +105,7 @@ public class ClusterModel<InputType, OutputType> {
     private OutputType _lastOutput;
     private HAState    _haStatus;
     private SeqState   _seqStatus;
+    private volatile long _lastDurableOutput;
 
     private final ClusterEventListener<InputType,OutputType> _listener;
 }
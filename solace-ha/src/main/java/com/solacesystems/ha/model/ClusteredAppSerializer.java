@@ -12,6 +12,15 @@ import java.nio.ByteBuffer;
  */
 public interface ClusteredAppSerializer<InputType, OutputType> {
 
+    /**
+     * Called once per input message on the ClusterConnector's input flow, which hands the
+     * result to the application before reading the next message. Implementations may
+     * therefore refill and return the same instance every time instead of allocating;
+     * the application must copy anything it keeps beyond UpdateApplicationState.
+     *
+     * @param msg -- input message payload
+     * @return the input, or null if the message could not be read
+     */
     InputType DeserializeInput(ByteBuffer msg);
 
     OutputType DeserializeOutput(ByteBuffer msg);
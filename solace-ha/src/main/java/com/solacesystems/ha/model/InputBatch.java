@@ -0,0 +1,28 @@
+package com.solacesystems.ha.model;
+
+/**
+ * The inputs handed to ClusterEventListener.UpdateApplicationState in one call when input
+ * batching is enabled. Inputs are deserialized as they are read, and the serializer may reuse
+ * one input object, so each input is only valid until the next call to Next.
+ *
+ * @param <InputType> -- input message type
+ */
+public interface InputBatch<InputType> {
+
+    /**
+     * @return number of inputs in the batch
+     */
+    int getSize();
+
+    boolean HasNext();
+
+    /**
+     * @return the next input, or null if it could not be deserialized
+     */
+    InputType Next();
+
+    /**
+     * @return the input most recently returned by Next
+     */
+    InputType getLast();
+}
@@ -0,0 +1,194 @@
+package com.solacesystems.ha.serial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Runtime helpers for the codecs generated from ClusteredMessage types. Strings are encoded
+ * as an int byte length (-1 for null) followed by their UTF-8 bytes; enums as a short ordinal
+ * (-1 for null). Methods taking a position use absolute access and leave the buffer's
+ * position alone; the others read or write at the position and advance it.
+ */
+public final class BinaryCodec {
+
+    private BinaryCodec() {}
+
+    /**
+     * @return bytes PutString needs for the value
+     */
+    public static int StringLength(CharSequence value) {
+        return 4 + ((value == null) ? 0 : Utf8Length(value));
+    }
+
+    public static int Utf8Length(CharSequence value) {
+        int len = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) len += 1;
+            else if (c < 0x800) len += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                len += 4;
+                i++;
+            }
+            else len += 3;
+        }
+        return len;
+    }
+
+    public static void PutString(ByteBuffer buffer, CharSequence value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(Utf8Length(value));
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            }
+            else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a string at the position, returning `previous` instead of a new String if it
+     * has the same contents; fields that rarely change are then decoded without allocating.
+     */
+    public static String GetString(ByteBuffer buffer, String previous) {
+        int pos = buffer.position();
+        String value = (previous != null && StringEquals(buffer, pos, previous))
+                ? previous
+                : GetString(buffer, pos);
+        buffer.position(SkipString(buffer, pos));
+        return value;
+    }
+
+    /**
+     * @return a new String holding the string encoded at pos, or null
+     */
+    public static String GetString(ByteBuffer buffer, int pos) {
+        int len = buffer.getInt(pos);
+        if (len < 0) return null;
+        StringBuilder scratch = SCRATCH.get();
+        scratch.setLength(0);
+        decode(buffer, pos + 4, len, scratch);
+        return scratch.toString();
+    }
+
+    /**
+     * Appends the string encoded at pos (nothing if it is null) to the destination.
+     */
+    public static void AppendString(ByteBuffer buffer, int pos, StringBuilder dst) {
+        int len = buffer.getInt(pos);
+        if (len > 0) decode(buffer, pos + 4, len, dst);
+    }
+
+    /**
+     * @return true if the string encoded at pos equals the value (both may be null)
+     */
+    public static boolean StringEquals(ByteBuffer buffer, int pos, CharSequence value) {
+        int len = buffer.getInt(pos);
+        if (len < 0 || value == null) return len < 0 && value == null;
+        int start = pos + 4;
+        // ASCII fast path: one byte per char
+        if (len == value.length()) {
+            int i = 0;
+            while (i < len) {
+                byte b = buffer.get(start + i);
+                if (b < 0 || b != value.charAt(i)) break;
+                i++;
+            }
+            if (i == len) return true;
+            if (buffer.get(start + i) >= 0) return false;
+        }
+        StringBuilder scratch = SCRATCH.get();
+        scratch.setLength(0);
+        decode(buffer, start, len, scratch);
+        if (scratch.length() != value.length()) return false;
+        for (int i = 0; i < scratch.length(); i++)
+            if (scratch.charAt(i) != value.charAt(i)) return false;
+        return true;
+    }
+
+    /**
+     * @return the position just past the string encoded at pos
+     */
+    public static int SkipString(ByteBuffer buffer, int pos) {
+        int len = buffer.getInt(pos);
+        return pos + 4 + Math.max(len, 0);
+    }
+
+    /**
+     * @return the bytes from position to limit decoded as UTF-8; the position is not moved
+     */
+    public static String ReadUtf8(ByteBuffer buffer) {
+        StringBuilder scratch = SCRATCH.get();
+        scratch.setLength(0);
+        decode(buffer, buffer.position(), buffer.remaining(), scratch);
+        return scratch.toString();
+    }
+
+    public static void PutEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.putShort((short) ((value == null) ? -1 : value.ordinal()));
+    }
+
+    /**
+     * @return the constant with the ordinal, or null for -1 or an ordinal this side doesn't know
+     */
+    public static <E extends Enum<E>> E GetEnum(short ordinal, E[] values) {
+        return (ordinal < 0 || ordinal >= values.length) ? null : values[ordinal];
+    }
+
+    private static void decode(ByteBuffer buffer, int pos, int len, StringBuilder dst) {
+        int end = pos + len;
+        while (pos < end) {
+            int b = buffer.get(pos++) & 0xFF;
+            if (b < 0x80) {
+                dst.append((char) b);
+            }
+            else if (b < 0xE0 && pos < end) {
+                dst.append((char) (((b & 0x1F) << 6) | (buffer.get(pos++) & 0x3F)));
+            }
+            else if (b < 0xF0 && pos + 1 < end) {
+                dst.append((char) (((b & 0x0F) << 12)
+                        | ((buffer.get(pos++) & 0x3F) << 6)
+                        | (buffer.get(pos++) & 0x3F)));
+            }
+            else if (pos + 2 < end) {
+                int cp = ((b & 0x07) << 18)
+                        | ((buffer.get(pos++) & 0x3F) << 12)
+                        | ((buffer.get(pos++) & 0x3F) << 6)
+                        | (buffer.get(pos++) & 0x3F);
+                dst.appendCodePoint(cp);
+            }
+            else {
+                // Truncated sequence
+                dst.append('\uFFFD');
+                pos = end;
+            }
+        }
+    }
+
+    private static final ThreadLocal<StringBuilder> SCRATCH = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(64);
+        }
+    };
+}
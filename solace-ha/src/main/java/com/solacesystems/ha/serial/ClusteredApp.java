@@ -0,0 +1,43 @@
+package com.solacesystems.ha.serial;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a ClusteredAppSerializer for an application's input and output types, which are
+ * treated as if annotated with ClusteredMessage. Put it on any class of the application, e.g.
+ * the ClusterEventListener; the serializer is generated in that class's package and named
+ * after it (MatchingEngine gives MatchingEngineSerializer) unless a name is given.
+ *
+ * The generated serializer also has a SerializeInput method for publishers of input messages.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ClusteredApp {
+
+    enum Format {
+        /** Compact binary layout; see ClusteredMessage */
+        BINARY,
+        /** JSON objects keyed by field name, for consumers outside the cluster */
+        JSON
+    }
+
+    Class<?> input();
+
+    Class<?> output();
+
+    Format format() default Format.BINARY;
+
+    /**
+     * Simple name of the generated class; defaults to the annotated class's name plus "Serializer"
+     */
+    String name() default "";
+
+    /**
+     * If true, each Deserialize method refills and returns the same instance instead of
+     * allocating a new one per message; applications must copy anything they keep.
+     */
+    boolean reuseInstances() default true;
+}
@@ -0,0 +1,24 @@
+package com.solacesystems.ha.serial;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an application input or output POJO for code generation. At compile time the
+ * SerializerProcessor generates, in the same package:
+ *
+ * - FooCodec:     static Encode/Decode between a Foo and a compact binary layout, plus
+ *                 WriteJson/ReadJson for the same fields as a JSON object
+ * - FooFlyweight: reads fields straight out of an encoded buffer without decoding it
+ *
+ * Every non-static, non-transient field declared in the class is serialized, in declaration
+ * order; it is read and written through its bean getter and setter, or directly if it is not
+ * private. Supported field types are the primitives, String and enums. The class needs a
+ * no-argument constructor that is not private.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ClusteredMessage {
+}
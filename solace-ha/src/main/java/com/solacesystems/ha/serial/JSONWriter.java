@@ -0,0 +1,271 @@
+package com.solacesystems.ha.serial;
+
+import com.solacesystems.ha.conn.BufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming JSON encoder writing straight into a ByteBuffer, with no intermediate object
+ * trees, Strings or boxed numbers. Field names are passed pre-encoded (see Name()), and
+ * the buffer is grown through the BufferPool when a document outgrows it.
+ *
+ * Doubles on a decimal grid of up to 8 places (prices, lot sizes) are formatted with
+ * integer arithmetic; other values fall back to the JDK's Double.toString digits via a
+ * reused StringBuilder. Either way the output matches what json-simple would have written,
+ * including "null" for NaN and infinities, and always has a decimal point, so parsers keep
+ * reading the value back as a Double.
+ *
+ * Not thread-safe; each serializer keeps its own writer.
+ */
+public class JSONWriter {
+
+    public JSONWriter(BufferPool pool) {
+        _pool = pool;
+    }
+
+    /**
+     * @return the quoted field name followed by a colon, ready to pass to Field()
+     */
+    public static byte[] Name(String name) {
+        byte[] encoded = new byte[name.length() + 3];
+        encoded[0] = '"';
+        for (int i = 0; i < name.length(); i++)
+            encoded[i + 1] = (byte) name.charAt(i);
+        encoded[encoded.length - 2] = '"';
+        encoded[encoded.length - 1] = ':';
+        return encoded;
+    }
+
+    /**
+     * Starts a new document at the start of the given buffer.
+     */
+    public void Begin(ByteBuffer buffer) {
+        _buf = buffer;
+        _buf.clear();
+        _needComma = false;
+    }
+
+    /**
+     * @return the buffer holding the document, written but not flipped; it
+     *         replaces the one passed to Begin() if that had to grow
+     */
+    public ByteBuffer End() {
+        ByteBuffer buffer = _buf;
+        _buf = null;
+        return buffer;
+    }
+
+    public JSONWriter StartObject() {
+        separate(1);
+        _buf.put((byte) '{');
+        _needComma = false;
+        return this;
+    }
+
+    public JSONWriter EndObject() {
+        ensure(1);
+        _buf.put((byte) '}');
+        _needComma = true;
+        return this;
+    }
+
+    public JSONWriter StartArray() {
+        separate(1);
+        _buf.put((byte) '[');
+        _needComma = false;
+        return this;
+    }
+
+    public JSONWriter EndArray() {
+        ensure(1);
+        _buf.put((byte) ']');
+        _needComma = true;
+        return this;
+    }
+
+    /**
+     * @param name -- field name encoded by Name()
+     */
+    public JSONWriter Field(byte[] name) {
+        separate(name.length);
+        _buf.put(name);
+        _needComma = false;
+        return this;
+    }
+
+    public JSONWriter Null() {
+        separate(4);
+        putAscii(NULL);
+        _needComma = true;
+        return this;
+    }
+
+    public JSONWriter Value(String value) {
+        if (value == null) return Null();
+        separate(value.length() + 2);
+        _buf.put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                ensure(1);
+                _buf.put((byte) c);
+            }
+            else {
+                escape(c);
+            }
+        }
+        ensure(1);
+        _buf.put((byte) '"');
+        _needComma = true;
+        return this;
+    }
+
+    public JSONWriter Value(long value) {
+        separate(20);
+        putLong(value);
+        _needComma = true;
+        return this;
+    }
+
+    public JSONWriter Value(boolean value) {
+        separate(5);
+        putAscii(value ? TRUE : FALSE);
+        _needComma = true;
+        return this;
+    }
+
+    public JSONWriter Value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return Null();
+        separate(24);
+        double abs = Math.abs(value);
+        if (abs == 0.0) {
+            if (1.0 / value < 0) _buf.put((byte) '-');
+            _buf.put((byte) '0').put((byte) '.').put((byte) '0');
+        }
+        else if (abs < PLAIN_MIN || abs >= PLAIN_MAX || !putFixed(value, abs)) {
+            putScratch(value);
+        }
+        _needComma = true;
+        return this;
+    }
+
+    /**
+     * Writes the value with integer arithmetic if it sits exactly on the 8-decimal grid.
+     * The digits are then also the shortest that read back as the same double, which is
+     * what Double.toString produces in this (non-scientific) range.
+     */
+    private boolean putFixed(double value, double abs) {
+        long scaled = Math.round(abs * FIXED_SCALE);
+        if (scaled / FIXED_SCALE != abs)
+            return false;
+        if (value < 0) _buf.put((byte) '-');
+        putLong(scaled / FIXED_UNITS);
+        _buf.put((byte) '.');
+        long frac = scaled % FIXED_UNITS;
+        if (frac == 0) {
+            _buf.put((byte) '0');
+            return true;
+        }
+        int digits = FIXED_DIGITS;
+        while (frac % 10 == 0) {
+            frac /= 10;
+            digits--;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            _digits[i] = (byte) ('0' + (frac % 10));
+            frac /= 10;
+        }
+        _buf.put(_digits, 0, digits);
+        return true;
+    }
+
+    private void putScratch(double value) {
+        _scratch.setLength(0);
+        _scratch.append(value);
+        for (int i = 0; i < _scratch.length(); i++)
+            _buf.put((byte) _scratch.charAt(i));
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(LONG_MIN);
+            return;
+        }
+        if (value < 0) {
+            _buf.put((byte) '-');
+            value = -value;
+        }
+        int pos = _digits.length;
+        do {
+            _digits[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        _buf.put(_digits, pos, _digits.length - pos);
+    }
+
+    private void escape(char c) {
+        ensure(6);
+        switch (c) {
+            case '"':  _buf.put((byte) '\\').put((byte) '"');  return;
+            case '\\': _buf.put((byte) '\\').put((byte) '\\'); return;
+            case '\b': _buf.put((byte) '\\').put((byte) 'b');  return;
+            case '\f': _buf.put((byte) '\\').put((byte) 'f');  return;
+            case '\n': _buf.put((byte) '\\').put((byte) 'n');  return;
+            case '\r': _buf.put((byte) '\\').put((byte) 'r');  return;
+            case '\t': _buf.put((byte) '\\').put((byte) 't');  return;
+            default:
+                break;
+        }
+        if (c < 0x20 || Character.isSurrogate(c)) {
+            // Control characters, and surrogate halves, are written as hex escapes
+            _buf.put((byte) '\\').put((byte) 'u');
+            for (int shift = 12; shift >= 0; shift -= 4)
+                _buf.put(HEX[(c >> shift) & 0xF]);
+        }
+        else if (c < 0x800) {
+            _buf.put((byte) (0xC0 | (c >> 6)));
+            _buf.put((byte) (0x80 | (c & 0x3F)));
+        }
+        else {
+            _buf.put((byte) (0xE0 | (c >> 12)));
+            _buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            _buf.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    private void putAscii(byte[] bytes) {
+        _buf.put(bytes);
+    }
+
+    /**
+     * Writes the comma owed by the previous value, and makes room for the next token.
+     */
+    private void separate(int needed) {
+        ensure(needed + 1);
+        if (_needComma) _buf.put((byte) ',');
+    }
+
+    private void ensure(int needed) {
+        if (_buf.remaining() < needed)
+            _buf = _pool.EnsureRemaining(_buf, needed);
+    }
+
+    private final static byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private final static byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private final static byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private final static byte[] LONG_MIN = "-9223372036854775808".getBytes();
+    private final static byte[] HEX = "0123456789abcdef".getBytes();
+
+    // Double.toString switches to scientific notation outside this range
+    private final static double PLAIN_MIN = 1e-3;
+    private final static double PLAIN_MAX = 1e7;
+    private final static int    FIXED_DIGITS = 8;
+    private final static long   FIXED_UNITS  = 100000000L;
+    private final static double FIXED_SCALE  = 1e8;
+
+    private final BufferPool _pool;
+    private final byte[] _digits = new byte[20];
+    private final StringBuilder _scratch = new StringBuilder(32);
+    private ByteBuffer _buf;
+    private boolean _needComma;
+}
@@ -0,0 +1,679 @@
+package com.solacesystems.ha.serial.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates codecs, flyweights and ClusteredAppSerializer implementations for types
+ * annotated with ClusteredMessage and ClusteredApp; see those annotations for what is
+ * generated. Registered through META-INF/services, so javac runs it for any module
+ * that has solace-ha on its compile classpath.
+ *
+ * Binary layout of a message: int schema id, then the fixed-size fields in declaration
+ * order, then the String fields in declaration order. Fixed fields therefore sit at
+ * constant offsets, which is what lets the flyweights read them in place.
+ */
+@SupportedAnnotationTypes({
+        "com.solacesystems.ha.serial.ClusteredMessage",
+        "com.solacesystems.ha.serial.ClusteredApp" })
+public class SerializerProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement message = processingEnv.getElementUtils().getTypeElement(MESSAGE_ANNOTATION);
+        TypeElement app = processingEnv.getElementUtils().getTypeElement(APP_ANNOTATION);
+
+        if (message != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(message)) {
+                if (element.getKind() != ElementKind.CLASS)
+                    error(element, "@ClusteredMessage only applies to classes");
+                else
+                    generateMessage((TypeElement) element);
+            }
+        }
+        if (app != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(app)) {
+                generateApp((TypeElement) element);
+            }
+        }
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //////////            Message model                            /////////
+    ////////////////////////////////////////////////////////////////////////
+
+    private enum Kind {
+        BOOLEAN(1, "put", "get"), BYTE(1, "put", "get"), SHORT(2, "putShort", "getShort"),
+        CHAR(2, "putChar", "getChar"), INT(4, "putInt", "getInt"), FLOAT(4, "putFloat", "getFloat"),
+        LONG(8, "putLong", "getLong"), DOUBLE(8, "putDouble", "getDouble"),
+        ENUM(2, "putShort", "getShort"), STRING(0, null, null);
+
+        Kind(int size, String put, String get) {
+            this.size = size;
+            this.put = put;
+            this.get = get;
+        }
+
+        final int size;
+        final String put;
+        final String get;
+    }
+
+    private static class Property {
+        String name;        // field name
+        String key;         // JSON key: the field name without a leading underscore
+        String upper;       // for generated constant names
+        Kind kind;
+        String type;        // Java source type
+        String getterName;  // flyweight accessor name
+        String read;        // expression reading the value from `msg`
+        String write;       // statement format writing %s into `msg`
+        int offset;         // fixed fields only
+    }
+
+    private static class Message {
+        String pkg;
+        String simpleName;
+        String qualifiedName;
+        final List<Property> fixed = new ArrayList<Property>();
+        final List<Property> strings = new ArrayList<Property>();
+        int fixedLength;
+        int schemaId;
+
+        List<Property> all() {
+            List<Property> all = new ArrayList<Property>(fixed);
+            all.addAll(strings);
+            return all;
+        }
+    }
+
+    /**
+     * @return the message model, or null after reporting an error
+     */
+    private Message describe(TypeElement type) {
+        Message msg = new Message();
+        msg.pkg = packageOf(type);
+        msg.simpleName = type.getSimpleName().toString();
+        msg.qualifiedName = type.getQualifiedName().toString();
+
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "@ClusteredMessage classes must be top-level or static");
+            return null;
+        }
+        boolean hasConstructor = false;
+        for (ExecutableElement ctor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+            if (ctor.getParameters().isEmpty() && !ctor.getModifiers().contains(Modifier.PRIVATE))
+                hasConstructor = true;
+        if (!hasConstructor) {
+            error(type, "@ClusteredMessage classes need a non-private no-argument constructor");
+            return null;
+        }
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(type.getEnclosedElements());
+        StringBuilder signature = new StringBuilder(msg.qualifiedName);
+        int offset = 4;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> mods = field.getModifiers();
+            if (mods.contains(Modifier.STATIC) || mods.contains(Modifier.TRANSIENT))
+                continue;
+            Property p = new Property();
+            p.name = field.getSimpleName().toString();
+            p.key = stripUnderscore(p.name);
+            p.upper = upperCase(p.name);
+            p.type = field.asType().toString();
+            p.kind = kindOf(field.asType());
+            if (p.kind == null) {
+                error(field, "Unsupported field type " + p.type + "; use primitives, String or enums");
+                return null;
+            }
+            String cap = stripUnderscore(p.name);
+            cap = Character.toUpperCase(cap.charAt(0)) + cap.substring(1);
+            ExecutableElement getter = findMethod(methods, "get" + cap, 0);
+            if (getter == null && p.kind == Kind.BOOLEAN)
+                getter = findMethod(methods, "is" + cap, 0);
+            ExecutableElement setter = findMethod(methods, "set" + cap, 1);
+            boolean direct = !mods.contains(Modifier.PRIVATE);
+            if (getter != null)
+                p.read = "msg." + getter.getSimpleName() + "()";
+            else if (direct)
+                p.read = "msg." + p.name;
+            if (setter != null)
+                p.write = "msg." + setter.getSimpleName() + "(%s);";
+            else if (direct && !mods.contains(Modifier.FINAL))
+                p.write = "msg." + p.name + " = %s;";
+            if (p.read == null || p.write == null) {
+                error(field, "Field " + p.name + " needs a public getter and setter, or must not be private");
+                return null;
+            }
+            p.getterName = (getter != null) ? getter.getSimpleName().toString() : "get" + cap;
+
+            signature.append(';').append(p.name).append(':').append(p.type);
+            if (p.kind == Kind.STRING) {
+                msg.strings.add(p);
+            }
+            else {
+                p.offset = offset;
+                offset += p.kind.size;
+                msg.fixed.add(p);
+            }
+        }
+        msg.fixedLength = offset;
+        msg.schemaId = signature.toString().hashCode();
+        return msg;
+    }
+
+    private Kind kindOf(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return Kind.BOOLEAN;
+            case BYTE:    return Kind.BYTE;
+            case SHORT:   return Kind.SHORT;
+            case CHAR:    return Kind.CHAR;
+            case INT:     return Kind.INT;
+            case FLOAT:   return Kind.FLOAT;
+            case LONG:    return Kind.LONG;
+            case DOUBLE:  return Kind.DOUBLE;
+            case DECLARED:
+                Element element = ((DeclaredType) type).asElement();
+                if (element.getKind() == ElementKind.ENUM)
+                    return Kind.ENUM;
+                if (((TypeElement) element).getQualifiedName().contentEquals("java.lang.String"))
+                    return Kind.STRING;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //////////            Code generation                          /////////
+    ////////////////////////////////////////////////////////////////////////
+
+    private void generateMessage(TypeElement type) {
+        if (!_generated.add(type.getQualifiedName().toString()))
+            return;
+        Message msg = describe(type);
+        if (msg == null)
+            return;
+        writeCodec(msg, type);
+        writeFlyweight(msg, type);
+    }
+
+    private void writeCodec(Message m, TypeElement origin) {
+        String name = m.simpleName + "Codec";
+        PrintWriter out = open(m.pkg, name, origin);
+        if (out == null) return;
+
+        header(out, m.pkg, m.simpleName);
+        out.println("import com.solacesystems.ha.serial.BinaryCodec;");
+        out.println("import com.solacesystems.ha.serial.JSONWriter;");
+        out.println("import org.json.simple.JSONObject;");
+        out.println();
+        out.println("import java.nio.ByteBuffer;");
+        out.println();
+        out.println("/**");
+        out.println(" * Binary and JSON encoding of " + m.simpleName + "; generated from its @ClusteredMessage fields.");
+        out.println(" */");
+        out.println("public final class " + name + " {");
+        out.println();
+        out.println("    public static final int SCHEMA_ID = " + m.schemaId + ";");
+        out.println("    /** Schema id plus all fixed-size fields; String fields follow */");
+        out.println("    public static final int FIXED_LENGTH = " + m.fixedLength + ";");
+        for (Property p : m.fixed)
+            out.println("    public static final int OFFSET_" + p.upper + " = " + p.offset + ";");
+        out.println();
+        out.println("    private " + name + "() {}");
+        out.println();
+
+        // EncodedLength
+        out.println("    /**");
+        out.println("     * @return bytes Encode() will write for the message");
+        out.println("     */");
+        out.println("    public static int EncodedLength(" + m.simpleName + " msg) {");
+        out.print("        return FIXED_LENGTH");
+        for (Property p : m.strings)
+            out.print("\n                + BinaryCodec.StringLength(" + p.read + ")");
+        out.println(";");
+        out.println("    }");
+        out.println();
+
+        // Encode
+        out.println("    /**");
+        out.println("     * Writes the message at the buffer's position, which must have EncodedLength() bytes remaining");
+        out.println("     */");
+        out.println("    public static void Encode(" + m.simpleName + " msg, ByteBuffer buffer) {");
+        out.println("        buffer.putInt(SCHEMA_ID);");
+        for (Property p : m.fixed) {
+            switch (p.kind) {
+                case BOOLEAN:
+                    out.println("        buffer.put((byte) (" + p.read + " ? 1 : 0));");
+                    break;
+                case ENUM:
+                    out.println("        BinaryCodec.PutEnum(buffer, " + p.read + ");");
+                    break;
+                default:
+                    out.println("        buffer." + p.kind.put + "(" + p.read + ");");
+            }
+        }
+        for (Property p : m.strings)
+            out.println("        BinaryCodec.PutString(buffer, " + p.read + ");");
+        out.println("    }");
+        out.println();
+
+        // Decode
+        out.println("    /**");
+        out.println("     * Reads a message from the buffer's position into the target, or a new " + m.simpleName + " if");
+        out.println("     * it is null. String fields that did not change keep their existing instance.");
+        out.println("     */");
+        out.println("    public static " + m.simpleName + " Decode(ByteBuffer buffer, " + m.simpleName + " target) {");
+        out.println("        if (buffer.remaining() < FIXED_LENGTH || buffer.getInt(buffer.position()) != SCHEMA_ID)");
+        out.println("            throw new IllegalStateException(\"Not an encoded " + m.simpleName + "\");");
+        out.println("        buffer.getInt();");
+        out.println("        " + m.simpleName + " msg = (target != null) ? target : new " + m.simpleName + "();");
+        for (Property p : m.fixed) {
+            String value;
+            switch (p.kind) {
+                case BOOLEAN: value = "buffer.get() != 0"; break;
+                case ENUM:    value = "BinaryCodec.GetEnum(buffer.getShort(), " + p.upper + "_VALUES)"; break;
+                default:      value = "buffer." + p.kind.get + "()";
+            }
+            out.println("        " + String.format(p.write, value));
+        }
+        for (Property p : m.strings)
+            out.println("        " + String.format(p.write, "BinaryCodec.GetString(buffer, " + p.read + ")"));
+        out.println("        return msg;");
+        out.println("    }");
+        out.println();
+
+        // WriteJson
+        out.println("    /**");
+        out.println("     * Streams the message as a JSON object keyed by field name");
+        out.println("     */");
+        out.println("    public static void WriteJson(" + m.simpleName + " msg, JSONWriter out) {");
+        out.println("        out.StartObject();");
+        for (Property p : m.all()) {
+            String value;
+            switch (p.kind) {
+                case ENUM:  value = "(" + p.read + " == null) ? null : " + p.read + ".name()"; break;
+                case CHAR:  value = "String.valueOf(" + p.read + ")"; break;
+                case BYTE: case SHORT: case INT: value = "(long) " + p.read; break;
+                case FLOAT: value = "(double) " + p.read; break;
+                default:    value = p.read;
+            }
+            out.println("        out.Field(JSON_" + p.upper + ").Value(" + value + ");");
+        }
+        out.println("        out.EndObject();");
+        out.println("    }");
+        out.println();
+
+        // ReadJson
+        out.println("    /**");
+        out.println("     * Fills the target, or a new " + m.simpleName + " if it is null, from a parsed JSON object;");
+        out.println("     * absent or mistyped fields are left unchanged, and an explicit null clears a String or");
+        out.println("     * enum field, as WriteJson writes one for it.");
+        out.println("     */");
+        out.println("    public static " + m.simpleName + " ReadJson(JSONObject json, " + m.simpleName + " target) {");
+        out.println("        " + m.simpleName + " msg = (target != null) ? target : new " + m.simpleName + "();");
+        out.println("        Object v;");
+        for (Property p : m.all()) {
+            out.println("        v = json.get(\"" + p.key + "\");");
+            String value;
+            switch (p.kind) {
+                case BOOLEAN: out.println("        if (v instanceof Boolean) " + String.format(p.write, "(Boolean) v")); continue;
+                case BYTE:    value = "((Number) v).byteValue()"; break;
+                case SHORT:   value = "((Number) v).shortValue()"; break;
+                case INT:     value = "((Number) v).intValue()"; break;
+                case LONG:    value = "((Number) v).longValue()"; break;
+                case FLOAT:   value = "((Number) v).floatValue()"; break;
+                case DOUBLE:  value = "((Number) v).doubleValue()"; break;
+                case CHAR:
+                    out.println("        if (v instanceof String && !((String) v).isEmpty()) "
+                            + String.format(p.write, "((String) v).charAt(0)"));
+                    continue;
+                case ENUM:
+                    out.println("        if (v instanceof String) " + String.format(p.write, p.type + ".valueOf((String) v)"));
+                    out.println("        else if (v == null && json.containsKey(\"" + p.key + "\")) " + String.format(p.write, "null"));
+                    continue;
+                default:
+                    out.println("        if (v instanceof String || (v == null && json.containsKey(\"" + p.key + "\"))) "
+                            + String.format(p.write, "(String) v"));
+                    continue;
+            }
+            out.println("        if (v instanceof Number) " + String.format(p.write, value));
+        }
+        out.println("        return msg;");
+        out.println("    }");
+        out.println();
+
+        for (Property p : m.fixed)
+            if (p.kind == Kind.ENUM)
+                out.println("    static final " + p.type + "[] " + p.upper + "_VALUES = " + p.type + ".values();");
+        for (Property p : m.all())
+            out.println("    private static final byte[] JSON_" + p.upper + " = JSONWriter.Name(\"" + p.key + "\");");
+        out.println("}");
+        out.close();
+    }
+
+    private void writeFlyweight(Message m, TypeElement origin) {
+        String name = m.simpleName + "Flyweight";
+        String codec = m.simpleName + "Codec";
+        PrintWriter out = open(m.pkg, name, origin);
+        if (out == null) return;
+
+        header(out, m.pkg, m.simpleName);
+        out.println("import com.solacesystems.ha.serial.BinaryCodec;");
+        out.println();
+        out.println("import java.nio.ByteBuffer;");
+        out.println();
+        out.println("/**");
+        out.println(" * Reads the fields of an encoded " + m.simpleName + " in place, without decoding or allocating.");
+        out.println(" * Wrap() it around a buffer, then use the accessors; one instance can be re-wrapped per message.");
+        out.println(" */");
+        out.println("public final class " + name + " {");
+        out.println();
+        out.println("    /**");
+        out.println("     * @param offset -- index of the encoded message within the buffer");
+        out.println("     * @return false if the buffer does not hold an encoded " + m.simpleName + " at that offset");
+        out.println("     */");
+        out.println("    public boolean Wrap(ByteBuffer buffer, int offset) {");
+        out.println("        if (buffer.limit() - offset < " + codec + ".FIXED_LENGTH || buffer.getInt(offset) != " + codec + ".SCHEMA_ID)");
+        out.println("            return false;");
+        out.println("        _buffer = buffer;");
+        out.println("        _offset = offset;");
+        out.println("        return true;");
+        out.println("    }");
+        out.println();
+        for (Property p : m.fixed) {
+            String at = "_offset + " + codec + ".OFFSET_" + p.upper;
+            String body;
+            switch (p.kind) {
+                case BOOLEAN: body = "_buffer.get(" + at + ") != 0"; break;
+                case ENUM:    body = "BinaryCodec.GetEnum(_buffer.getShort(" + at + "), " + codec + "." + p.upper + "_VALUES)"; break;
+                default:      body = "_buffer." + p.kind.get + "(" + at + ")";
+            }
+            out.println("    public " + p.type + " " + p.getterName + "() {");
+            out.println("        return " + body + ";");
+            out.println("    }");
+            out.println();
+        }
+        for (int i = 0; i < m.strings.size(); i++) {
+            Property p = m.strings.get(i);
+            String cap = p.getterName.substring(3);
+            out.println("    /** @return UTF-8 byte length of " + p.name + ", or -1 if it is null */");
+            out.println("    public int " + p.getterName + "Length() {");
+            out.println("        return _buffer.getInt(" + lowerFirst(cap) + "Position());");
+            out.println("    }");
+            out.println();
+            out.println("    public boolean " + lowerFirst(cap) + "Equals(CharSequence value) {");
+            out.println("        return BinaryCodec.StringEquals(_buffer, " + lowerFirst(cap) + "Position(), value);");
+            out.println("    }");
+            out.println();
+            out.println("    /** Appends " + p.name + " to dst without allocating; nothing is appended if it is null */");
+            out.println("    public StringBuilder " + p.getterName + "(StringBuilder dst) {");
+            out.println("        BinaryCodec.AppendString(_buffer, " + lowerFirst(cap) + "Position(), dst);");
+            out.println("        return dst;");
+            out.println("    }");
+            out.println();
+            out.println("    /** Allocates a new String; prefer the other accessors on hot paths */");
+            out.println("    public String " + p.getterName + "() {");
+            out.println("        return BinaryCodec.GetString(_buffer, " + lowerFirst(cap) + "Position());");
+            out.println("    }");
+            out.println();
+        }
+        out.println("    /** @return total bytes of the wrapped message */");
+        out.println("    public int getEncodedLength() {");
+        out.println("        return " + (m.strings.isEmpty() ? codec + ".FIXED_LENGTH"
+                : "BinaryCodec.SkipString(_buffer, " + lowerFirst(m.strings.get(m.strings.size() - 1).getterName.substring(3)) + "Position()) - _offset") + ";");
+        out.println("    }");
+        out.println();
+        for (int i = 0; i < m.strings.size(); i++) {
+            Property p = m.strings.get(i);
+            out.println("    private int " + lowerFirst(p.getterName.substring(3)) + "Position() {");
+            if (i == 0) {
+                out.println("        return _offset + " + codec + ".FIXED_LENGTH;");
+            }
+            else {
+                out.println("        return BinaryCodec.SkipString(_buffer, "
+                        + lowerFirst(m.strings.get(i - 1).getterName.substring(3)) + "Position());");
+            }
+            out.println("    }");
+            out.println();
+        }
+        out.println("    private ByteBuffer _buffer;");
+        out.println("    private int _offset;");
+        out.println("}");
+        out.close();
+    }
+
+    private void generateApp(TypeElement type) {
+        AnnotationMirror mirror = null;
+        for (AnnotationMirror am : type.getAnnotationMirrors())
+            if (((TypeElement) am.getAnnotationType().asElement()).getQualifiedName().contentEquals(APP_ANNOTATION))
+                mirror = am;
+        if (mirror == null) return;
+
+        TypeElement input = null, output = null;
+        String format = "BINARY", name = "";
+        boolean reuse = true;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            String key = entry.getKey().getSimpleName().toString();
+            Object value = entry.getValue().getValue();
+            if (key.equals("input"))
+                input = (TypeElement) ((DeclaredType) value).asElement();
+            else if (key.equals("output"))
+                output = (TypeElement) ((DeclaredType) value).asElement();
+            else if (key.equals("format"))
+                format = ((VariableElement) value).getSimpleName().toString();
+            else if (key.equals("name"))
+                name = (String) value;
+            else if (key.equals("reuseInstances"))
+                reuse = (Boolean) value;
+        }
+        if (input == null || output == null) {
+            error(type, "@ClusteredApp needs input and output classes");
+            return;
+        }
+        generateMessage(input);
+        generateMessage(output);
+        Message in = describe(input), out = describe(output);
+        if (in == null || out == null) return;
+
+        String pkg = packageOf(type);
+        if (name.isEmpty()) name = type.getSimpleName() + "Serializer";
+        writeSerializer(pkg, name, in, out, format.equals("JSON"), reuse, type);
+    }
+
+    private void writeSerializer(String pkg, String name, Message in, Message out, boolean json,
+                                 boolean reuse, TypeElement origin) {
+        PrintWriter w = open(pkg, name, origin);
+        if (w == null) return;
+
+        header(w, pkg, origin.getSimpleName().toString());
+        w.println("import com.solacesystems.ha.conn.BufferPool;");
+        w.println("import com.solacesystems.ha.model.ClusteredAppSerializer;");
+        if (json) {
+            w.println("import com.solacesystems.ha.serial.BinaryCodec;");
+            w.println("import com.solacesystems.ha.serial.JSONWriter;");
+            w.println("import org.json.simple.JSONObject;");
+            w.println("import org.json.simple.parser.JSONParser;");
+            w.println("import org.json.simple.parser.ParseException;");
+            w.println("import org.slf4j.Logger;");
+            w.println("import org.slf4j.LoggerFactory;");
+        }
+        w.println();
+        w.println("import java.nio.ByteBuffer;");
+        w.println();
+        w.println("/**");
+        w.println(" * " + (json ? "JSON" : "Binary") + " serializer for " + in.simpleName + " inputs and "
+                + out.simpleName + " outputs; generated from @ClusteredApp on " + origin.getSimpleName() + ".");
+        if (reuse)
+            w.println(" * Deserialized messages are reused between calls; copy anything that must be kept.");
+        w.println(" */");
+        w.println("public final class " + name + " implements ClusteredAppSerializer<" + in.qualifiedName + ", " + out.qualifiedName + "> {");
+        if (json)
+            w.println("    private static final Logger logger = LoggerFactory.getLogger(" + name + ".class);");
+        w.println();
+        deserialize(w, "DeserializeInput", in, "_input", json, reuse);
+        deserialize(w, "DeserializeOutput", out, "_output", json, reuse);
+        serialize(w, "SerializeOutput", out, "_outbuff", json);
+        serialize(w, "SerializeInput", in, "_inbuff", json);
+        if (json) {
+            w.println("    private JSONObject parse(ByteBuffer msg) {");
+            w.println("        try {");
+            w.println("            return (JSONObject) _parser.parse(BinaryCodec.ReadUtf8(msg));");
+            w.println("        }");
+            w.println("        catch (ParseException | ClassCastException e) {");
+            w.println("            logger.error(\"Error parsing incoming JSON message\", e);");
+            w.println("            return null;");
+            w.println("        }");
+            w.println("    }");
+            w.println();
+        }
+        w.println("    private final BufferPool _pool = BufferPool.getDefault();");
+        w.println("    private ByteBuffer _inbuff  = _pool.Acquire(256);");
+        w.println("    private ByteBuffer _outbuff = _pool.Acquire(256);");
+        if (reuse) {
+            w.println("    private final " + in.qualifiedName + " _input = new " + in.qualifiedName + "();");
+            w.println("    private final " + out.qualifiedName + " _output = new " + out.qualifiedName + "();");
+        }
+        if (json) {
+            w.println("    private final JSONWriter _writer = new JSONWriter(_pool);");
+            w.println("    private final JSONParser _parser = new JSONParser();");
+        }
+        w.println("}");
+        w.close();
+    }
+
+    private void deserialize(PrintWriter w, String method, Message m, String field, boolean json, boolean reuse) {
+        String codec = codecName(m);
+        String target = reuse ? field : "null";
+        w.println("    public " + m.qualifiedName + " " + method + "(ByteBuffer msg) {");
+        if (json) {
+            w.println("        JSONObject json = parse(msg);");
+            w.println("        return (json == null) ? null : " + codec + ".ReadJson(json, " + target + ");");
+        }
+        else {
+            w.println("        return " + codec + ".Decode(msg, " + target + ");");
+        }
+        w.println("    }");
+        w.println();
+    }
+
+    private void serialize(PrintWriter w, String method, Message m, String buffer, boolean json) {
+        String codec = codecName(m);
+        w.println("    public ByteBuffer " + method + "(" + m.qualifiedName + " msg) {");
+        if (json) {
+            w.println("        _writer.Begin(" + buffer + ");");
+            w.println("        " + codec + ".WriteJson(msg, _writer);");
+            w.println("        " + buffer + " = _writer.End();");
+        }
+        else {
+            w.println("        " + buffer + ".clear();");
+            w.println("        " + buffer + " = _pool.EnsureRemaining(" + buffer + ", " + codec + ".EncodedLength(msg));");
+            w.println("        " + codec + ".Encode(msg, " + buffer + ");");
+        }
+        w.println("        return " + buffer + ";");
+        w.println("    }");
+        w.println();
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    //////////            Helpers                                  /////////
+    ////////////////////////////////////////////////////////////////////////
+
+    private PrintWriter open(String pkg, String simpleName, TypeElement origin) {
+        String qualified = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(qualified, origin).openWriter();
+            return new PrintWriter(writer);
+        }
+        catch (IOException e) {
+            error(origin, "Could not write " + qualified + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void header(PrintWriter out, String pkg, String source) {
+        out.println("// Generated by SerializerProcessor from " + source + "; do not edit");
+        if (!pkg.isEmpty()) {
+            out.println("package " + pkg + ";");
+            out.println();
+        }
+    }
+
+    private static String codecName(Message m) {
+        return (m.pkg.isEmpty() ? "" : m.pkg + ".") + m.simpleName + "Codec";
+    }
+
+    private String packageOf(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    private static ExecutableElement findMethod(List<ExecutableElement> methods, String name, int params) {
+        for (ExecutableElement method : methods)
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == params
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && !method.getModifiers().contains(Modifier.STATIC))
+                return method;
+        return null;
+    }
+
+    private static String stripUnderscore(String name) {
+        return (name.startsWith("_") && name.length() > 1) ? name.substring(1) : name;
+    }
+
+    private static String upperCase(String name) {
+        StringBuilder sb = new StringBuilder();
+        String stripped = stripUnderscore(name);
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) sb.append('_');
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static String lowerFirst(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private final static String MESSAGE_ANNOTATION = "com.solacesystems.ha.serial.ClusteredMessage";
+    private final static String APP_ANNOTATION = "com.solacesystems.ha.serial.ClusteredApp";
+
+    private final Set<String> _generated = new HashSet<String>();
+}
@@ -0,0 +1,65 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.BufferPool;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void sizeClassesTest() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer small = pool.Acquire(10);
+        assertTrue( small.isDirect() );
+        assertEquals( 256, small.capacity() );
+        ByteBuffer mid = pool.Acquire(8193);
+        assertEquals( 16384, mid.capacity() );
+        assertEquals( 2, pool.getMissCount() );
+        assertEquals( 0, pool.getHitCount() );
+    }
+
+    @Test
+    public void recycleTest() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer first = pool.Acquire(1000);
+        first.putInt(42);
+        pool.Release(first);
+        ByteBuffer second = pool.Acquire(1024);
+        assertSame( first, second );
+        assertEquals( 0, second.position() );
+        assertEquals( 1, pool.getHitCount() );
+        assertEquals( 1, pool.getMissCount() );
+    }
+
+    @Test
+    public void growKeepsContentTest() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer buffer = pool.Acquire(256);
+        for (int i = 0; i < 64; i++)
+            buffer.putInt(i);
+        ByteBuffer bigger = pool.EnsureRemaining(buffer, 100);
+        assertNotSame( buffer, bigger );
+        assertEquals( 512, bigger.capacity() );
+        assertEquals( 256, bigger.position() );
+        assertEquals( 1, pool.getGrowthCount() );
+        bigger.flip();
+        for (int i = 0; i < 64; i++)
+            assertEquals( i, bigger.getInt() );
+        // the small buffer went back to the pool
+        assertSame( buffer, pool.Acquire(200) );
+    }
+
+    @Test
+    public void oversizedNotPooledTest() {
+        BufferPool pool = new BufferPool(8, 10);
+        ByteBuffer huge = pool.Acquire(5000);
+        assertEquals( 5000, huge.capacity() );
+        pool.Release(huge);
+        assertNotSame( huge, pool.Acquire(5000) );
+        pool.Release(ByteBuffer.allocate(256));
+        assertEquals( 0, pool.getHitCount() );
+    }
+}
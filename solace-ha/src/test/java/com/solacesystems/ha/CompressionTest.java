@@ -0,0 +1,94 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.CompressionCodec;
+import com.solacesystems.ha.conn.CompressionStage;
+import com.solacesystems.ha.conn.LZ4BlockCodec;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest {
+
+    private static byte[] jsonLike(int levels) {
+        StringBuilder sb = new StringBuilder("{\"app\":\"aaplmatcher\",\"data\":{\"buys\":[");
+        for (int i = 0; i < levels; i++)
+            sb.append("{\"price\":").append(100.0 - i * 0.25).append(",\"quantity\":").append(123.0).append("},");
+        sb.append("]}}");
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] roundtrip(CompressionCodec codec, byte[] raw) {
+        ByteBuffer src = ByteBuffer.allocateDirect(raw.length);
+        src.put(raw).flip();
+        ByteBuffer compressed = ByteBuffer.allocateDirect(codec.MaxCompressedLength(raw.length));
+        codec.Compress(src, compressed);
+        compressed.flip();
+        ByteBuffer restored = ByteBuffer.allocateDirect(raw.length);
+        assertEquals( raw.length, codec.Decompress(compressed, restored) );
+        restored.flip();
+        byte[] out = new byte[raw.length];
+        restored.get(out);
+        return out;
+    }
+
+    @Test
+    public void lz4RoundtripTest() {
+        LZ4BlockCodec codec = new LZ4BlockCodec();
+        Random rand = new Random(42);
+        byte[] random = new byte[5000];
+        rand.nextBytes(random);
+        byte[] runs = new byte[70000];
+        for (int i = 0; i < runs.length; i++)
+            runs[i] = (byte) ((i / 300) % 7);
+
+        for (byte[] raw : new byte[][] { new byte[0], "tiny".getBytes(), jsonLike(500), random, runs })
+            assertArrayEquals( raw, roundtrip(codec, raw) );
+    }
+
+    @Test
+    public void lz4CompressesRepetitiveJsonTest() {
+        LZ4BlockCodec codec = new LZ4BlockCodec();
+        byte[] raw = jsonLike(500);
+        ByteBuffer src = ByteBuffer.wrap(raw);
+        ByteBuffer dst = ByteBuffer.allocate(codec.MaxCompressedLength(raw.length));
+        int len = codec.Compress(src, dst);
+        assertTrue( "expected at least 3:1 but got " + raw.length + " => " + len, len * 3 < raw.length );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lz4RejectsCorruptInputTest() {
+        ByteBuffer bad = ByteBuffer.wrap(new byte[] { 0x1F, 'a', 0x05, 0x00 });
+        new LZ4BlockCodec().Decompress(bad, ByteBuffer.allocate(100));
+    }
+
+    @Test
+    public void stageThresholdTest() {
+        CompressionStage stage = new CompressionStage(new BufferPool());
+        stage.SetCodec(new LZ4BlockCodec(), 1024);
+
+        ByteBuffer small = ByteBuffer.allocate(2048);
+        small.put("{\"price\":100.0}".getBytes());
+        assertSame( small, stage.Compress(small) );
+        assertEquals( 1, stage.getStats().getRawCount() );
+
+        byte[] raw = jsonLike(200);
+        ByteBuffer large = ByteBuffer.allocate(raw.length);
+        large.put(raw);
+        ByteBuffer compressed = stage.Compress(large);
+        assertNotSame( large, compressed );
+        assertEquals( raw.length, large.position() );
+        assertEquals( 1, stage.getStats().getCompressedCount() );
+        assertTrue( stage.getStats().getLastRatio() < 0.5 );
+
+        compressed.flip();
+        ByteBuffer restored = stage.Decompress(compressed, LZ4BlockCodec.ID, raw.length);
+        byte[] out = new byte[restored.remaining()];
+        restored.get(out);
+        assertArrayEquals( raw, out );
+        assertEquals( 1, stage.getStats().getDecompressedCount() );
+    }
+}
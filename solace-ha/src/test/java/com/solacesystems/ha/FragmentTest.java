@@ -0,0 +1,197 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.CompressionCodec;
+import com.solacesystems.ha.conn.FragmentAssembler;
+import com.solacesystems.ha.conn.FragmentHeader;
+import com.solacesystems.ha.conn.LZ4BlockCodec;
+import com.solacesystems.solclientj.core.handle.MessageHandle;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FragmentTest {
+
+    /**
+     * Stands in for a received fragment: only the User Data and the binary attachment
+     * are read by the assembler.
+     */
+    private static MessageHandle fragment(long streamId, int index, int count, int total, byte[] chunk) {
+        final ByteBuffer header = ByteBuffer.allocate(FragmentHeader.SIZE);
+        new FragmentHeader().Set(streamId, index, count, total).Write(header);
+        header.flip();
+        final byte[] attachment = chunk;
+        return (MessageHandle) Proxy.newProxyInstance(MessageHandle.class.getClassLoader(),
+                new Class<?>[] { MessageHandle.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUserData":
+                            ((ByteBuffer) args[0]).put(header.duplicate());
+                            return header.remaining();
+                        case "getBinaryAttachmentSize":
+                            return attachment.length;
+                        case "getBinaryAttachment":
+                            ((ByteBuffer) args[0]).put(attachment);
+                            return attachment.length;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static byte[] payload(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (i * 31);
+        return bytes;
+    }
+
+    private static byte[] chunk(byte[] payload, int index, int size) {
+        int start = index * size;
+        byte[] bytes = new byte[Math.min(size, payload.length - start)];
+        System.arraycopy(payload, start, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void headerRoundtripTest() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FragmentHeader.USER_DATA_MAX);
+        new FragmentHeader().Set(123456789012L, 2, 5, 300000, 900000, LZ4BlockCodec.ID).Write(buffer);
+        assertEquals( FragmentHeader.SIZE, buffer.position() );
+        assertTrue( FragmentHeader.SIZE <= FragmentHeader.USER_DATA_MAX );
+        buffer.flip();
+
+        FragmentHeader header = new FragmentHeader();
+        assertTrue( header.Read(buffer) );
+        assertEquals( 123456789012L, header.getStreamId() );
+        assertEquals( 2, header.getIndex() );
+        assertEquals( 5, header.getCount() );
+        assertEquals( 300000, header.getTotalLength() );
+        assertEquals( 900000, header.getRawLength() );
+        assertEquals( LZ4BlockCodec.ID, header.getCodec() );
+    }
+
+    @Test
+    public void headerRejectsForeignUserDataTest() {
+        FragmentHeader header = new FragmentHeader();
+        ByteBuffer foreign = ByteBuffer.allocate(FragmentHeader.SIZE);
+        foreign.putInt(0xCAFEBABE).flip();
+        foreign.limit(FragmentHeader.SIZE);
+        assertFalse( header.Read(foreign) );
+        assertFalse( header.Read(ByteBuffer.allocate(FragmentHeader.SIZE - 1)) );
+
+        ByteBuffer badIndex = ByteBuffer.allocate(FragmentHeader.SIZE);
+        new FragmentHeader().Set(1, 3, 3, 10).Write(badIndex);
+        badIndex.flip();
+        assertFalse( header.Read(badIndex) );
+    }
+
+    @Test
+    public void reassemblesInOrderFragmentsTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(25000);
+        for (int i = 0; i < 2; i++)
+            assertNull( assembler.Accept(fragment(7, i, 3, payload.length, chunk(payload, i, 10000))) );
+        assertTrue( assembler.isInProgress() );
+        ByteBuffer result = assembler.Accept(fragment(7, 2, 3, payload.length, chunk(payload, 2, 10000)));
+        assertNotNull( result );
+        assertArrayEquals( payload, read(result) );
+        assertFalse( assembler.isInProgress() );
+        assertEquals( CompressionCodec.NONE, assembler.getCodec() );
+        assertEquals( payload.length, assembler.getRawLength() );
+    }
+
+    @Test
+    public void outOfOrderFragmentDiscardsStreamTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 3, payload.length, chunk(payload, 0, 100))) );
+        assertNull( assembler.Accept(fragment(1, 2, 3, payload.length, chunk(payload, 2, 100))) );
+        assertFalse( assembler.isInProgress() );
+        // The late fragment cannot revive the discarded stream
+        assertNull( assembler.Accept(fragment(1, 1, 3, payload.length, chunk(payload, 1, 100))) );
+        assertFalse( assembler.isInProgress() );
+    }
+
+    @Test
+    public void duplicateFragmentDiscardsStreamTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 3, payload.length, chunk(payload, 0, 100))) );
+        assertNull( assembler.Accept(fragment(1, 1, 3, payload.length, chunk(payload, 1, 100))) );
+        assertNull( assembler.Accept(fragment(1, 1, 3, payload.length, chunk(payload, 1, 100))) );
+        assertFalse( assembler.isInProgress() );
+        assertNull( assembler.Accept(fragment(1, 2, 3, payload.length, chunk(payload, 2, 100))) );
+    }
+
+    @Test
+    public void missingFragmentThenNewStreamTest() {
+        // The sender failed over before sending the rest of stream 1; stream 2 must still arrive intact
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] lost = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 3, lost.length, chunk(lost, 0, 100))) );
+        assertTrue( assembler.isInProgress() );
+
+        byte[] payload = payload(150);
+        assertNull( assembler.Accept(fragment(2, 0, 2, payload.length, chunk(payload, 0, 100))) );
+        ByteBuffer result = assembler.Accept(fragment(2, 1, 2, payload.length, chunk(payload, 1, 100)));
+        assertNotNull( result );
+        assertArrayEquals( payload, read(result) );
+    }
+
+    @Test
+    public void fragmentFromAnotherStreamDiscardsStreamTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 3, payload.length, chunk(payload, 0, 100))) );
+        assertNull( assembler.Accept(fragment(2, 1, 3, payload.length, chunk(payload, 1, 100))) );
+        assertFalse( assembler.isInProgress() );
+    }
+
+    @Test
+    public void shortStreamIsNotDeliveredTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 2, payload.length, chunk(payload, 0, 100))) );
+        assertNull( assembler.Accept(fragment(1, 1, 2, payload.length, chunk(payload, 1, 100))) );
+        assertFalse( assembler.isInProgress() );
+    }
+
+    @Test
+    public void overflowingFragmentDiscardsStreamTest() {
+        FragmentAssembler assembler = new FragmentAssembler(new BufferPool());
+        byte[] payload = payload(300);
+        assertNull( assembler.Accept(fragment(1, 0, 2, 150, chunk(payload, 0, 100))) );
+        assertNull( assembler.Accept(fragment(1, 1, 2, 150, chunk(payload, 1, 100))) );
+        assertFalse( assembler.isInProgress() );
+    }
+
+    @Test
+    public void totalOverLimitIsRefusedTest() {
+        BufferPool pool = new BufferPool();
+        FragmentAssembler assembler = new FragmentAssembler(pool, 20000);
+        long growths = pool.getGrowthCount();
+        assertNull( assembler.Accept(fragment(1, 0, 2, 20001, payload(10000))) );
+        assertFalse( assembler.isInProgress() );
+        assertEquals( growths, pool.getGrowthCount() );
+
+        byte[] payload = payload(20000);
+        ByteBuffer result = assembler.Accept(fragment(2, 0, 1, payload.length, payload));
+        assertNotNull( result );
+        assertArrayEquals( payload, read(result) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveLimitIsRefusedTest() {
+        new FragmentAssembler(new BufferPool(), 0);
+    }
+}
@@ -0,0 +1,133 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.serial.ClusteredApp;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class GeneratedSerializerTest {
+
+    @ClusteredApp(input = TestOrder.class, output = TestFill.class)
+    static class BinaryApp {}
+
+    @ClusteredApp(input = TestOrder.class, output = TestFill.class,
+                  format = ClusteredApp.Format.JSON, name = "JsonAppSerializer")
+    static class JsonApp {}
+
+    private static TestOrder makeOrder() {
+        TestOrder order = new TestOrder();
+        order.setId( 42 );
+        order.setSide( TestOrder.Side.SELL );
+        order.setSymbol( "MSFT" );
+        order.setPrice( 101.25 );
+        order.setUrgent( true );
+        order.quantity = 300;
+        order.trader = "trader-é";
+        return order;
+    }
+
+    private static void assertOrder(TestOrder expected, TestOrder actual) {
+        assertEquals( expected.getId(), actual.getId() );
+        assertEquals( expected.getSide(), actual.getSide() );
+        assertEquals( expected.getSymbol(), actual.getSymbol() );
+        assertEquals( expected.getPrice(), actual.getPrice(), 0.0 );
+        assertEquals( expected.isUrgent(), actual.isUrgent() );
+        assertEquals( expected.quantity, actual.quantity );
+        assertEquals( expected.trader, actual.trader );
+    }
+
+    @Test
+    public void binaryRoundtripTest() {
+        BinaryAppSerializer serializer = new BinaryAppSerializer();
+        TestOrder order = makeOrder();
+        ByteBuffer buffer = serializer.SerializeInput( order );
+        assertEquals( TestOrderCodec.EncodedLength( order ), buffer.position() );
+        buffer.flip();
+        TestOrder decoded = serializer.DeserializeInput( buffer );
+        assertOrder( order, decoded );
+        assertEquals( 0, buffer.remaining() );
+
+        // Reused instance, and unchanged strings are not reallocated
+        String symbol = decoded.getSymbol();
+        buffer.rewind();
+        assertSame( decoded, serializer.DeserializeInput( buffer ) );
+        assertSame( symbol, decoded.getSymbol() );
+
+        TestFill fill = new TestFill();
+        fill.setOrderId( 42 );
+        fill.setQuantity( 12.5 );
+        ByteBuffer out = serializer.SerializeOutput( fill );
+        out.flip();
+        TestFill decodedFill = serializer.DeserializeOutput( out );
+        assertEquals( 42, decodedFill.getOrderId() );
+        assertNull( decodedFill.getSymbol() );
+        assertEquals( 12.5, decodedFill.getQuantity(), 0.0 );
+    }
+
+    @Test
+    public void flyweightTest() {
+        TestOrder order = makeOrder();
+        ByteBuffer buffer = ByteBuffer.allocate( 8 + TestOrderCodec.EncodedLength( order ) );
+        buffer.putLong( -1L );
+        TestOrderCodec.Encode( order, buffer );
+
+        TestOrderFlyweight flyweight = new TestOrderFlyweight();
+        assertFalse( flyweight.Wrap( buffer, 0 ) );
+        assertTrue( flyweight.Wrap( buffer, 8 ) );
+        assertEquals( 42, flyweight.getId() );
+        assertEquals( TestOrder.Side.SELL, flyweight.getSide() );
+        assertEquals( 101.25, flyweight.getPrice(), 0.0 );
+        assertTrue( flyweight.isUrgent() );
+        assertEquals( 300, flyweight.getQuantity() );
+        assertEquals( 4, flyweight.getSymbolLength() );
+        assertTrue( flyweight.symbolEquals( "MSFT" ) );
+        assertFalse( flyweight.symbolEquals( "MSFX" ) );
+        assertTrue( flyweight.traderEquals( "trader-é" ) );
+        assertEquals( "trader-é", flyweight.getTrader( new StringBuilder() ).toString() );
+        assertEquals( TestOrderCodec.EncodedLength( order ), flyweight.getEncodedLength() );
+    }
+
+    @Test
+    public void jsonRoundtripTest() {
+        JsonAppSerializer serializer = new JsonAppSerializer();
+        TestOrder order = makeOrder();
+        ByteBuffer buffer = serializer.SerializeInput( order );
+        buffer.flip();
+        assertOrder( order, serializer.DeserializeInput( buffer ) );
+
+        assertNull( serializer.DeserializeInput( ByteBuffer.wrap( "not json".getBytes() ) ) );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void jsonReadKeepsAbsentFieldsTest() {
+        TestOrder order = makeOrder();
+        JSONObject json = new JSONObject();
+        json.put( "id", 7L );
+        TestOrderCodec.ReadJson( json, order );
+        assertEquals( 7, order.getId() );
+        assertEquals( "MSFT", order.getSymbol() );
+        assertEquals( "trader-é", order.trader );
+        assertEquals( TestOrder.Side.SELL, order.getSide() );
+
+        // An explicit null is what WriteJson writes for a null String or enum
+        json.put( "symbol", null );
+        json.put( "side", null );
+        TestOrderCodec.ReadJson( json, order );
+        assertNull( order.getSymbol() );
+        assertNull( order.getSide() );
+        assertEquals( "trader-é", order.trader );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void schemaMismatchTest() {
+        TestFill fill = new TestFill();
+        ByteBuffer buffer = ByteBuffer.allocate( TestFillCodec.EncodedLength( fill ) + 32 );
+        TestFillCodec.Encode( fill, buffer );
+        buffer.flip();
+        TestOrderCodec.Decode( buffer, null );
+    }
+}
@@ -0,0 +1,83 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.InputBatchQueue;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class InputBatchQueueTest {
+
+    private static ByteBuffer payload(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void batchesUpToLimitTest() throws InterruptedException {
+        InputBatchQueue queue = new InputBatchQueue(2, 16, new BufferPool());
+        assertEquals( 0, queue.Take(1) );
+        queue.Release();
+
+        ByteBuffer first = payload(1);
+        assertEquals( 1, queue.Offer(first, 101) );
+        // the caller's buffer is left untouched
+        assertEquals( 0, first.position() );
+        // a single waiting input is a batch of its own
+        assertEquals( 1, queue.Take(1) );
+        assertEquals( 1, queue.getPayload(0).getInt() );
+        assertEquals( 101, queue.getMessageId(0) );
+        queue.Release();
+        assertEquals( 0, queue.size() );
+
+        for (int i = 2; i <= 4; i++)
+            queue.Offer(payload(i), 100 + i);
+        assertEquals( 2, queue.Take(1) );
+        assertEquals( 2, queue.getPayload(0).getInt() );
+        assertEquals( 3, queue.getPayload(1).getInt() );
+        queue.Release();
+        assertEquals( 1, queue.Take(1) );
+        assertEquals( 104, queue.getMessageId(0) );
+        queue.Release();
+    }
+
+    @Test
+    public void growsUnderHeldBatchTest() throws InterruptedException {
+        InputBatchQueue queue = new InputBatchQueue(2, 16, new BufferPool());
+        queue.Offer(payload(1), 1);
+        queue.Offer(payload(2), 2);
+        assertEquals( 2, queue.Take(1) );
+        // the ring holds two batches; offering past that grows it without touching the batch held
+        for (int i = 3; i <= 6; i++)
+            assertEquals( i, queue.Offer(payload(i), i) );
+        assertEquals( 1, queue.getPayload(0).getInt() );
+        assertEquals( 2, queue.getPayload(1).getInt() );
+        queue.Release();
+
+        for (int expected = 3; expected <= 6; expected += 2) {
+            assertEquals( 2, queue.Take(1) );
+            assertEquals( expected, queue.getPayload(0).getInt() );
+            assertEquals( expected + 1, queue.getPayload(1).getInt() );
+            queue.Release();
+        }
+        assertEquals( 0, queue.size() );
+    }
+
+    @Test
+    public void clearKeepsHeldBatchTest() throws InterruptedException {
+        InputBatchQueue queue = new InputBatchQueue(1, 16, new BufferPool());
+        queue.Offer(payload(1), 1);
+        queue.Offer(payload(2), 2);
+        assertEquals( 1, queue.Take(1) );
+        assertEquals( 1, queue.Clear() );
+        assertEquals( 1, queue.getPayload(0).getInt() );
+        queue.Release();
+        assertEquals( 0, queue.size() );
+        assertEquals( 0, queue.Take(1) );
+        queue.Release();
+    }
+}
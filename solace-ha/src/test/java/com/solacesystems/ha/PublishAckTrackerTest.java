@@ -0,0 +1,78 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.LatencyHistogram;
+import com.solacesystems.ha.conn.PublishAckListener;
+import com.solacesystems.ha.conn.PublishAckTracker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PublishAckTrackerTest {
+
+    private static class Recorder implements PublishAckListener {
+        public void OnPublishAck(long token, boolean accepted, long latencyNanos) {
+            tokens.add(accepted ? token : -token);
+        }
+        final List<Long> tokens = new ArrayList<Long>();
+    }
+
+    @Test
+    public void windowedAckTest() {
+        PublishAckTracker tracker = new PublishAckTracker(2);
+        Recorder recorder = new Recorder();
+
+        long[] keys = new long[3];
+        for (int i = 0; i < 3; i++) {
+            keys[i] = tracker.NextKey();
+            tracker.Commit(100 + i);
+        }
+        assertEquals( 3, tracker.getInFlight() );
+
+        // One windowed ack completes everything sent before it
+        assertEquals( 2, tracker.Acknowledge(keys[1], true, recorder) );
+        assertEquals( 1, tracker.getInFlight() );
+        // Duplicate or unknown keys are ignored
+        assertEquals( 0, tracker.Acknowledge(keys[0], true, recorder) );
+
+        assertEquals( 1, tracker.Acknowledge(keys[2], false, recorder) );
+        assertEquals( 0, tracker.getInFlight() );
+        assertEquals( 2, tracker.getAcceptedCount() );
+        assertEquals( 1, tracker.getRejectedCount() );
+        assertEquals( 3, tracker.getLatency().getCount() );
+
+        assertEquals( 3, recorder.tokens.size() );
+        assertEquals( 100L,  (long) recorder.tokens.get(0) );
+        assertEquals( 101L,  (long) recorder.tokens.get(1) );
+        assertEquals( -102L, (long) recorder.tokens.get(2) );
+    }
+
+    @Test
+    public void keysAreRecycledTest() {
+        PublishAckTracker tracker = new PublishAckTracker(1);
+        // Array of 2 * window + 2 slots; key 0 is never used
+        for (int i = 0; i < 10; i++) {
+            long key = tracker.NextKey();
+            assertEquals( (i % 3) + 1, key );
+            tracker.Commit(i);
+            assertEquals( 1, tracker.Acknowledge(key, true, null) );
+        }
+    }
+
+    @Test
+    public void histogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.Record(i * 1000);
+        assertEquals( 100, histogram.getCount() );
+        assertEquals( 1000, histogram.getMin() );
+        assertEquals( 100000, histogram.getMax() );
+        assertEquals( 50500, histogram.getMean() );
+        // Percentiles are bucket upper bounds, so within a factor of two
+        long p50 = histogram.getPercentile(50);
+        assertTrue( p50 >= 50000 && p50 < 100000 );
+        assertEquals( 100000, histogram.getPercentile(100) );
+    }
+}
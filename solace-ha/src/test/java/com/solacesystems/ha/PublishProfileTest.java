@@ -0,0 +1,33 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.PublishProfile;
+import com.solacesystems.solclientj.core.SolEnum;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PublishProfileTest {
+
+    @Test
+    public void guaranteedModesTest() {
+        assertTrue( PublishProfile.PERSISTENT.isGuaranteed() );
+        assertFalse( PublishProfile.DIRECT.isGuaranteed() );
+        assertTrue( new PublishProfile(SolEnum.MessageDeliveryMode.NONPERSISTENT, true, 1000, 0).isGuaranteed() );
+        assertEquals( PublishProfile.NO_PRIORITY, PublishProfile.PERSISTENT.getPriority() );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void priorityOutOfRangeIsRefusedTest() {
+        new PublishProfile(SolEnum.MessageDeliveryMode.DIRECT, false, 0, 256);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeTimeToLiveIsRefusedTest() {
+        new PublishProfile(SolEnum.MessageDeliveryMode.PERSISTENT, false, -1, PublishProfile.NO_PRIORITY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDeliveryModeIsRefusedTest() {
+        new PublishProfile(42, false, 0, PublishProfile.NO_PRIORITY);
+    }
+}
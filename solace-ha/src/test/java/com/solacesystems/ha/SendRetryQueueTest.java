@@ -0,0 +1,70 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.conn.BufferPool;
+import com.solacesystems.ha.conn.PublishProfile;
+import com.solacesystems.ha.conn.SendRetryQueue;
+import com.solacesystems.solclientj.core.SolEnum;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SendRetryQueueTest {
+
+    private static ByteBuffer payload(int value, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(value);
+        buffer.position(size);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void fifoAndBoundsTest() {
+        SendRetryQueue queue = new SendRetryQueue(2, 16, new BufferPool());
+        assertTrue( queue.isEmpty() );
+        assertNull( queue.Peek() );
+
+        ByteBuffer first = payload(1, 8);
+        assertTrue( queue.Offer(null, null, null, first, -1, PublishProfile.PERSISTENT) );
+        // the caller's buffer is left untouched
+        assertEquals( 0, first.position() );
+        assertTrue( queue.Offer(null, "TYPE", null, payload(2, 100), -1, PublishProfile.PERSISTENT) );
+        assertFalse( queue.Offer(null, null, null, payload(3, 8), -1, PublishProfile.PERSISTENT) );
+        assertEquals( 2, queue.size() );
+
+        SendRetryQueue.Slot slot = queue.Peek();
+        assertEquals( 8, slot.getPayload().remaining() );
+        assertEquals( 1, slot.getPayload().getInt() );
+        queue.Pop();
+
+        slot = queue.Peek();
+        assertEquals( "TYPE", slot.getMsgType() );
+        assertEquals( 100, slot.getPayload().remaining() );
+        assertEquals( 2, slot.getPayload().getInt() );
+        queue.Pop();
+        assertTrue( queue.isEmpty() );
+
+        // slots are reused after wrapping around
+        assertTrue( queue.Offer(null, null, null, null, -1, PublishProfile.PERSISTENT) );
+        assertFalse( queue.Peek().hasPayload() );
+    }
+
+    @Test
+    public void parkedMessagesKeepTheirProfile() {
+        SendRetryQueue queue = new SendRetryQueue(4, 16, new BufferPool());
+        PublishProfile expiring = new PublishProfile(SolEnum.MessageDeliveryMode.PERSISTENT, true, 5000, 7);
+        assertTrue( queue.Offer(null, null, null, payload(1, 8), -1, PublishProfile.DIRECT) );
+        assertTrue( queue.Offer(null, null, null, payload(2, 8), 3, expiring) );
+        assertTrue( queue.Offer(null, null, null, payload(3, 8), -1, PublishProfile.PERSISTENT) );
+
+        assertSame( PublishProfile.DIRECT, queue.Peek().getProfile() );
+        assertFalse( queue.Peek().getProfile().isGuaranteed() );
+        queue.Pop();
+        assertSame( expiring, queue.Peek().getProfile() );
+        assertEquals( 3, queue.Peek().getToken() );
+        queue.Pop();
+        assertSame( PublishProfile.PERSISTENT, queue.Peek().getProfile() );
+    }
+}
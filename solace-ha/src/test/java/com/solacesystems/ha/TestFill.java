@@ -0,0 +1,22 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.serial.ClusteredMessage;
+
+/**
+ * Output message for the generated serializer tests.
+ */
+@ClusteredMessage
+public class TestFill {
+    public long getOrderId() { return _orderId; }
+    public void setOrderId(long orderId) { _orderId = orderId; }
+
+    public String getSymbol() { return _symbol; }
+    public void setSymbol(String symbol) { _symbol = symbol; }
+
+    public double getQuantity() { return _quantity; }
+    public void setQuantity(double quantity) { _quantity = quantity; }
+
+    private long _orderId;
+    private String _symbol;
+    private double _quantity;
+}
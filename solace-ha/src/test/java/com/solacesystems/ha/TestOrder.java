@@ -0,0 +1,35 @@
+package com.solacesystems.ha;
+
+import com.solacesystems.ha.serial.ClusteredMessage;
+
+/**
+ * Input message for the generated serializer tests; mixes bean properties with a
+ * package-private field to exercise both access styles.
+ */
+@ClusteredMessage
+public class TestOrder {
+    public enum Side { BUY, SELL }
+
+    public long getId() { return _id; }
+    public void setId(long id) { _id = id; }
+
+    public Side getSide() { return _side; }
+    public void setSide(Side side) { _side = side; }
+
+    public String getSymbol() { return _symbol; }
+    public void setSymbol(String symbol) { _symbol = symbol; }
+
+    public double getPrice() { return _price; }
+    public void setPrice(double price) { _price = price; }
+
+    public boolean isUrgent() { return _urgent; }
+    public void setUrgent(boolean urgent) { _urgent = urgent; }
+
+    private long _id;
+    private Side _side;
+    private String _symbol;
+    private double _price;
+    private boolean _urgent;
+    int quantity;
+    String trader;
+}
@@ -0,0 +1,35 @@
+package com.solacesystems.ha.model;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class InputHaltTest {
+
+    @Test
+    public void failedInputHaltsInput() {
+        ClusterEventListener<Integer, Integer> listener = new ClusterEventListener<Integer, Integer>() {
+            public void OnHAStateChange(HAState oldState, HAState newState) {}
+            public void OnSeqStateChange(SeqState oldState, SeqState newState) {}
+            public void OnStateMessage(Integer state) {}
+            public Integer UpdateApplicationState(Integer input) {
+                throw new IllegalStateException("bad input " + input);
+            }
+        };
+        ClusteredAppSerializer<Integer, Integer> serializer = new ClusteredAppSerializer<Integer, Integer>() {
+            public ByteBuffer SerializeOutput(Integer output) { return ByteBuffer.allocate(4).putInt(output); }
+            public Integer DeserializeOutput(ByteBuffer msg) { return msg.getInt(); }
+            public Integer DeserializeInput(ByteBuffer msg) { return msg.getInt(); }
+        };
+        // No session: acknowledging the input would fail the test
+        ClusterConnector<Integer, Integer> connector = new ClusterConnector<Integer, Integer>(listener, serializer, null);
+        connector.getModel().SetHAStatus( HAState.ACTIVE );
+        connector.getModel().SetSequenceStatus( SeqState.UP_TO_DATE );
+
+        connector.processInputMsg( 7, 1 );
+        assertTrue( connector.IsInputHalted() );
+        assertNull( connector.getModel().GetLastInput() );
+    }
+}
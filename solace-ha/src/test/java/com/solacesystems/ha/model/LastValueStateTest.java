@@ -0,0 +1,108 @@
+package com.solacesystems.ha.model;
+
+import com.solacesystems.solclientj.core.handle.FlowHandle;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LastValueStateTest {
+
+    /**
+     * Outputs are serialized to `size` bytes; no session is needed as long as nothing is sent.
+     */
+    private static ClusterConnector<Integer, Integer> connector() {
+        ClusterEventListener<Integer, Integer> listener = new ClusterEventListener<Integer, Integer>() {
+            public void OnHAStateChange(HAState oldState, HAState newState) {}
+            public void OnSeqStateChange(SeqState oldState, SeqState newState) {}
+            public void OnStateMessage(Integer state) {}
+            public Integer UpdateApplicationState(Integer input) { return input; }
+        };
+        ClusteredAppSerializer<Integer, Integer> serializer = new ClusteredAppSerializer<Integer, Integer>() {
+            public ByteBuffer SerializeOutput(Integer size) {
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                buffer.position(size);
+                return buffer;
+            }
+            public Integer DeserializeOutput(ByteBuffer msg) { return msg.remaining(); }
+            public Integer DeserializeInput(ByteBuffer msg) { return msg.remaining(); }
+        };
+        return new ClusterConnector<Integer, Integer>(listener, serializer, null);
+    }
+
+    /**
+     * @return a state flow that records the message ids it acknowledges
+     */
+    private static FlowHandle recordingFlow(final List<Long> acks) {
+        return (FlowHandle) Proxy.newProxyInstance(FlowHandle.class.getClassLoader(),
+                new Class<?>[] { FlowHandle.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("ack") && args[0] instanceof Long) {
+                        acks.add((Long) args[0]);
+                        return 0;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    public void newestStateIsHeldUntilSuperseded() {
+        List<Long> acks = new ArrayList<Long>();
+        FlowHandle flow = recordingFlow( acks );
+        ClusterConnector<Integer, Integer> connector = connector();
+
+        connector.holdLastState( flow, 10, false );
+        assertTrue( acks.isEmpty() );
+        connector.holdLastState( flow, 11, false );
+        assertEquals( 1, acks.size() );
+        assertEquals( 10L, (long) acks.get(0) );
+    }
+
+    @Test
+    public void sentinelReleasesHeldStateAndItself() {
+        List<Long> acks = new ArrayList<Long>();
+        FlowHandle flow = recordingFlow( acks );
+        ClusterConnector<Integer, Integer> connector = connector();
+
+        connector.holdLastState( flow, 10, false );
+        connector.holdLastState( flow, 11, true );
+        assertEquals( 2, acks.size() );
+        assertEquals( 10L, (long) acks.get(0) );
+        assertEquals( 11L, (long) acks.get(1) );
+
+        // Nothing is held once recovered, so the next state has nothing to release
+        connector.holdLastState( flow, 12, false );
+        assertEquals( 2, acks.size() );
+    }
+
+    @Test
+    public void refusedOutputLeavesSequenceAndHaltsInput() {
+        ClusterConnector<Integer, Integer> connector = connector();
+        connector.EnableLastValueState();
+        connector.SetMaxFragmentSize( 64 );
+        connector.getModel().SetHAStatus( HAState.ACTIVE );
+        connector.getModel().SetSequenceStatus( SeqState.UP_TO_DATE );
+
+        assertEquals( -1, connector.SendOutput( "state", 65 ) );
+        assertEquals( 0, connector.getOutputSequence() );
+        assertEquals( 1, connector.GetRefusedOutputCount() );
+        assertTrue( connector.IsInputHalted() );
+    }
+
+    @Test
+    public void lastValueStateRaisesTheMessageLimit() {
+        ClusterConnector<Integer, Integer> connector = connector();
+        connector.EnableLastValueState();
+        assertEquals( ClusterConnector.MAX_STATE_MESSAGE_SIZE, connector.GetMaxFragmentSize() );
+        assertFalse( connector.IsInputHalted() );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fragmentSizeAboveBrokerLimitIsRefused() {
+        connector().SetMaxFragmentSize( ClusterConnector.MAX_STATE_MESSAGE_SIZE + 1 );
+    }
+}
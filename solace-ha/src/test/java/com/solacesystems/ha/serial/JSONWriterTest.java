@@ -0,0 +1,92 @@
+package com.solacesystems.ha.serial;
+
+import com.solacesystems.ha.conn.BufferPool;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class JSONWriterTest {
+
+    private static String contents(ByteBuffer buffer) {
+        buffer.flip();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new String(data);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void matchesJsonSimpleTest() throws Exception {
+        JSONObject expected = new JSONObject();
+        expected.put( "app", "matcher" );
+        expected.put( "seqId", 1234567890123L );
+        expected.put( "active", true );
+        expected.put( "last", null );
+        JSONArray levels = new JSONArray();
+        for (int i = 0; i < 20; i++) {
+            JSONObject level = new JSONObject();
+            level.put( "price", 100.0 - i * 0.25 );
+            level.put( "quantity", 1234.5678901234 + i );
+            levels.add( level );
+        }
+        expected.put( "buys", levels );
+
+        // Start small so the writer has to grow the buffer
+        BufferPool pool = new BufferPool();
+        JSONWriter writer = new JSONWriter( pool );
+        writer.Begin( pool.Acquire( 16 ) );
+        writer.StartObject()
+                .Field( JSONWriter.Name( "app" ) ).Value( "matcher" )
+                .Field( JSONWriter.Name( "seqId" ) ).Value( 1234567890123L )
+                .Field( JSONWriter.Name( "active" ) ).Value( true )
+                .Field( JSONWriter.Name( "last" ) ).Null()
+                .Field( JSONWriter.Name( "buys" ) ).StartArray();
+        for (int i = 0; i < 20; i++) {
+            writer.StartObject()
+                    .Field( JSONWriter.Name( "price" ) ).Value( 100.0 - i * 0.25 )
+                    .Field( JSONWriter.Name( "quantity" ) ).Value( 1234.5678901234 + i )
+                    .EndObject();
+        }
+        writer.EndArray().EndObject();
+        String actual = contents( writer.End() );
+
+        JSONParser parser = new JSONParser();
+        assertEquals( parser.parse( expected.toJSONString() ), parser.parse( actual ) );
+    }
+
+    @Test
+    public void doubleFormattingTest() {
+        double[] values = { 0.0, -0.0, 1.0, 100.25, -99.75, 0.001, 1234.5678901234,
+                            1.0/3.0, 9999999.99, 1e7, 1e-4, 123456.00000001, -5e-324 };
+        BufferPool pool = new BufferPool();
+        JSONWriter writer = new JSONWriter( pool );
+        for (double value : values) {
+            writer.Begin( pool.Acquire( 8 ) );
+            writer.Value( value );
+            assertEquals( Double.toString( value ), contents( writer.End() ) );
+        }
+        writer.Begin( pool.Acquire( 8 ) );
+        writer.StartArray().Value( Double.NaN ).Value( Double.POSITIVE_INFINITY ).EndArray();
+        assertEquals( "[null,null]", contents( writer.End() ) );
+    }
+
+    @Test
+    public void escapingTest() throws Exception {
+        BufferPool pool = new BufferPool();
+        JSONWriter writer = new JSONWriter( pool );
+        writer.Begin( pool.Acquire( 8 ) );
+        String text = "quote\" slash\\ tab\t café €";
+        writer.StartObject().Field( JSONWriter.Name( "text" ) ).Value( text ).EndObject();
+        ByteBuffer buffer = writer.End();
+        buffer.flip();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        Object parsed = new JSONParser().parse( new String( data, "UTF-8" ) );
+        assertEquals( text, ((java.util.Map) parsed).get( "text" ) );
+    }
+}